@@ -0,0 +1,23 @@
+package me.galyakyxnya.telegrambot;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+// Точка входа benchmarks.jar: обычные аргументы JMH плюс всегда включённый GC профайлер,
+// чтобы рядом со временем были видны аллокации на операцию (gc.alloc.rate.norm).
+//   java -jar benchmarks/target/benchmarks.jar                 - все бенчмарки
+//   java -jar benchmarks/target/benchmarks.jar Cooldown -f 1   - по регулярному выражению
+public final class BenchmarkRunner {
+
+    private BenchmarkRunner() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
@@ -0,0 +1,415 @@
+package me.galyakyxnya.telegrambot;
+
+import java.io.File;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+// Стенд режима кластера: несколько узлов в одном процессе с общим файлом аренды и одним MockBotApi.
+// У каждого узла свои UpdateHandler, очередь главного потока и очередь отправки, как у отдельного сервера.
+// Команды распределены по серверам ключом server; с --failover=N лидер останавливается на N-й секунде.
+//   java -cp benchmarks/target/benchmarks.jar me.galyakyxnya.telegrambot.ClusterHarness --nodes=3 --rate=50
+public final class ClusterHarness {
+
+    private static final String TOKEN = "123456:CLUSTER";
+    private static final long CHAT_ID = Payloads.GROUP_CHAT_ID;
+    private static final String PLAYER_PREFIX = "p";
+    private static final long TICK_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+    private static final String[] COMMANDS = {"fly", "money", "kit", "privat", "ban", "speed", "kick", "online"};
+
+    private final Map<String, String> options;
+    private final int nodes;
+    private final double rate;
+    private final int durationSeconds;
+    private final int failoverSecond;
+
+    private AtomicLongArray postedAt;
+    // Сколько раз выполнена каждая отправленная команда: больше 1 - повтор после смены лидера
+    private AtomicIntegerArray executions;
+    private final AtomicLong replies = new AtomicLong();
+    private final AtomicLong otherReplies = new AtomicLong();
+    private final LatencyHistogram toDispatch = new LatencyHistogram();
+    private final LatencyHistogram toReply = new LatencyHistogram();
+    private volatile long stoppedAt;
+    private volatile long electedAt;
+
+    private ClusterHarness(Map<String, String> options) {
+        this.options = options;
+        this.nodes = Math.max(2, intOption("nodes", 3));
+        this.rate = doubleOption("rate", 50);
+        this.durationSeconds = intOption("duration", 20);
+        this.failoverSecond = intOption("failover", 0);
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--")) continue;
+            int eq = arg.indexOf('=');
+            options.put(eq > 0 ? arg.substring(2, eq) : arg.substring(2), eq > 0 ? arg.substring(eq + 1) : "true");
+        }
+        if (options.containsKey("help")) {
+            System.out.println("""
+                    Параметры (--имя=значение):
+                      nodes=3             серверов в кластере
+                      rate=50             сообщений в секунду
+                      duration=20         длительность нагрузки, сек
+                      failover=0          на какой секунде остановить лидера (0 - не останавливать)
+                      send-latency-ms=20  задержка sendMessage в заглушке (+ send-jitter-ms=10)""");
+            return;
+        }
+        new ClusterHarness(options).run();
+    }
+
+    // Один сервер кластера
+    private final class Node {
+        final int index;
+        final String name;
+        final IoExecutor io;
+        final TelegramApiClient client;
+        final OutboundDispatcher outbound;
+        final ReplyCoalescer coalescer;
+        final UpdateTracker tracker;
+        final MainThreadDispatcher mainThread;
+        final UpdateHandler handler;
+        final ClusterNode cluster;
+        final Thread ticker;
+        final AtomicLong executed = new AtomicLong();
+        volatile Future<?> poller;
+        volatile boolean stopped;
+
+        Node(int index, MockBotApi api, File leaseFile, Logger logger) throws Exception {
+            this.index = index;
+            this.name = "node" + index;
+            Metrics metrics = new Metrics(true);
+            io = new IoExecutor("Cluster-" + name, logger);
+            client = new TelegramApiClient(api.apiUrl(), TOKEN, Duration.ofSeconds(5),
+                    Duration.ofSeconds(10), 2, 200, io, metrics);
+            outbound = new OutboundDispatcher(client, metrics, logger, 100_000,
+                    OutboundDispatcher.DropPolicy.DROP_OLDEST, 16, 100_000, 100_000, 100_000,
+                    new CircuitBreaker(5, 1000, 30_000), null);
+            outbound.start(io);
+            coalescer = new ReplyCoalescer(outbound, 250,
+                    ReplyCoalescer.Kind.fromConfig(List.of("cooldown", "unknown-command", "no-permission")));
+
+            File offsetFile = Files.createTempFile("cluster-offset", ".dat").toFile();
+            offsetFile.deleteOnExit();
+            tracker = new UpdateTracker(offsetFile, 1024, System.currentTimeMillis() / 1000, true, 300, 2);
+            mainThread = new MainThreadDispatcher(2_000_000, 45, () -> 5, metrics, logger);
+            CooldownStore cooldowns = new CooldownStore(System.currentTimeMillis());
+            Messages messages = Payloads.defaultMessages();
+            handler = new UpdateHandler(tracker, cooldowns, new PermissionStore(), mainThread,
+                    this::dispatch, this::reply, entry -> { }, metrics, logger, settings(messages));
+            handler.setRegistry(registry(cooldowns));
+            handler.startBacklog(io);
+
+            cluster = new ClusterNode(new ClusterNode.Settings(name, leaseFile,
+                    new InetSocketAddress("127.0.0.1", 0), "127.0.0.1", "harness-secret"), new ClusterNode.Listener() {
+                @Override
+                public void onLeader() {
+                    electedAt = System.nanoTime();
+                    poller = io.start("Poll", () -> poll(Node.this));
+                }
+
+                @Override
+                public void onCommand(ClusterLink.Command command) {
+                    handler.handleForwarded(command);
+                }
+
+                @Override
+                public void onReply(ClusterLink.Reply reply) {
+                    if (reply.kind() == null) {
+                        outbound.enqueue(reply.chatId(), reply.text(), OutboundDispatcher.Priority.BROADCAST);
+                    } else {
+                        coalescer.submit(reply.chatId(), reply.replyToMessageId(), reply.text(), reply.kind());
+                    }
+                }
+
+                @Override
+                public void onOffset(long offset) {
+                    tracker.advance(offset);
+                }
+            }, tracker::offset, io, logger);
+            handler.setCluster(cluster);
+            ticker = Thread.ofPlatform().name("Server thread " + name).daemon().start(this::tick);
+            cluster.start();
+        }
+
+        // Как relayToLeader в плагине
+        private void reply(String chatId, long replyTo, String text, ReplyCoalescer.Kind kind) {
+            if (!cluster.isLeader()) {
+                cluster.reply(new ClusterLink.Reply(chatId, replyTo, kind, text));
+                return;
+            }
+            coalescer.submit(chatId, replyTo, text, kind);
+        }
+
+        private boolean dispatch(BotCommand cmd, String args, String command) {
+            long seq = sequence(args, 0);
+            if (seq >= 0 && seq < postedAt.length()) {
+                if (executions.incrementAndGet((int) seq) == 1) {
+                    toDispatch.record(System.nanoTime() - postedAt.get((int) seq));
+                }
+            }
+            executed.incrementAndGet();
+            return true;
+        }
+
+        private void tick() {
+            try {
+                while (!Thread.currentThread().isInterrupted()) {
+                    mainThread.runTick();
+                    TimeUnit.NANOSECONDS.sleep(TICK_NANOS);
+                }
+            } catch (InterruptedException e) {
+                // остановка узла
+            }
+        }
+
+        // Как onDisable: сначала опрос, затем аренда
+        void stop() {
+            stopped = true;
+            Future<?> task = poller;
+            if (task != null) task.cancel(true);
+            cluster.stop();
+            ticker.interrupt();
+            coalescer.shutdown();
+            outbound.stop(1000);
+            client.close();
+            io.shutdown(Duration.ofSeconds(2));
+        }
+    }
+
+    private void run() throws Exception {
+        Logger logger = Logger.getLogger("ClusterHarness");
+        logger.setLevel(Level.WARNING);
+
+        int expected = (int) Math.ceil(rate * durationSeconds) + 1;
+        postedAt = new AtomicLongArray(expected);
+        executions = new AtomicIntegerArray(expected);
+
+        MockBotApi api = new MockBotApi(TOKEN, new MockBotApi.Options(
+                intOption("send-latency-ms", 20), intOption("send-jitter-ms", 10), 0, 1), this::onSend);
+        api.start();
+
+        File leaseFile = Files.createTempFile("cluster", ".lock").toFile();
+        leaseFile.deleteOnExit();
+        List<Node> cluster = new ArrayList<>();
+        for (int i = 0; i < nodes; i++) {
+            cluster.add(new Node(i, api, leaseFile, logger));
+        }
+        // Ждём лидера и подключения остальных узлов
+        long readyDeadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (System.nanoTime() < readyDeadline && (leader(cluster) == null
+                || leader(cluster).cluster.stats().servers().size() < nodes - 1)) {
+            Thread.sleep(50);
+        }
+        Node first = leader(cluster);
+        if (first == null) {
+            System.out.println("Лидер не выбран за 10 с");
+            return;
+        }
+        System.out.printf("Кластер: %d узлов, лидер %s, %.0f сообщений/с, %d с%s%n", nodes, first.name, rate,
+                durationSeconds, failoverSecond > 0 ? ", остановка лидера на " + failoverSecond + " с" : "");
+
+        Thread failover = null;
+        if (failoverSecond > 0) {
+            failover = Thread.ofPlatform().name("Harness-failover").daemon().start(() -> {
+                try {
+                    Thread.sleep(TimeUnit.SECONDS.toMillis(failoverSecond));
+                    stoppedAt = System.nanoTime();
+                    first.stop();
+                } catch (InterruptedException e) {
+                    // стенд завершился раньше
+                }
+            });
+        }
+
+        long loadStart = System.nanoTime();
+        int posted = generate(api, expected);
+        long loadNanos = System.nanoTime() - loadStart;
+
+        long drainDeadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(15);
+        while (System.nanoTime() < drainDeadline && replies.get() + otherReplies.get() < posted) {
+            Thread.sleep(50);
+        }
+        Thread.sleep(500);
+        if (failover != null) failover.interrupt();
+
+        report(posted, loadNanos, cluster, first, api.stats());
+
+        for (Node node : cluster) {
+            if (!node.stopped) node.stop();
+        }
+        api.stop();
+    }
+
+    private static Node leader(List<Node> cluster) {
+        for (Node node : cluster) {
+            if (!node.stopped && node.cluster.isLeader()) return node;
+        }
+        return null;
+    }
+
+    private UpdateHandler.Settings settings(Messages messages) {
+        List<ChatRoutes.Route> routes = List.of(new ChatRoutes.Route("main", CHAT_ID, Set.of(),
+                ChatRoutes.CooldownScope.SHARED, String.valueOf(CHAT_ID), true));
+        return new UpdateHandler.Settings(new ChatRoutes(routes), messages, null, null, 300, false);
+    }
+
+    // Команда i выполняется на сервере node(i % nodes); у всех узлов одинаковый реестр, как один config.yml
+    private CommandRegistry registry(CooldownStore cooldowns) {
+        CommandRegistry defaults = Payloads.registry(COMMANDS.length, cooldowns);
+        List<BotCommand> commands = new ArrayList<>();
+        int i = 0;
+        for (BotCommand template : defaults.commands()) {
+            BotCommand cmd = new BotCommand();
+            cmd.name = template.name;
+            cmd.id = template.id;
+            cmd.command = template.command;
+            cmd.commandTemplate = template.commandTemplate;
+            cmd.requiresPlayer = true;
+            cmd.cooldown = 0;
+            cmd.permission = "";
+            cmd.server = "node" + (i++ % nodes);
+            cmd.message = MessageTemplate.compile("✅ /" + cmd.name + " на " + cmd.server + " для %player%");
+            cmd.errorMessage = cmd.message;
+            cmd.description = template.description;
+            commands.add(cmd);
+        }
+        return new CommandRegistry(1, commands, defaults.help());
+    }
+
+    // ========== Нагрузка ==========
+
+    private int generate(MockBotApi api, int count) throws InterruptedException {
+        SplittableRandom random = new SplittableRandom(42);
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.SECONDS.toNanos(durationSeconds);
+        double intervalNanos = TimeUnit.SECONDS.toNanos(1) / rate;
+
+        int seq = 0;
+        while (seq < count) {
+            long due = start + (long) (seq * intervalNanos);
+            long now = System.nanoTime();
+            if (due >= deadline) break;
+            if (due > now) {
+                TimeUnit.NANOSECONDS.sleep(due - now);
+            }
+            long userId = 100_000_000L + random.nextInt(10_000);
+            postedAt.set(seq, System.nanoTime());
+            api.post(CHAT_ID, userId, "user" + userId,
+                    "/" + COMMANDS[random.nextInt(COMMANDS.length)] + " " + PLAYER_PREFIX + seq);
+            seq++;
+        }
+        return seq;
+    }
+
+    private void poll(Node node) {
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                List<Update> updates = node.client.getUpdates(node.tracker.offset() + 1, 30, 100, "[\"message\"]")
+                        .get(45, TimeUnit.SECONDS);
+                node.handler.handleUpdates(updates);
+            } catch (InterruptedException e) {
+                return;
+            } catch (Exception e) {
+                if (node.stopped) return;
+                System.err.println("Ошибка опроса " + node.name + ": " + e.getMessage());
+            }
+        }
+    }
+
+    private void onSend(String chatId, String text) {
+        long seq = sequence(text, text.indexOf(" " + PLAYER_PREFIX) + 1);
+        if (seq >= 0 && seq < postedAt.length()) {
+            toReply.record(System.nanoTime() - postedAt.get((int) seq));
+            replies.incrementAndGet();
+        } else {
+            otherReplies.incrementAndGet();
+        }
+    }
+
+    private static long sequence(String text, int from) {
+        if (from < 0 || !text.startsWith(PLAYER_PREFIX, from)) return -1;
+        long value = 0;
+        int i = from + PLAYER_PREFIX.length();
+        int start = i;
+        while (i < text.length() && Character.isDigit(text.charAt(i))) {
+            value = value * 10 + (text.charAt(i++) - '0');
+        }
+        return i == start ? -1 : value;
+    }
+
+    // ========== Отчёт ==========
+
+    private void report(int posted, long loadNanos, List<Node> cluster, Node first, MockBotApi.Stats api) {
+        int once = 0;
+        int repeated = 0;
+        int lost = 0;
+        for (int i = 0; i < posted; i++) {
+            int count = executions.get(i);
+            if (count == 0) lost++;
+            else if (count == 1) once++;
+            else repeated++;
+        }
+
+        System.out.println();
+        System.out.printf("Отправлено сообщений: %d за %.1f с%n", posted, loadNanos / 1e9);
+        System.out.printf("Выполнено один раз: %d, повторно: %d, не выполнено: %d%n", once, repeated, lost);
+        System.out.printf("Ответов с результатом: %d, прочих (сервер недоступен и т.д.): %d%n",
+                replies.get(), otherReplies.get());
+        System.out.printf("Заглушка: getUpdates %d, sendMessage %d, не подтверждено: %d%n",
+                api.pollCalls(), api.sendCalls(), api.pending());
+        for (Node node : cluster) {
+            ClusterNode.Stats stats = node.cluster.stats();
+            System.out.printf("  %s%s: выполнено %d, передано %d, ответов через лидера %d%n", node.name,
+                    node == first ? " (первый лидер)" : node.stopped ? " (остановлен)"
+                            : stats.leader() ? " (лидер)" : "",
+                    node.executed.get(), stats.forwarded(), stats.relayed());
+        }
+        if (stoppedAt > 0) {
+            Node next = leader(cluster);
+            System.out.printf("Смена лидера: %s -> %s за %s%n", first.name, next != null ? next.name : "нет",
+                    electedAt > stoppedAt ? MainThreadDispatcher.Stats.millis(electedAt - stoppedAt) : "-");
+        }
+
+        System.out.println();
+        System.out.println("Задержка                  p50        p90        p99        макс.      (n)");
+        printRow("сообщение -> выполнение", toDispatch);
+        printRow("сообщение -> ответ", toReply);
+    }
+
+    private static void printRow(String title, LatencyHistogram histogram) {
+        if (histogram.count() == 0) return;
+        System.out.printf("%-24s %-10s %-10s %-10s %-10s (%d)%n", title,
+                MainThreadDispatcher.Stats.millis(histogram.percentile(0.5)),
+                MainThreadDispatcher.Stats.millis(histogram.percentile(0.9)),
+                MainThreadDispatcher.Stats.millis(histogram.percentile(0.99)),
+                MainThreadDispatcher.Stats.millis(histogram.max()),
+                histogram.count());
+    }
+
+    private int intOption(String name, int fallback) {
+        String value = options.get(name);
+        return value == null ? fallback : Integer.parseInt(value);
+    }
+
+    private double doubleOption(String name, double fallback) {
+        String value = options.get(name);
+        return value == null ? fallback : Double.parseDouble(value);
+    }
+}
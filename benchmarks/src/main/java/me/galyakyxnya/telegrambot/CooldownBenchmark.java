@@ -0,0 +1,112 @@
+package me.galyakyxnya.telegrambot;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+// Проверка и резерв кулдауна из нескольких потоков: CooldownStore против исходной
+// карты "user_id:команда" -> время (ConcurrentHashMap, чтобы сравнение под нагрузкой было честным).
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(4)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx2g"})
+public class CooldownBenchmark {
+
+    private static final long COOLDOWN_MILLIS = TimeUnit.HOURS.toMillis(1);
+    // Короткий кулдаун для записей, которые резервируются и снимаются в mixed
+    private static final long SHORT_COOLDOWN_MILLIS = 1;
+
+    @Param({"1000", "1000000"})
+    public int entries;
+
+    private CooldownStore store;
+    private int command;
+    private LegacyBaselines.CooldownMap legacy;
+
+    @Setup
+    public void setup() {
+        long now = System.currentTimeMillis();
+        store = new CooldownStore(now);
+        command = store.commandIndex("fly");
+        legacy = new LegacyBaselines.CooldownMap(new ConcurrentHashMap<>(entries * 2));
+        for (int user = 1; user <= entries; user++) {
+            store.tryAcquire(user, command, now, COOLDOWN_MILLIS);
+            legacy.tryAcquire(String.valueOf(user), "fly", now, COOLDOWN_MILLIS / 1000);
+        }
+    }
+
+    // Колесо таймеров в плагине продвигается раз в секунду; здесь - после каждой итерации
+    @TearDown(Level.Iteration)
+    public void expireShortEntries() {
+        store.expire(System.currentTimeMillis() + 1000);
+    }
+
+    @State(Scope.Thread)
+    public static class Users {
+        private long seed = Thread.currentThread().threadId() * 0x9E3779B97F4A7C15L + 1;
+
+        long next(int bound) {
+            seed ^= seed << 13;
+            seed ^= seed >>> 7;
+            seed ^= seed << 17;
+            return 1 + Math.floorMod(seed, bound);
+        }
+    }
+
+    // Пользователь уже на кулдауне - самый частый путь при спаме
+    @Benchmark
+    public long storeHit(Users users) {
+        return store.tryAcquire(users.next(entries), command, System.currentTimeMillis(), COOLDOWN_MILLIS);
+    }
+
+    @Benchmark
+    public long legacyHit(Users users) {
+        return legacy.tryAcquire(String.valueOf(users.next(entries)), "fly",
+                System.currentTimeMillis(), COOLDOWN_MILLIS / 1000);
+    }
+
+    // Одна из 16 операций - новая пара, которая резервируется и освобождается (команда не выполнилась)
+    @Benchmark
+    public long storeMixed(Users users) {
+        long now = System.currentTimeMillis();
+        long user = users.next(entries * 16);
+        if (user <= entries) {
+            return store.tryAcquire(user, command, now, COOLDOWN_MILLIS);
+        }
+        long remaining = store.tryAcquire(user, command, now, SHORT_COOLDOWN_MILLIS);
+        if (remaining == 0) {
+            store.release(user, command, now);
+        }
+        return remaining;
+    }
+
+    @Benchmark
+    public long legacyMixed(Users users) {
+        long now = System.currentTimeMillis();
+        long user = users.next(entries * 16);
+        String userId = String.valueOf(user);
+        if (user <= entries) {
+            return legacy.tryAcquire(userId, "fly", now, COOLDOWN_MILLIS / 1000);
+        }
+        long remaining = legacy.tryAcquire(userId, "fly", now, 0);
+        legacy.remove(userId, "fly");
+        return remaining;
+    }
+}
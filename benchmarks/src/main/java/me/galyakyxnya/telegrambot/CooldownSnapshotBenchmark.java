@@ -0,0 +1,79 @@
+package me.galyakyxnya.telegrambot;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// Загрузка кулдаунов при старте сервера: бинарный cooldowns.bin через MappedByteBuffer
+// против текстового cooldowns.txt с разбором строк в HashMap. Один замер - один старт.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx2g"})
+public class CooldownSnapshotBenchmark {
+
+    private static final String[] COMMANDS = {"fly", "money", "kit", "privat", "speed"};
+
+    @Param({"1000000"})
+    public int entries;
+
+    private File binaryFile;
+    private File textFile;
+    private long now;
+
+    @Setup
+    public void setup() throws IOException {
+        now = System.currentTimeMillis();
+        CooldownStore store = new CooldownStore(now);
+        binaryFile = Files.createTempFile("bench-cooldowns", ".bin").toFile();
+        textFile = Files.createTempFile("bench-cooldowns", ".txt").toFile();
+
+        try (BufferedWriter text = Files.newBufferedWriter(textFile.toPath())) {
+            for (int i = 0; i < entries; i++) {
+                long userId = 100_000_000L + i / COMMANDS.length;
+                String command = COMMANDS[i % COMMANDS.length];
+                long lastUse = now - (i % 3600) * 1000L;
+                store.restore(userId, store.commandIndex(command), lastUse, lastUse + TimeUnit.DAYS.toMillis(1), now);
+                text.write(userId + ":" + command + ":" + lastUse);
+                text.newLine();
+            }
+        }
+        CooldownSnapshot.write(binaryFile, store);
+    }
+
+    @TearDown
+    public void tearDown() {
+        binaryFile.delete();
+        textFile.delete();
+    }
+
+    @Benchmark
+    public CooldownStore binarySnapshot() throws IOException {
+        CooldownStore store = new CooldownStore(now);
+        CooldownSnapshot.load(binaryFile, store, store::commandIndex, now);
+        return store;
+    }
+
+    @Benchmark
+    public Map<String, Long> legacyText() throws IOException {
+        return LegacyBaselines.loadTextCooldowns(textFile);
+    }
+}
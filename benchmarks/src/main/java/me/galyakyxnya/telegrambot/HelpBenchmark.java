@@ -0,0 +1,61 @@
+package me.galyakyxnya.telegrambot;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.BitSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+// Ответ на /help: готовые страницы из HelpPages против сборки всей справки на каждый запрос.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HelpBenchmark {
+
+    @Param({"8", "200"})
+    public int commands;
+
+    private CommandRegistry registry;
+    private BitSet granted;
+    private Messages messages;
+
+    @Setup
+    public void setup() {
+        PermissionStore permissions = new PermissionStore();
+        registry = Payloads.registry(commands, new CooldownStore(System.currentTimeMillis()), permissions);
+        messages = Payloads.defaultMessages();
+        permissions.load("1", Set.of("telegrambot.privat", "telegrambot.cmd11"));
+        granted = permissions.snapshot().granted(1);
+    }
+
+    @Benchmark
+    public List<String> prerendered() {
+        return registry.help().pages();
+    }
+
+    // Фильтр по правам пользователя: страницы кэшируются по набору прав
+    @Benchmark
+    public List<String> prerenderedFiltered() {
+        return registry.help().pages(Set.of(), granted);
+    }
+
+    @Benchmark
+    public String legacyRebuild() {
+        return LegacyBaselines.renderHelp(registry.commands(), messages.helpHeader().toString(),
+                messages.commandFormat().toString(), messages.helpFooter().toString());
+    }
+}
@@ -0,0 +1,53 @@
+package me.galyakyxnya.telegrambot;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+// Экранирование текста исходящих сообщений: однопроходный escapeJson против трёх String.replace.
+// Исходный вариант не экранирует \r, \t и управляющие символы, поэтому он не эквивалентен,
+// а служит нижней границей по работе.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JsonEscapeBenchmark {
+
+    @Param({"plain", "reply", "help"})
+    public String text;
+
+    private String input;
+
+    @Setup
+    public void setup() {
+        input = switch (text) {
+            // Нечего экранировать: escapeJson возвращает исходную строку
+            case "plain" -> "Игрок Steve получил флай на 60 минут";
+            case "reply" -> "✅ Флай выдан игроку \"Steve\"!\nСледующее использование через: 23 ч 59 мин";
+            default -> String.join("\n",
+                    Payloads.registry(40, new CooldownStore(System.currentTimeMillis())).help().pages());
+        };
+    }
+
+    @Benchmark
+    public String escapeJson() {
+        return TelegramApiClient.escapeJson(input);
+    }
+
+    @Benchmark
+    public String legacyReplace() {
+        return LegacyBaselines.escapeJson(input);
+    }
+}
@@ -0,0 +1,196 @@
+package me.galyakyxnya.telegrambot;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+// Реализации из исходной версии плагина, перенесённые как есть (кроме явных ошибок),
+// чтобы каждое изменение сравнивалось с тем, что оно заменило.
+final class LegacyBaselines {
+
+    private LegacyBaselines() {
+    }
+
+    // ========== Разбор getUpdates через split/indexOf ==========
+
+    // Исходный processTelegramUpdates без отправки в обработку: найденные поля отдаются в sink
+    static long scanUpdates(String jsonResponse, String groupChatId, Consumer<Object> sink) {
+        long lastUpdateId = 0;
+        if (!jsonResponse.contains("\"ok\":true")) return lastUpdateId;
+
+        String[] updates = jsonResponse.split("\"update_id\":");
+        for (int i = 1; i < updates.length; i++) {
+            try {
+                String update = updates[i];
+
+                String updateIdStr = update.substring(0, update.indexOf(',')).trim();
+                int updateId = Integer.parseInt(updateIdStr);
+                lastUpdateId = Math.max(lastUpdateId, updateId);
+
+                if (!update.contains("\"chat\":{\"id\":" + groupChatId)) {
+                    continue;
+                }
+
+                int textStart = update.indexOf("\"text\":\"");
+                if (textStart == -1) continue;
+                textStart += 8;
+                int textEnd = update.indexOf("\"", textStart);
+                if (textEnd == -1) continue;
+                String text = update.substring(textStart, textEnd);
+
+                String userId = "unknown";
+                int idStart = update.indexOf("\"from\":{\"id\":");
+                if (idStart != -1) {
+                    idStart += 13;
+                    int idEnd = update.indexOf(",", idStart);
+                    if (idEnd != -1) {
+                        userId = update.substring(idStart, idEnd).trim();
+                    }
+                }
+
+                String username = "Пользователь";
+                int userStart = update.indexOf("\"username\":\"");
+                if (userStart != -1) {
+                    userStart += 12;
+                    int userEnd = update.indexOf("\"", userStart);
+                    if (userEnd != -1) {
+                        username = "@" + update.substring(userStart, userEnd);
+                    }
+                } else {
+                    int nameStart = update.indexOf("\"first_name\":\"");
+                    if (nameStart != -1) {
+                        nameStart += 15;
+                        int nameEnd = update.indexOf("\"", nameStart);
+                        if (nameEnd != -1) {
+                            username = update.substring(nameStart, nameEnd);
+                        }
+                    }
+                }
+
+                String messageId = "0";
+                int msgIdStart = update.indexOf("\"message_id\":");
+                if (msgIdStart != -1) {
+                    msgIdStart += 13;
+                    int msgIdEnd = update.indexOf(",", msgIdStart);
+                    if (msgIdEnd != -1) {
+                        messageId = update.substring(msgIdStart, msgIdEnd).trim();
+                    }
+                }
+
+                if (text.startsWith("/")) {
+                    sink.accept(text);
+                    sink.accept(userId);
+                    sink.accept(username);
+                    sink.accept(messageId);
+                }
+            } catch (Exception e) {
+                // как в исходнике: битое обновление пропускается
+            }
+        }
+        return lastUpdateId;
+    }
+
+    // ========== Шаблоны через String.replace ==========
+
+    static String renderCommand(String template, String args, String username, String userId) {
+        return template
+                .replace("%player%", args)
+                .replace("%args%", args)
+                .replace("%user%", username)
+                .replace("%user_id%", userId);
+    }
+
+    static String renderCooldown(String template, String username, String time) {
+        return template.replace("%user%", username).replace("%time%", time);
+    }
+
+    // Исходный sendHelpMessage: вся справка собирается заново на каждый /help
+    static String renderHelp(Collection<BotCommand> commands, String header, String format, String footer) {
+        StringBuilder help = new StringBuilder();
+        help.append(header);
+        for (BotCommand cmd : commands) {
+            String cooldownStr = Payloads.formatCooldown(cmd.cooldown);
+            String descriptionPart = cmd.description.isEmpty() ? "" : cmd.description + " | ";
+            String line = format
+                    .replace("%cmd%", cmd.name)
+                    .replace("%cooldown%", cooldownStr)
+                    .replace("%eho%", descriptionPart);
+            help.append(line);
+        }
+        help.append(footer);
+        return help.toString();
+    }
+
+    // ========== Экранирование JSON ==========
+
+    static String escapeJson(String text) {
+        return text.replace("\\", "\\\\")
+                .replace("\"", "\\\"")
+                .replace("\n", "\\n");
+    }
+
+    // ========== Права ==========
+
+    // Исходная проверка: точное совпадение строки в наборе прав пользователя
+    static boolean hasPermission(Map<String, ? extends Collection<String>> userPermissions, long userId,
+                                 String permission) {
+        if (permission.isEmpty()) return true;
+        Collection<String> userPerms = userPermissions.get(String.valueOf(userId));
+        return userPerms != null && userPerms.contains(permission);
+    }
+
+    // ========== Кулдауны ==========
+
+    // Исходная схема: ключ "user_id:команда" -> время использования
+    static final class CooldownMap {
+        private final Map<String, Long> cooldowns;
+
+        CooldownMap(Map<String, Long> backing) {
+            this.cooldowns = backing;
+        }
+
+        // Проверка и отметка использования, как в processTelegramCommand
+        long tryAcquire(String userId, String command, long now, long cooldownSeconds) {
+            String key = userId + ":" + command;
+            Long lastTime = cooldowns.get(key);
+            if (lastTime != null) {
+                long timePassed = (now - lastTime) / 1000;
+                if (timePassed < cooldownSeconds) {
+                    return cooldownSeconds * 1000 - (now - lastTime);
+                }
+            }
+            cooldowns.put(key, now);
+            return 0;
+        }
+
+        void remove(String userId, String command) {
+            cooldowns.remove(userId + ":" + command);
+        }
+
+        int size() {
+            return cooldowns.size();
+        }
+    }
+
+    // Текстовый cooldowns.txt: строки "user_id:команда:время" (разбор исправлен, в исходнике split(":", 2)
+    // отбрасывал все строки)
+    static Map<String, Long> loadTextCooldowns(File file) throws IOException {
+        List<String> lines = Files.readAllLines(file.toPath());
+        Map<String, Long> cooldowns = new HashMap<>(lines.size() * 2);
+        for (String line : lines) {
+            int last = line.lastIndexOf(':');
+            if (last <= 0) continue;
+            try {
+                cooldowns.put(line.substring(0, last), Long.parseLong(line.substring(last + 1)));
+            } catch (NumberFormatException e) {
+                // Пропускаем некорректные строки
+            }
+        }
+        return cooldowns;
+    }
+}
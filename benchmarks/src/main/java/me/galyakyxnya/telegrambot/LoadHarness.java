@@ -0,0 +1,469 @@
+package me.galyakyxnya.telegrambot;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+// Нагрузочный стенд без сервера: настоящие TelegramApiClient, UpdateHandler, MainThreadDispatcher,
+// OutboundDispatcher и ReplyCoalescer против MockBotApi. Планировщик Bukkit заменён потоком,
+// который тикает 20 раз в секунду, dispatchCommand - заглушкой с заданной стоимостью.
+// Задержка считается от появления сообщения в заглушке до выполнения команды и до получения ответа.
+//   java -cp benchmarks/target/benchmarks.jar me.galyakyxnya.telegrambot.LoadHarness --users=5000 --rate=500
+public final class LoadHarness {
+
+    private static final String TOKEN = "123456:HARNESS";
+    private static final long CHAT_ID = Payloads.GROUP_CHAT_ID;
+    // Аргумент команды "p<номер сообщения>" возвращается в ответе и связывает его с отправкой
+    private static final String PLAYER_PREFIX = "p";
+    private static final long TICK_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+    // Начало ответа на запрос из снимка
+    private static final String QUERY_REPLY = "👥";
+
+    private final Map<String, String> options;
+    private final int users;
+    private final int chats;
+    private final double rate;
+    private final int durationSeconds;
+    private final boolean webhook;
+    private final long dispatchNanos;
+    private final long tickLoadNanos;
+    private final long cooldownSeconds;
+    private final boolean queries;
+
+    private AtomicLongArray postedAt;
+    private final AtomicLong executed = new AtomicLong();
+    private final AtomicLong replies = new AtomicLong();
+    private final AtomicLong otherReplies = new AtomicLong();
+    private final LatencyHistogram toDispatch = new LatencyHistogram();
+    private final LatencyHistogram toReply = new LatencyHistogram();
+    private final LatencyHistogram toQueryReply = new LatencyHistogram();
+    private volatile double mspt;
+    private volatile int maxCarriers;
+
+    private LoadHarness(Map<String, String> options) {
+        this.options = options;
+        this.users = intOption("users", 5000);
+        this.chats = Math.max(1, intOption("chats", 1));
+        this.rate = doubleOption("rate", 500);
+        this.durationSeconds = intOption("duration", 30);
+        this.webhook = "webhook".equals(options.getOrDefault("mode", "polling"));
+        this.dispatchNanos = TimeUnit.MICROSECONDS.toNanos(intOption("dispatch-us", 200));
+        this.tickLoadNanos = TimeUnit.MICROSECONDS.toNanos(intOption("tick-load-us", 20_000));
+        this.cooldownSeconds = intOption("cooldown", 0);
+        this.queries = boolOption("queries");
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--")) continue;
+            int eq = arg.indexOf('=');
+            options.put(eq > 0 ? arg.substring(2, eq) : arg.substring(2), eq > 0 ? arg.substring(eq + 1) : "true");
+        }
+        if (options.containsKey("help")) {
+            System.out.println("""
+                    Параметры (--имя=значение):
+                      users=5000          синтетических пользователей
+                      chats=1             чатов, между которыми распределены пользователи
+                      rate=500            сообщений в секунду от всех пользователей
+                      duration=30         длительность нагрузки, сек
+                      mode=polling        polling или webhook
+                      poll-timeout=30     таймаут long-poll, сек
+                      send-latency-ms=20  задержка sendMessage в заглушке (+ send-jitter-ms=10)
+                      rate-limit=0.01     доля ответов 429 на sendMessage (retry-after=1)
+                      dispatch-us=200     стоимость dispatchCommand в главном потоке
+                      tick-load-us=20000  работа сервера за тик помимо очереди бота
+                      tick-budget-ms=2    бюджет очереди бота за тик
+                      cooldown=0          кулдаун команд, сек
+                      flood=false         включить антифлуд с настройками по умолчанию
+                      queries=false       /online отвечает из снимка сервера, без главного потока
+                      telegram-limits=false  лимиты отправки Telegram (25/с, 20/мин на чат)""");
+            return;
+        }
+        new LoadHarness(options).run();
+    }
+
+    private void run() throws Exception {
+        Logger logger = Logger.getLogger("LoadHarness");
+        logger.setLevel(Level.WARNING);
+
+        int expected = (int) Math.ceil(rate * durationSeconds) + 1;
+        postedAt = new AtomicLongArray(expected);
+
+        MockBotApi api = new MockBotApi(TOKEN, new MockBotApi.Options(
+                intOption("send-latency-ms", 20), intOption("send-jitter-ms", 10),
+                doubleOption("rate-limit", 0.01), intOption("retry-after", 1)), this::onSend);
+        api.start();
+
+        Metrics metrics = new Metrics(true);
+        IoExecutor io = new IoExecutor("Harness", logger);
+        TelegramApiClient client = new TelegramApiClient(api.apiUrl(), TOKEN, Duration.ofSeconds(5),
+                Duration.ofSeconds(10), 2, 200, io, metrics);
+        boolean telegramLimits = boolOption("telegram-limits");
+        OutboundDispatcher outbound = new OutboundDispatcher(client, metrics, logger, 100_000,
+                OutboundDispatcher.DropPolicy.DROP_OLDEST, 16,
+                telegramLimits ? 25 : 100_000,
+                telegramLimits ? 3 : 100_000,
+                telegramLimits ? 20 / 60.0 : 100_000,
+                new CircuitBreaker(5, 1000, 30_000), null);
+        outbound.start(io);
+        ReplyCoalescer coalescer = new ReplyCoalescer(outbound, 250,
+                ReplyCoalescer.Kind.fromConfig(List.of("cooldown", "unknown-command", "no-permission")));
+
+        File offsetFile = Files.createTempFile("harness-offset", ".dat").toFile();
+        offsetFile.deleteOnExit();
+        UpdateTracker tracker = new UpdateTracker(offsetFile, 1024, System.currentTimeMillis() / 1000,
+                true, 300, 2);
+
+        MainThreadDispatcher mainThread = new MainThreadDispatcher(
+                (long) (doubleOption("tick-budget-ms", 2) * 1_000_000), 45, () -> mspt, metrics, logger);
+        CooldownStore cooldowns = new CooldownStore(System.currentTimeMillis());
+        PermissionStore permissions = new PermissionStore();
+        Messages messages = Payloads.defaultMessages();
+
+        UpdateHandler handler = new UpdateHandler(tracker, cooldowns, permissions, mainThread,
+                this::dispatch, coalescer::submit,
+                entry -> { }, metrics, logger, settings(messages));
+        handler.setRegistry(registry(cooldowns, messages));
+        handler.startBacklog(io);
+
+        // Заменяет BukkitRunnable.runTaskTimer: тик сервера, затем очередь бота
+        Thread ticker = Thread.ofPlatform().name("Server thread").daemon().start(() -> tick(mainThread, cooldowns, handler, metrics));
+
+        WebhookServer webhookServer = null;
+        Future<?> poller = null;
+        if (webhook) {
+            webhookServer = new WebhookServer(new InetSocketAddress("127.0.0.1", 0), "/telegram", "harness-secret",
+                    null, handler::handleUpdate, io, metrics, logger);
+            webhookServer.start();
+            client.call("setWebhook", "{\"url\": \"http://127.0.0.1:" + webhookServer.port()
+                    + "/telegram\", \"secret_token\": \"harness-secret\"}").get(5, TimeUnit.SECONDS);
+        } else {
+            int pollTimeout = intOption("poll-timeout", 30);
+            poller = io.start("Poll", () -> poll(client, tracker, handler, metrics, pollTimeout));
+        }
+
+        Thread sampler = Thread.ofPlatform().name("Harness-sampler").daemon().start(this::sampleCarriers);
+
+        System.out.printf("Нагрузка: %d пользователей в %d чатах, %.0f сообщений/с, %d с, режим %s%n",
+                users, chats, rate, durationSeconds, webhook ? "webhook" : "long-poll");
+        long loadStart = System.nanoTime();
+        int posted = generate(api, expected);
+        long loadNanos = System.nanoTime() - loadStart;
+
+        // Дожидаемся ответов на выполненные команды, но не дольше 30 секунд
+        long drainDeadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        while (System.nanoTime() < drainDeadline
+                && (replies.get() < executed.get() + metrics.histogram(Metrics.Stage.QUERY).count()
+                || mainThread.stats().queued() > 0)) {
+            Thread.sleep(50);
+        }
+        long totalNanos = System.nanoTime() - loadStart;
+
+        report(posted, loadNanos, totalNanos, metrics, api.stats(), outbound.stats(), mainThread.stats(), tracker);
+
+        if (poller != null) poller.cancel(true);
+        if (webhookServer != null) webhookServer.stop();
+        ticker.interrupt();
+        sampler.interrupt();
+        coalescer.shutdown();
+        outbound.stop(1000);
+        client.close();
+        io.shutdown(Duration.ofSeconds(2));
+        api.stop();
+    }
+
+    private UpdateHandler.Settings settings(Messages messages) {
+        FloodGuard userFlood = null;
+        FloodGuard chatFlood = null;
+        if (boolOption("flood")) {
+            userFlood = new FloodGuard(8192, 5, 0.5, true, 10, 300_000);
+            chatFlood = new FloodGuard(64, 20, 5, false, 0, 0);
+        }
+        List<ChatRoutes.Route> routes = new ArrayList<>();
+        for (int i = 0; i < chats; i++) {
+            long chatId = CHAT_ID - i;
+            routes.add(new ChatRoutes.Route("chat" + i, chatId, Set.of(), ChatRoutes.CooldownScope.SHARED,
+                    String.valueOf(chatId), true));
+        }
+        return new UpdateHandler.Settings(new ChatRoutes(routes), messages, userFlood, chatFlood, 300, false);
+    }
+
+    // Команды как в config.yml, но ответ содержит аргумент, по которому находится исходное сообщение
+    private CommandRegistry registry(CooldownStore cooldowns, Messages messages) {
+        CommandRegistry defaults = Payloads.registry(8, cooldowns);
+        List<BotCommand> commands = new ArrayList<>();
+        for (BotCommand template : defaults.commands()) {
+            BotCommand cmd = new BotCommand();
+            cmd.name = template.name;
+            cmd.id = template.id;
+            cmd.command = template.command;
+            cmd.commandTemplate = template.commandTemplate;
+            cmd.requiresPlayer = true;
+            cmd.cooldown = cooldownSeconds;
+            cmd.permission = "";
+            cmd.message = MessageTemplate.compile("✅ /" + cmd.name + " выполнена для %player%");
+            cmd.errorMessage = cmd.message;
+            cmd.description = template.description;
+            if (queries && cmd.name.equals("online")) {
+                cmd.query = ServerSnapshot.Query.ONLINE;
+                cmd.message = MessageTemplate.compile(QUERY_REPLY + " /online для %player%: %online%/%max%");
+                cmd.errorMessage = cmd.message;
+            }
+            commands.add(cmd);
+        }
+        return new CommandRegistry(1, commands, defaults.help());
+    }
+
+    // ========== Поставщики нагрузки ==========
+
+    // Равномерный поток: 85% команд, 5% неизвестных, 5% /help, 5% обычных сообщений
+    private int generate(MockBotApi api, int count) throws InterruptedException {
+        SplittableRandom random = new SplittableRandom(42);
+        String[] commands = {"fly", "money", "kit", "privat", "ban", "speed", "kick", "online"};
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.SECONDS.toNanos(durationSeconds);
+        double intervalNanos = TimeUnit.SECONDS.toNanos(1) / rate;
+
+        int seq = 0;
+        while (seq < count) {
+            long due = start + (long) (seq * intervalNanos);
+            long now = System.nanoTime();
+            if (due >= deadline) break;
+            if (due > now) {
+                TimeUnit.NANOSECONDS.sleep(due - now);
+            }
+
+            long userId = 100_000_000L + random.nextInt(users);
+            int roll = random.nextInt(100);
+            String text;
+            if (roll < 85) {
+                text = "/" + commands[random.nextInt(commands.length)] + " " + PLAYER_PREFIX + seq;
+            } else if (roll < 90) {
+                text = "/flyy " + PLAYER_PREFIX + seq;
+            } else if (roll < 95) {
+                text = "/help";
+            } else {
+                text = "привет всем";
+            }
+            postedAt.set(seq, System.nanoTime());
+            api.post(CHAT_ID - userId % chats, userId, "user" + userId, text);
+            seq++;
+        }
+        return seq;
+    }
+
+    private void poll(TelegramApiClient client, UpdateTracker tracker, UpdateHandler handler, Metrics metrics,
+                      int timeoutSeconds) {
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                long pollStart = System.nanoTime();
+                List<Update> updates = client.getUpdates(tracker.offset() + 1, timeoutSeconds, 100, "[\"message\"]")
+                        .get(timeoutSeconds + 15L, TimeUnit.SECONDS);
+                metrics.record(Metrics.Stage.POLL, System.nanoTime() - pollStart);
+                handler.handleUpdates(updates);
+            } catch (InterruptedException e) {
+                return;
+            } catch (Exception e) {
+                System.err.println("Ошибка опроса: " + e.getMessage());
+            }
+        }
+    }
+
+    // ========== Подмена сервера ==========
+
+    private void tick(MainThreadDispatcher mainThread, CooldownStore cooldowns, UpdateHandler handler, Metrics metrics) {
+        long next = System.nanoTime();
+        long ticks = 0;
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                long start = System.nanoTime();
+                spin(tickLoadNanos);
+                mainThread.runTick();
+                long spent = System.nanoTime() - start;
+                mspt = mspt == 0 ? spent / 1e6 : mspt * 0.95 + spent / 1e6 * 0.05;
+                // Раз в секунду, как таймер очистки и сбор снимка в плагине
+                if (++ticks % 20 == 0) {
+                    cooldowns.expire(System.currentTimeMillis());
+                    long snapshotStart = System.nanoTime();
+                    handler.setServerState(serverState());
+                    metrics.record(Metrics.Stage.SNAPSHOT, System.nanoTime() - snapshotStart);
+                }
+
+                next += TICK_NANOS;
+                long sleep = next - System.nanoTime();
+                if (sleep > 0) {
+                    TimeUnit.NANOSECONDS.sleep(sleep);
+                } else {
+                    // Сервер не успевает: следующий тик сразу, без накопления долга
+                    next = System.nanoTime();
+                }
+            }
+        } catch (InterruptedException e) {
+            // остановка стенда
+        }
+    }
+
+    // Заменяет сбор Bukkit.getOnlinePlayers() и миров: 100 игроков, три мира
+    private ServerSnapshot serverState() {
+        List<String> players = new ArrayList<>(100);
+        for (int i = 0; i < 100; i++) {
+            players.add("Player" + i);
+        }
+        double tps = Math.min(20, 1000 / Math.max(mspt, 1));
+        return new ServerSnapshot(System.currentTimeMillis(), 200, players, new double[]{tps, tps, tps}, mspt,
+                List.of(new ServerSnapshot.WorldStats("world", 80, 2400, 900),
+                        new ServerSnapshot.WorldStats("world_nether", 15, 600, 300),
+                        new ServerSnapshot.WorldStats("world_the_end", 5, 150, 100)));
+    }
+
+    // Заменяет Bukkit.dispatchCommand; вызывается из потока тиков
+    private boolean dispatch(BotCommand cmd, String args, String command) {
+        long seq = sequence(args, 0);
+        if (seq >= 0 && seq < postedAt.length()) {
+            toDispatch.record(System.nanoTime() - postedAt.get((int) seq));
+        }
+        spin(dispatchNanos);
+        executed.incrementAndGet();
+        return true;
+    }
+
+    private void onSend(String chatId, String text) {
+        long now = System.nanoTime();
+        boolean matched = false;
+        if (text.startsWith(QUERY_REPLY)) {
+            long seq = sequence(text, text.indexOf(" " + PLAYER_PREFIX) + 1);
+            if (seq >= 0 && seq < postedAt.length()) {
+                toQueryReply.record(now - postedAt.get((int) seq));
+            }
+        }
+        // Склеенные ответы содержат несколько номеров
+        for (int i = text.indexOf(" " + PLAYER_PREFIX); i >= 0; i = text.indexOf(" " + PLAYER_PREFIX, i + 1)) {
+            long seq = sequence(text, i + 1);
+            if (seq >= 0 && seq < postedAt.length()) {
+                toReply.record(now - postedAt.get((int) seq));
+                replies.incrementAndGet();
+                matched = true;
+            }
+        }
+        if (!matched) {
+            otherReplies.incrementAndGet();
+        }
+    }
+
+    private static long sequence(String text, int from) {
+        if (!text.startsWith(PLAYER_PREFIX, from)) return -1;
+        long value = 0;
+        int i = from + PLAYER_PREFIX.length();
+        int start = i;
+        while (i < text.length() && Character.isDigit(text.charAt(i))) {
+            value = value * 10 + (text.charAt(i++) - '0');
+        }
+        return i == start ? -1 : value;
+    }
+
+    private static void spin(long nanos) {
+        long end = System.nanoTime() + nanos;
+        while (System.nanoTime() < end) {
+            Thread.onSpinWait();
+        }
+    }
+
+    // Несущие потоки виртуальных потоков - это платформенные потоки ForkJoinPool
+    private void sampleCarriers() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                int carriers = 0;
+                for (Thread thread : Thread.getAllStackTraces().keySet()) {
+                    if (thread.getName().startsWith("ForkJoinPool-") && thread.getState() == Thread.State.RUNNABLE) {
+                        carriers++;
+                    }
+                }
+                maxCarriers = Math.max(maxCarriers, carriers);
+                Thread.sleep(100);
+            }
+        } catch (InterruptedException e) {
+            // остановка стенда
+        }
+    }
+
+    // ========== Отчёт ==========
+
+    private void report(int posted, long loadNanos, long totalNanos, Metrics metrics, MockBotApi.Stats api,
+                        OutboundDispatcher.Stats outbound, MainThreadDispatcher.Stats tick, UpdateTracker tracker) {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        double loadSeconds = loadNanos / 1e9;
+
+        System.out.println();
+        System.out.printf("Отправлено сообщений: %d за %.1f с (%.0f/с)%n", posted, loadSeconds, posted / loadSeconds);
+        System.out.printf("Обработано обновлений: %d, выполнено команд: %d (%.0f/с), ответов с результатом: %d, прочих ответов: %d%n",
+                metrics.count(Metrics.Counter.UPDATES), executed.get(), executed.get() / (totalNanos / 1e9),
+                replies.get(), otherReplies.get());
+        System.out.printf("Заглушка: getUpdates %d, sendMessage %d, 429: %d, ошибок webhook: %d, не подтверждено: %d%n",
+                api.pollCalls(), api.sendCalls(), api.rateLimited(), api.webhookFailures(), api.pending());
+        System.out.printf("Отправка: %d, отброшено %d, ошибок %d, в очереди %d%n",
+                outbound.sent(), outbound.dropped(), outbound.failed(),
+                outbound.queuedReplies() + outbound.queuedBroadcasts());
+        System.out.printf("Главный поток: выполнено %d, тиков с ограничением %d, сред. тик %s, MSPT %.1f%n",
+                tick.executed(), tick.throttledTicks(), MainThreadDispatcher.Stats.millis(tick.avgTickNanos()), mspt);
+        System.out.printf("Повторов: %d, устаревших: %d, антифлуд отбросил: %d%n",
+                tracker.duplicates(), tracker.stale(), metrics.count(Metrics.Counter.FLOOD_REJECTED));
+        System.out.printf("Потоки: пик %d платформенных, несущих виртуальных занято одновременно до %d%n",
+                threads.getPeakThreadCount(), maxCarriers);
+
+        System.out.println();
+        System.out.println("Задержка                  p50        p90        p99        макс.      (n)");
+        printRow("сообщение -> выполнение", toDispatch);
+        printRow("сообщение -> ответ", toReply);
+        printRow("запрос -> ответ", toQueryReply);
+        for (Metrics.Stage stage : Metrics.Stage.values()) {
+            printRow(stage.title, metrics.histogram(stage));
+        }
+
+        long median = toReply.percentile(0.5);
+        System.out.println();
+        System.out.printf("Медиана сообщение -> ответ %s (цель < 300 мс): %s%n",
+                MainThreadDispatcher.Stats.millis(median),
+                toReply.count() > 0 && median < TimeUnit.MILLISECONDS.toNanos(300) ? "OK" : "НЕ ДОСТИГНУТА");
+    }
+
+    private static void printRow(String title, LatencyHistogram histogram) {
+        if (histogram.count() == 0) return;
+        System.out.printf("%-24s %-10s %-10s %-10s %-10s (%d)%n", title,
+                MainThreadDispatcher.Stats.millis(histogram.percentile(0.5)),
+                MainThreadDispatcher.Stats.millis(histogram.percentile(0.9)),
+                MainThreadDispatcher.Stats.millis(histogram.percentile(0.99)),
+                MainThreadDispatcher.Stats.millis(histogram.max()),
+                histogram.count());
+    }
+
+    private int intOption(String name, int fallback) {
+        String value = options.get(name);
+        return value == null ? fallback : Integer.parseInt(value);
+    }
+
+    private double doubleOption(String name, double fallback) {
+        String value = options.get(name);
+        return value == null ? fallback : Double.parseDouble(value);
+    }
+
+    private boolean boolOption(String name) {
+        return Boolean.parseBoolean(options.getOrDefault(name, "false"));
+    }
+}
@@ -0,0 +1,370 @@
+package me.galyakyxnya.telegrambot;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Локальная замена Telegram Bot API для нагрузочного стенда. Бот подключается к ней через
+// telegram.api-url: getMe, getUpdates с long-poll и подтверждением через offset, sendMessage
+// с настраиваемой задержкой и долей ответов 429, setWebhook/deleteWebhook с доставкой обновлений POST-ом.
+final class MockBotApi {
+
+    // Доля ответов 429 на sendMessage и сколько секунд просить подождать
+    record Options(long sendLatencyMillis, long sendJitterMillis, double rateLimitShare, int retryAfterSeconds) {
+    }
+
+    interface SendListener {
+        void onSend(String chatId, String text);
+    }
+
+    private static final String SECRET_HEADER = "X-Telegram-Bot-Api-Secret-Token";
+    // Как max_connections по умолчанию у Telegram
+    private static final int WEBHOOK_CONNECTIONS = 40;
+
+    static {
+        // Без TCP_NODELAY заголовки и тело ответа упираются в Nagle и отложенный ACK (+40 мс на запрос).
+        // Читается при создании первого HttpServer, поэтому действует и на WebhookServer стенда
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+    }
+
+    private final String token;
+    private final Options options;
+    private final SendListener listener;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final HttpClient webhookClient = HttpClient.newBuilder()
+            .connectTimeout(Duration.ofSeconds(5))
+            .executor(executor)
+            .build();
+    private final Semaphore webhookSlots = new Semaphore(WEBHOOK_CONNECTIONS);
+    private HttpServer server;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition arrived = lock.newCondition();
+    // Обновления, ещё не подтверждённые через offset (или не доставленные на webhook)
+    private final ArrayDeque<Pending> pending = new ArrayDeque<>();
+    private long nextUpdateId = 1;
+    private long nextMessageId = 1;
+    private String webhookUrl;
+    private String webhookSecret;
+
+    private final AtomicLong pollCalls = new AtomicLong();
+    private final AtomicLong sendCalls = new AtomicLong();
+    private final AtomicLong rateLimited = new AtomicLong();
+    private final AtomicLong webhookFailures = new AtomicLong();
+
+    MockBotApi(String token, Options options, SendListener listener) {
+        this.token = token;
+        this.options = options;
+        this.listener = listener;
+    }
+
+    void start() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", this::handle);
+        // Висящие long-poll запросы и задержка sendMessage не занимают платформенные потоки
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    void stop() {
+        lock.lock();
+        try {
+            webhookUrl = null;
+            arrived.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        server.stop(0);
+        webhookClient.shutdownNow();
+        executor.shutdownNow();
+    }
+
+    String apiUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    // Новое сообщение в чате, как если бы его написал пользователь; возвращает update_id
+    long post(long chatId, long userId, String username, String text) {
+        lock.lock();
+        try {
+            long updateId = nextUpdateId++;
+            String json = "{\"update_id\":" + updateId + ",\"message\":{"
+                    + "\"message_id\":" + nextMessageId++
+                    + ",\"from\":{\"id\":" + userId + ",\"is_bot\":false,\"first_name\":\""
+                    + TelegramApiClient.escapeJson(username) + "\",\"username\":\""
+                    + TelegramApiClient.escapeJson(username) + "\"}"
+                    + ",\"chat\":{\"id\":" + chatId + ",\"type\":\"supergroup\"}"
+                    + ",\"date\":" + System.currentTimeMillis() / 1000
+                    + ",\"text\":\"" + TelegramApiClient.escapeJson(text) + "\"}}";
+            Pending update = new Pending(updateId, json);
+            if (webhookUrl != null) {
+                deliver(update, webhookUrl, webhookSecret);
+            } else {
+                pending.add(update);
+                arrived.signalAll();
+            }
+            return updateId;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    Stats stats() {
+        lock.lock();
+        try {
+            return new Stats(pending.size(), pollCalls.get(), sendCalls.get(), rateLimited.get(),
+                    webhookFailures.get());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    record Stats(int pending, long pollCalls, long sendCalls, long rateLimited, long webhookFailures) {
+    }
+
+    // ========== HTTP ==========
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            String path = exchange.getRequestURI().getPath();
+            String prefix = "/bot" + token + "/";
+            if (!path.startsWith(prefix)) {
+                respond(exchange, 401, "{\"ok\":false,\"error_code\":401,\"description\":\"Unauthorized\"}");
+                return;
+            }
+
+            String body;
+            try (InputStream in = exchange.getRequestBody()) {
+                body = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+            }
+
+            switch (path.substring(prefix.length())) {
+                case "getMe" -> respond(exchange, 200,
+                        "{\"ok\":true,\"result\":{\"id\":42,\"is_bot\":true,\"first_name\":\"Mock\",\"username\":\"mock_bot\"}}");
+                case "getUpdates" -> getUpdates(exchange, body);
+                case "sendMessage" -> sendMessage(exchange, body);
+                case "setWebhook" -> setWebhook(exchange, body);
+                case "deleteWebhook" -> {
+                    applyWebhook(null, null);
+                    respond(exchange, 200, "{\"ok\":true,\"result\":true}");
+                }
+                default -> respond(exchange, 404, "{\"ok\":false,\"error_code\":404,\"description\":\"Not Found\"}");
+            }
+        }
+    }
+
+    private void getUpdates(HttpExchange exchange, String body) throws IOException {
+        pollCalls.incrementAndGet();
+        long offset = longField(body, "offset", 0);
+        long timeoutNanos = TimeUnit.SECONDS.toNanos(longField(body, "timeout", 0));
+        int limit = (int) Math.max(1, Math.min(100, longField(body, "limit", 100)));
+
+        StringBuilder json = new StringBuilder("{\"ok\":true,\"result\":[");
+        lock.lock();
+        try {
+            if (webhookUrl != null) {
+                respond(exchange, 409, "{\"ok\":false,\"error_code\":409,"
+                        + "\"description\":\"Conflict: can't use getUpdates method while webhook is active\"}");
+                return;
+            }
+            // offset подтверждает всё, что меньше него
+            while (!pending.isEmpty() && pending.peekFirst().updateId < offset) {
+                pending.pollFirst();
+            }
+            // Long-poll: держим запрос, пока не придёт обновление или не истечёт timeout
+            while (pending.isEmpty() && timeoutNanos > 0 && webhookUrl == null) {
+                timeoutNanos = arrived.awaitNanos(timeoutNanos);
+            }
+            int count = 0;
+            for (Iterator<Pending> it = pending.iterator(); it.hasNext() && count < limit; count++) {
+                if (count > 0) json.append(',');
+                json.append(it.next().json);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            lock.unlock();
+        }
+        respond(exchange, 200, json.append("]}").toString());
+    }
+
+    private void sendMessage(HttpExchange exchange, String body) throws IOException {
+        sendCalls.incrementAndGet();
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long latency = options.sendLatencyMillis()
+                + (options.sendJitterMillis() > 0 ? random.nextLong(options.sendJitterMillis() + 1) : 0);
+        if (latency > 0) {
+            try {
+                Thread.sleep(latency);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+
+        if (random.nextDouble() < options.rateLimitShare()) {
+            rateLimited.incrementAndGet();
+            respond(exchange, 429, "{\"ok\":false,\"error_code\":429,\"description\":\"Too Many Requests: retry after "
+                    + options.retryAfterSeconds() + "\",\"parameters\":{\"retry_after\":"
+                    + options.retryAfterSeconds() + "}}");
+            return;
+        }
+
+        String chatId = stringField(body, "chat_id");
+        String text = stringField(body, "text");
+        if (chatId == null || text == null || text.isEmpty()) {
+            respond(exchange, 400, "{\"ok\":false,\"error_code\":400,\"description\":\"Bad Request: message text is empty\"}");
+            return;
+        }
+        listener.onSend(chatId, text);
+        respond(exchange, 200, "{\"ok\":true,\"result\":{\"message_id\":" + random.nextInt(1, Integer.MAX_VALUE)
+                + ",\"chat\":{\"id\":" + chatId + "},\"date\":" + System.currentTimeMillis() / 1000 + "}}");
+    }
+
+    private void setWebhook(HttpExchange exchange, String body) throws IOException {
+        String url = stringField(body, "url");
+        if (url == null || url.isEmpty()) {
+            respond(exchange, 400, "{\"ok\":false,\"error_code\":400,\"description\":\"Bad Request: bad webhook\"}");
+            return;
+        }
+        applyWebhook(url, stringField(body, "secret_token"));
+        respond(exchange, 200, "{\"ok\":true,\"result\":true,\"description\":\"Webhook was set\"}");
+    }
+
+    // При установке webhook накопленные обновления уходят на него
+    private void applyWebhook(String url, String secret) {
+        lock.lock();
+        try {
+            webhookUrl = url;
+            webhookSecret = secret;
+            if (url != null) {
+                Pending update;
+                while ((update = pending.pollFirst()) != null) {
+                    deliver(update, url, secret);
+                }
+            }
+            arrived.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Не больше WEBHOOK_CONNECTIONS одновременных запросов; при ошибке - одна повторная попытка
+    private void deliver(Pending update, String url, String secret) {
+        executor.execute(() -> {
+            HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(url))
+                    .timeout(Duration.ofSeconds(30))
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofString(update.json, StandardCharsets.UTF_8));
+            if (secret != null) {
+                request.header(SECRET_HEADER, secret);
+            }
+            for (int attempt = 0; attempt < 2; attempt++) {
+                try {
+                    webhookSlots.acquire();
+                    try {
+                        HttpResponse<Void> response = webhookClient.send(request.build(),
+                                HttpResponse.BodyHandlers.discarding());
+                        if (response.statusCode() == 200) return;
+                    } finally {
+                        webhookSlots.release();
+                    }
+                } catch (InterruptedException e) {
+                    return;
+                } catch (IOException e) {
+                    // повтор ниже
+                }
+            }
+            webhookFailures.incrementAndGet();
+        });
+    }
+
+    private static void respond(HttpExchange exchange, int status, String json) throws IOException {
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    // ========== Разбор запросов ==========
+
+    // Тела запросов плагина плоские, поэтому хватает поиска поля по имени
+    private static long longField(String body, String name, long fallback) {
+        int i = valueStart(body, name);
+        if (i < 0) return fallback;
+
+        boolean negative = i < body.length() && body.charAt(i) == '-';
+        if (negative) i++;
+        long value = 0;
+        int start = i;
+        while (i < body.length() && Character.isDigit(body.charAt(i))) {
+            value = value * 10 + (body.charAt(i++) - '0');
+        }
+        if (i == start) return fallback;
+        return negative ? -value : value;
+    }
+
+    private static String stringField(String body, String name) {
+        int i = valueStart(body, name);
+        if (i < 0 || i >= body.length() || body.charAt(i) != '"') return null;
+
+        StringBuilder value = new StringBuilder();
+        for (i++; i < body.length(); i++) {
+            char c = body.charAt(i);
+            if (c == '"') return value.toString();
+            if (c != '\\' || i + 1 >= body.length()) {
+                value.append(c);
+                continue;
+            }
+            char escaped = body.charAt(++i);
+            switch (escaped) {
+                case 'n' -> value.append('\n');
+                case 'r' -> value.append('\r');
+                case 't' -> value.append('\t');
+                case 'b' -> value.append('\b');
+                case 'f' -> value.append('\f');
+                case 'u' -> {
+                    value.append((char) Integer.parseInt(body, i + 1, i + 5, 16));
+                    i += 4;
+                }
+                default -> value.append(escaped);
+            }
+        }
+        return null;
+    }
+
+    private static int valueStart(String body, String name) {
+        int idx = body.indexOf("\"" + name + "\"");
+        if (idx < 0) return -1;
+        int i = body.indexOf(':', idx + name.length() + 2);
+        if (i < 0) return -1;
+        i++;
+        while (i < body.length() && Character.isWhitespace(body.charAt(i))) i++;
+        return i;
+    }
+
+    private record Pending(long updateId, String json) {
+    }
+}
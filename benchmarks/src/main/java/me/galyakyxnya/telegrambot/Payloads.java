@@ -0,0 +1,145 @@
+package me.galyakyxnya.telegrambot;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// Детерминированные входные данные для бенчмарков: ответы getUpdates в том виде,
+// в каком их присылает Telegram, и реестр команд как в config.yml по умолчанию.
+final class Payloads {
+
+    static final long GROUP_CHAT_ID = -1001234567890L;
+
+    private static final String[] COMMANDS = {"fly", "money", "kit", "privat", "ban", "speed", "kick", "online"};
+    private static final String[] NICKS = {"Steve", "Alex", "Notch", "jeb_", "Dinnerbone", "xXx_Pro_xXx", "Вася"};
+    private static final String[] CHATTER = {
+            "привет всем 👋",
+            "кто на сервере?",
+            "ребята, а как получить кит?",
+            "Сервер лагает \"немного\"\nили мне кажется",
+            "ok",
+            "🔥🔥🔥 лучший сервер",
+    };
+
+    private Payloads() {
+    }
+
+    // Ответ getUpdates из count обновлений, id начинаются с firstUpdateId.
+    // Примерно половина - команды в нужной группе, остальное - болтовня, другие чаты и сервисные поля.
+    static byte[] getUpdates(long firstUpdateId, int count, long seed) {
+        Random random = new Random(seed);
+        StringBuilder json = new StringBuilder(count * 512);
+        json.append("{\"ok\":true,\"result\":[");
+        for (int i = 0; i < count; i++) {
+            if (i > 0) json.append(',');
+            appendUpdate(json, firstUpdateId + i, random);
+        }
+        json.append("]}");
+        return json.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void appendUpdate(StringBuilder json, long updateId, Random random) {
+        long userId = 100_000_000L + random.nextInt(5_000);
+        boolean command = random.nextInt(100) < 55;
+        boolean otherChat = random.nextInt(100) < 10;
+        String nick = NICKS[random.nextInt(NICKS.length)];
+
+        String text = command
+                ? "/" + COMMANDS[random.nextInt(COMMANDS.length)] + (random.nextBoolean() ? " " + nick : "@UniversalBot " + nick)
+                : CHATTER[random.nextInt(CHATTER.length)];
+
+        json.append("{\"update_id\":").append(updateId).append(",\"message\":{")
+                .append("\"message_id\":").append(10_000 + updateId).append(',')
+                .append("\"from\":{\"id\":").append(userId)
+                .append(",\"is_bot\":false,\"first_name\":\"").append(escape(nick)).append('"');
+        if (random.nextBoolean()) {
+            json.append(",\"username\":\"").append(nick.toLowerCase()).append("_mc\"");
+        }
+        json.append(",\"language_code\":\"ru\"},")
+                .append("\"chat\":{\"id\":").append(otherChat ? -1009876543210L : GROUP_CHAT_ID)
+                .append(",\"title\":\"Сервер \\\"Minecraft\\\" \\ud83c\\udfae\",\"type\":\"supergroup\"},")
+                .append("\"date\":").append(1_700_000_000L + updateId).append(',');
+        if (random.nextInt(100) < 15) {
+            json.append("\"reply_to_message\":{\"message_id\":").append(updateId)
+                    .append(",\"from\":{\"id\":42,\"is_bot\":true,\"first_name\":\"Bot\"},")
+                    .append("\"chat\":{\"id\":").append(GROUP_CHAT_ID).append(",\"type\":\"supergroup\"},")
+                    .append("\"date\":1700000000,\"text\":\"✅ Готово\"},");
+        }
+        json.append("\"text\":\"").append(escape(text)).append('"');
+        if (command) {
+            int length = text.indexOf(' ') > 0 ? text.indexOf(' ') : text.length();
+            json.append(",\"entities\":[{\"offset\":0,\"length\":").append(length).append(",\"type\":\"bot_command\"}]");
+        }
+        json.append("}}");
+    }
+
+    private static String escape(String text) {
+        return TelegramApiClient.escapeJson(text);
+    }
+
+    // Реестр как после загрузки config.yml: commands команд с описаниями и частью прав
+    static CommandRegistry registry(int commands, CooldownStore store) {
+        return registry(commands, store, new PermissionStore());
+    }
+
+    // Номера прав выдаёт permissions, как в плагине
+    static CommandRegistry registry(int commands, CooldownStore store, PermissionStore permissions) {
+        Messages defaults = defaultMessages();
+        List<BotCommand> list = new ArrayList<>(commands);
+        List<HelpPages.Entry> entries = new ArrayList<>(commands);
+        MessageTemplate.Values values = new MessageTemplate.Values();
+
+        for (int i = 0; i < commands; i++) {
+            BotCommand cmd = new BotCommand();
+            cmd.name = i < COMMANDS.length ? COMMANDS[i] : "cmd" + i;
+            cmd.id = store.commandIndex(cmd.name);
+            cmd.command = "lp user %player% permission settemp essentials." + cmd.name + " true 60m";
+            cmd.commandTemplate = MessageTemplate.compile(cmd.command);
+            cmd.requiresPlayer = true;
+            cmd.cooldown = 3600L * (1 + i % 24);
+            cmd.permission = i % 4 == 3 ? "telegrambot." + cmd.name : "";
+            cmd.permissionId = permissions.permissionIndex(cmd.permission);
+            cmd.message = MessageTemplate.compile("✅ Команда /" + cmd.name + " выполнена для %player%!");
+            cmd.errorMessage = MessageTemplate.compile("❌ Ошибка выполнения /" + cmd.name);
+            cmd.description = "Описание команды " + cmd.name + " | Любой игрок";
+            list.add(cmd);
+
+            String line = defaults.commandFormat().render(values
+                    .set(MessageTemplate.Placeholder.CMD, cmd.name)
+                    .set(MessageTemplate.Placeholder.COOLDOWN, formatCooldown(cmd.cooldown))
+                    .set(MessageTemplate.Placeholder.EHO, cmd.description + " | "));
+            entries.add(new HelpPages.Entry(cmd.name, cmd.permissionId, line));
+        }
+        permissions.recompile();
+
+        HelpPages help = new HelpPages(entries, defaults.helpHeader().toString(),
+                defaults.helpFooter().toString(), defaults.helpPage());
+        return new CommandRegistry(1, list, help);
+    }
+
+    static Messages defaultMessages() {
+        return new Messages(
+                MessageTemplate.compile("🤖 Бот активирован!"),
+                MessageTemplate.compile("📋 Доступные команды:\n\n"),
+                MessageTemplate.compile("• /%cmd% - %eho% : %cooldown%\n"),
+                MessageTemplate.compile("\n💡 Просто напишите /команда НИК КАК В ИГРЕ в чат\n"),
+                MessageTemplate.compile("\n📄 Страница %page% из %pages% (/help <номер>)"),
+                MessageTemplate.compile("❌ Неизвестная команда. Используйте /help для списка команд"),
+                MessageTemplate.compile("\nВозможно, вы имели в виду /%cmd%?"),
+                MessageTemplate.compile("⏳ %user%, вы уже использовали эту команду.\nСледующее использование через: %time%"),
+                MessageTemplate.compile("❌ У вас нет прав для использования этой команды"),
+                MessageTemplate.compile("❌ Эта команда недоступна в этом чате"),
+                MessageTemplate.compile("❌ Укажите ник игрока: /%cmd% ник_игрока"),
+                MessageTemplate.compile("⏳ %user%, слишком много команд. Подождите немного."),
+                MessageTemplate.compile("🔇 %user%, вы отправляете слишком много команд. Команды не принимаются: %time%"),
+                MessageTemplate.compile("❌ Сервер с этой командой сейчас недоступен"));
+    }
+
+    static String formatCooldown(long seconds) {
+        long hours = TimeUnit.SECONDS.toHours(seconds);
+        long minutes = TimeUnit.SECONDS.toMinutes(seconds) % 60;
+        return hours > 0 ? hours + " ч " + minutes + " мин" : minutes + " мин";
+    }
+}
@@ -0,0 +1,91 @@
+package me.galyakyxnya.telegrambot;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+// Проверка права команды в потоке бота: бит в скомпилированном снимке PermissionStore
+// против исходного поиска строки в Map<String, Set<String>>. Снимок дополнительно разворачивает
+// роли и маски, которые исходная проверка не поддерживала.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(4)
+@Fork(1)
+public class PermissionBenchmark {
+
+    private static final String PERMISSION = "telegrambot.ban";
+
+    @Param({"100", "1000"})
+    public int users;
+
+    private PermissionStore store;
+    private int permissionId;
+    private Map<String, Set<String>> legacy;
+
+    @Setup
+    public void setup() {
+        store = new PermissionStore();
+        for (String name : List.of("kick", "jail", "ban", "unban", "give", "money", "restart")) {
+            store.permissionIndex("telegrambot." + name);
+        }
+        permissionId = store.permissionIndex(PERMISSION);
+        store.configure(Map.of(
+                "helper", new PermissionStore.Role("helper", Set.of("telegrambot.kick", "telegrambot.jail"), Set.of()),
+                "moderator", new PermissionStore.Role("moderator", Set.of(PERMISSION), Set.of("helper"))));
+
+        legacy = new ConcurrentHashMap<>();
+        for (int user = 1; user <= users; user++) {
+            // Каждый третий - модератор: роль в снимке, развёрнутые права в исходной карте
+            Set<String> granted = new HashSet<>(Set.of("telegrambot.money", "telegrambot.give"));
+            if (user % 3 == 0) {
+                store.load(String.valueOf(user), Set.of("telegrambot.money", "telegrambot.give", "role.moderator"));
+                granted.addAll(Set.of("telegrambot.kick", "telegrambot.jail", PERMISSION));
+            } else {
+                store.load(String.valueOf(user), granted);
+            }
+            legacy.put(String.valueOf(user), granted);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Users {
+        private long seed = Thread.currentThread().threadId() * 0x9E3779B97F4A7C15L + 1;
+
+        long next(int bound) {
+            seed ^= seed << 13;
+            seed ^= seed >>> 7;
+            seed ^= seed << 17;
+            // Часть проверок - от пользователей без прав
+            return 1 + Math.floorMod(seed, bound + bound / 4);
+        }
+    }
+
+    @Benchmark
+    public boolean snapshot(Users users) {
+        return store.snapshot().has(users.next(this.users), permissionId);
+    }
+
+    @Benchmark
+    public boolean legacy(Users users) {
+        return LegacyBaselines.hasPermission(legacy, users.next(this.users), PERMISSION);
+    }
+}
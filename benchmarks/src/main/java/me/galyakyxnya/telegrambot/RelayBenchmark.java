@@ -0,0 +1,76 @@
+package me.galyakyxnya.telegrambot;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+// Приём события чата в EventRelay: три потока чата пишут в кольцо без блокировок, один поток забирает.
+// Исходный вариант - сообщение на каждое событие в очередь под ReentrantLock с сигналом,
+// как OutboundDispatcher.enqueue при вызове sendTelegramMessage из слушателя.
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RelayBenchmark {
+
+    private static final Object EVENT = new Object();
+
+    @Param({"4096"})
+    public int capacity;
+
+    private EventRelay.Ring<Object> ring;
+    private ArrayBlockingQueue<Object> queue;
+    private final List<Object> drained = new ArrayList<>();
+
+    @Setup
+    public void setup() {
+        ring = new EventRelay.Ring<>(capacity);
+        queue = new ArrayBlockingQueue<>(capacity);
+    }
+
+    @Benchmark
+    @Group("ring")
+    @GroupThreads(3)
+    public boolean ringOffer() {
+        return ring.offer(EVENT);
+    }
+
+    @Benchmark
+    @Group("ring")
+    @GroupThreads(1)
+    public int ringDrain() {
+        return ring.drain(event -> { });
+    }
+
+    @Benchmark
+    @Group("legacy")
+    @GroupThreads(3)
+    public boolean legacyOffer() {
+        return queue.offer(EVENT);
+    }
+
+    @Benchmark
+    @Group("legacy")
+    @GroupThreads(1)
+    public int legacyDrain() {
+        drained.clear();
+        return queue.drainTo(drained);
+    }
+}
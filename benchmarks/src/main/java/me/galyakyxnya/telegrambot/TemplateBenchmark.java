@@ -0,0 +1,69 @@
+package me.galyakyxnya.telegrambot;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+// Подстановка в шаблоны команды и ответа: скомпилированный MessageTemplate против цепочки String.replace.
+// Values создаётся на каждую команду, как в executeMinecraftCommand.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TemplateBenchmark {
+
+    private static final String COMMAND = "lp user %player% permission settemp essentials.fly true 60m";
+    private static final String COOLDOWN = "⏳ %user%, вы уже использовали эту команду.\nСледующее использование через: %time%";
+
+    private MessageTemplate command;
+    private MessageTemplate cooldown;
+    private String args;
+    private String username;
+    private String userId;
+
+    @Setup
+    public void setup() {
+        command = MessageTemplate.compile(COMMAND);
+        cooldown = MessageTemplate.compile(COOLDOWN);
+        args = "Steve";
+        username = "@steve_mc";
+        userId = "123456789";
+    }
+
+    @Benchmark
+    public String compiledCommand() {
+        return command.render(new MessageTemplate.Values()
+                .set(MessageTemplate.Placeholder.PLAYER, args)
+                .set(MessageTemplate.Placeholder.ARGS, args)
+                .set(MessageTemplate.Placeholder.USER, username)
+                .set(MessageTemplate.Placeholder.USER_ID, userId));
+    }
+
+    @Benchmark
+    public String legacyCommand() {
+        return LegacyBaselines.renderCommand(COMMAND, args, username, userId);
+    }
+
+    @Benchmark
+    public String compiledCooldown() {
+        return cooldown.render(new MessageTemplate.Values()
+                .set(MessageTemplate.Placeholder.USER, username)
+                .set(MessageTemplate.Placeholder.TIME, "23 ч 59 мин"));
+    }
+
+    @Benchmark
+    public String legacyCooldown() {
+        return LegacyBaselines.renderCooldown(COOLDOWN, username, "23 ч 59 мин");
+    }
+}
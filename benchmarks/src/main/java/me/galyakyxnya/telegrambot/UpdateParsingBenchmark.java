@@ -0,0 +1,55 @@
+package me.galyakyxnya.telegrambot;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Разбор ответа getUpdates: потоковый TelegramUpdateParser против исходного split/indexOf.
+// Исходный вариант получает готовую строку, как после чтения тела ответа в StringBuilder,
+// поэтому в его замер добавлено декодирование UTF-8.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UpdateParsingBenchmark {
+
+    @Param({"1", "100"})
+    public int batchSize;
+
+    private byte[] payload;
+    private String groupChatId;
+
+    @Setup
+    public void setup() {
+        payload = Payloads.getUpdates(1, batchSize, 42);
+        groupChatId = String.valueOf(Payloads.GROUP_CHAT_ID);
+    }
+
+    @Benchmark
+    public List<Update> streamingParser() throws IOException {
+        return TelegramUpdateParser.parseUpdates(new ByteArrayInputStream(payload));
+    }
+
+    @Benchmark
+    public long legacyScanner(Blackhole bh) {
+        String json = new String(payload, StandardCharsets.UTF_8);
+        return LegacyBaselines.scanUpdates(json, groupChatId, bh::consume);
+    }
+}
@@ -0,0 +1,104 @@
+package me.galyakyxnya.telegrambot;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+// Путь processTelegramUpdates/handleUpdate до главного потока на пачке из 100 обновлений:
+// разбор, окно повторов, фильтр чата, антифлуд, разбор команды, поиск в реестре и кулдаун.
+// Пачки идут по кругу с разными update_id, чтобы окно повторов не превращало всё в дубликаты.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UpdatePipelineBenchmark {
+
+    private static final int BATCH = 100;
+    private static final int BATCHES = 16;
+
+    // true - лимиты антифлуда исчерпаны и почти все команды отбрасываются
+    @Param({"false", "true"})
+    public boolean flooded;
+
+    private byte[][] payloads;
+    private int next;
+
+    private File offsetFile;
+    private UpdateTracker tracker;
+    private FloodGuard users;
+    private FloodGuard chats;
+    private CooldownStore cooldowns;
+    private CommandRegistry registry;
+
+    @Setup
+    public void setup() throws IOException {
+        payloads = new byte[BATCHES][];
+        for (int i = 0; i < BATCHES; i++) {
+            payloads[i] = Payloads.getUpdates(1 + (long) i * BATCH, BATCH, i);
+        }
+
+        offsetFile = Files.createTempFile("bench-offset", ".dat").toFile();
+        tracker = new UpdateTracker(offsetFile, 1024, 0, true, 0, 0);
+        double rate = flooded ? 0.0001 : 1_000_000;
+        users = new FloodGuard(8192, flooded ? 1 : 1_000_000, rate, true, 0, 0);
+        chats = new FloodGuard(64, flooded ? 1 : 1_000_000, rate, false, 0, 0);
+        cooldowns = new CooldownStore(System.currentTimeMillis());
+        registry = Payloads.registry(8, cooldowns);
+    }
+
+    @TearDown
+    public void tearDown() {
+        offsetFile.delete();
+    }
+
+    @Benchmark
+    public void handleBatch(Blackhole bh) throws IOException {
+        byte[] payload = payloads[next];
+        next = (next + 1) % BATCHES;
+
+        long now = System.currentTimeMillis();
+        for (Update update : TelegramUpdateParser.parseUpdates(new ByteArrayInputStream(payload))) {
+            if (!tracker.markSeen(update.updateId())) continue;
+
+            Message message = update.message();
+            if (message == null || message.text() == null || message.chatId() != Payloads.GROUP_CHAT_ID) continue;
+
+            long nanos = System.nanoTime();
+            if (users.admit(message.fromId(), nanos) != FloodGuard.Verdict.ALLOW
+                    || chats.admit(message.chatId(), nanos) != FloodGuard.Verdict.ALLOW) {
+                continue;
+            }
+
+            CommandLine line = CommandLine.parse(message.text());
+            if (line == null) continue;
+            BotCommand cmd = registry.get(line.name());
+            if (cmd == null) {
+                bh.consume(registry.suggest(line.name()));
+                continue;
+            }
+
+            // После первой пачки почти все пары пользователь/команда уже на кулдауне,
+            // как при повторных командах в живом чате
+            bh.consume(cooldowns.tryAcquire(message.fromId(), cmd.id, now, cmd.cooldown * 1000));
+            bh.consume(line.args());
+        }
+    }
+}
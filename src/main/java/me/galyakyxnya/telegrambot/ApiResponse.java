@@ -0,0 +1,9 @@
+package me.galyakyxnya.telegrambot;
+
+// Ответ метода Bot API: HTTP статус и тело как есть
+record ApiResponse(int statusCode, String body) {
+
+    boolean ok() {
+        return statusCode == 200;
+    }
+}
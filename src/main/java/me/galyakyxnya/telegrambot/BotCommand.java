@@ -0,0 +1,27 @@
+package me.galyakyxnya.telegrambot;
+
+import java.util.List;
+
+// Команда из секции commands. После публикации в CommandRegistry не изменяется.
+final class BotCommand {
+    String name;
+    // Стабильный номер команды между перезагрузками (индекс в CooldownStore)
+    int id;
+    List<String> aliases = List.of();
+    String command;
+    // Запрос состояния сервера вместо команды (null - обычная команда)
+    ServerSnapshot.Query query;
+    MessageTemplate commandTemplate;
+    boolean requiresPlayer;
+    long cooldown;
+    String permission;
+    // Номер права в PermissionStore, -1 - команда доступна всем
+    int permissionId = -1;
+    MessageTemplate message;
+    MessageTemplate errorMessage;
+    // Сервер кластера, на котором выполняется команда ("" - тот, что принял сообщение)
+    String server = "";
+    boolean runAsConsole = true;
+    boolean usePlayerAsSender = false;
+    String description = "";
+}
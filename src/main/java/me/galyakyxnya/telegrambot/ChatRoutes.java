@@ -0,0 +1,117 @@
+package me.galyakyxnya.telegrambot;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+// Чаты, из которых принимаются команды, со своими списками команд, областью кулдауна
+// и адресом ответов. Неизменяемый снимок, подменяется при перезагрузке конфига.
+// Поиск по id чата - открытая адресация по long, без упаковки и хэширования строк.
+final class ChatRoutes {
+
+    enum CooldownScope {
+        // Один кулдаун на пользователя во всех чатах
+        SHARED,
+        // В этом чате свой кулдаун, независимый от других
+        CHAT;
+
+        static CooldownScope fromConfig(String value) {
+            return "chat".equalsIgnoreCase(value) ? CHAT : SHARED;
+        }
+    }
+
+    // id пользователей Telegram занимают не больше 52 бит; выше кладётся метка чата
+    private static final int SCOPE_SHIFT = 53;
+    private static final int SCOPE_MASK = (1 << (63 - SCOPE_SHIFT)) - 1;
+
+    static final ChatRoutes EMPTY = new ChatRoutes(Collections.emptyList());
+
+    // commands - имена команд в нижнем регистре (пустой набор - все команды).
+    // replyChatId - куда отправлять ответы, quote - отвечать на исходное сообщение
+    record Route(String name, long chatId, Set<String> commands, CooldownScope cooldownScope,
+                 String replyChatId, boolean quote) {
+
+        Route {
+            commands = Set.copyOf(commands);
+        }
+
+        boolean allows(BotCommand cmd) {
+            return commands.isEmpty() || commands.contains(cmd.name.toLowerCase(Locale.ROOT));
+        }
+
+        // Ключ пользователя в CooldownStore: для CHAT к id добавляется метка чата
+        long cooldownKey(long userId) {
+            if (cooldownScope == CooldownScope.SHARED) return userId;
+            long label = 1 + Math.floorMod(mix(chatId), SCOPE_MASK);
+            return userId | (label << SCOPE_SHIFT);
+        }
+
+        // Ответ в исходный чат с цитатой; если ответы уходят в другой чат, цитировать нечего
+        long replyTo(long messageId) {
+            return quote && replyChatId.equals(String.valueOf(chatId)) ? messageId : 0;
+        }
+    }
+
+    private final List<Route> routes;
+    private final long[] keys;
+    private final Route[] slots;
+    private final int mask;
+
+    ChatRoutes(List<Route> routes) {
+        this.routes = List.copyOf(routes);
+
+        int capacity = Integer.highestOneBit(Math.max(4, routes.size() * 4) - 1) << 1;
+        this.keys = new long[capacity];
+        this.slots = new Route[capacity];
+        this.mask = capacity - 1;
+
+        for (Route route : routes) {
+            int i = slot(route.chatId());
+            while (slots[i] != null && keys[i] != route.chatId()) {
+                i = (i + 1) & mask;
+            }
+            // Повтор id в конфиге: побеждает первый
+            if (slots[i] == null) {
+                keys[i] = route.chatId();
+                slots[i] = route;
+            }
+        }
+    }
+
+    // null, если команды из этого чата не принимаются
+    Route get(long chatId) {
+        int i = slot(chatId);
+        Route route;
+        while ((route = slots[i]) != null) {
+            if (keys[i] == chatId) return route;
+            i = (i + 1) & mask;
+        }
+        return null;
+    }
+
+    List<Route> all() {
+        return routes;
+    }
+
+    int size() {
+        return routes.size();
+    }
+
+    // Один чат со всеми командами - поведение до появления секции telegram.chats
+    static ChatRoutes single(long chatId) {
+        List<Route> routes = new ArrayList<>(1);
+        routes.add(new Route("group", chatId, Set.of(), CooldownScope.SHARED, String.valueOf(chatId), true));
+        return new ChatRoutes(routes);
+    }
+
+    private int slot(long chatId) {
+        return (int) mix(chatId) & mask;
+    }
+
+    private static long mix(long value) {
+        long h = value * 0x9E3779B97F4A7C15L;
+        return h ^ (h >>> 32);
+    }
+}
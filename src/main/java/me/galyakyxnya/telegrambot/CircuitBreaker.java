@@ -0,0 +1,97 @@
+package me.galyakyxnya.telegrambot;
+
+import java.util.concurrent.TimeUnit;
+
+// Размыкатель для вызовов Bot API: после threshold сетевых ошибок подряд попытки прекращаются
+// на openMillis, затем пропускается один пробный запрос. Неудачная проба удваивает паузу
+// до maxOpenMillis, удачная замыкает цепь. Не потокобезопасен: используется под lock OutboundDispatcher.
+final class CircuitBreaker {
+
+    enum State {
+        CLOSED,
+        // API недоступен, запросы не отправляются
+        OPEN,
+        // Пауза истекла, отправлен один пробный запрос
+        HALF_OPEN
+    }
+
+    private final int threshold;
+    private final long openNanos;
+    private final long maxOpenNanos;
+
+    private State state = State.CLOSED;
+    private int failures;
+    private long currentOpenNanos;
+    private long openUntil;
+    private boolean probeInFlight;
+    private long opened;
+
+    CircuitBreaker(int threshold, long openMillis, long maxOpenMillis) {
+        this.threshold = Math.max(1, threshold);
+        this.openNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, openMillis));
+        this.maxOpenNanos = Math.max(openNanos, TimeUnit.MILLISECONDS.toNanos(maxOpenMillis));
+        this.currentOpenNanos = openNanos;
+    }
+
+    // 0 - можно отправлять; Long.MAX_VALUE - ждать результата пробы; иначе наносекунд до пробы
+    long nanosUntilAllowed(long now) {
+        switch (state) {
+            case CLOSED:
+                return 0;
+            case OPEN:
+                if (now < openUntil) return openUntil - now;
+                state = State.HALF_OPEN;
+                probeInFlight = false;
+                return 0;
+            default:
+                return probeInFlight ? Long.MAX_VALUE : 0;
+        }
+    }
+
+    void onAttempt() {
+        if (state == State.HALF_OPEN) {
+            probeInFlight = true;
+        }
+    }
+
+    // API ответил (в том числе ошибкой 4xx или 429): сеть и сервер Telegram доступны.
+    // true - цепь была разомкнута и замкнулась этим вызовом
+    boolean onSuccess() {
+        boolean recovered = state != State.CLOSED;
+        state = State.CLOSED;
+        failures = 0;
+        probeInFlight = false;
+        currentOpenNanos = openNanos;
+        return recovered;
+    }
+
+    // true - цепь разомкнулась этим вызовом
+    boolean onFailure(long now) {
+        if (state == State.HALF_OPEN) {
+            currentOpenNanos = Math.min(maxOpenNanos, currentOpenNanos * 2);
+            open(now);
+            return true;
+        }
+        if (state == State.CLOSED && ++failures >= threshold) {
+            open(now);
+            return true;
+        }
+        return false;
+    }
+
+    private void open(long now) {
+        state = State.OPEN;
+        openUntil = now + currentOpenNanos;
+        probeInFlight = false;
+        opened++;
+    }
+
+    State state() {
+        return state;
+    }
+
+    // Сколько раз цепь размыкалась
+    long opened() {
+        return opened;
+    }
+}
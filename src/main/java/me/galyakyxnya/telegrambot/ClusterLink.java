@@ -0,0 +1,269 @@
+package me.galyakyxnya.telegrambot;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.Socket;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Future;
+
+// Соединение между узлами кластера поверх TCP. Кадр: [длина int][тип byte][данные],
+// строки - writeUTF. Кадры ставятся в ограниченную очередь, которую пишет в сокет свой поток:
+// узел, переставший читать, не блокирует отправителя (цикл опроса лидера). Чтение - один цикл readLoop.
+// Рукопожатие: лидер шлёт CHALLENGE со случайным nonce, сервер отвечает HELLO с HMAC от общего
+// cluster.secret, лидер - своим HELLO с HMAC. До authenticate() остальные кадры закрывают соединение.
+final class ClusterLink implements Closeable {
+
+    static final int VERSION = 2;
+
+    // Тип кадра
+    private static final byte HELLO = 1;
+    private static final byte COMMAND = 2;
+    private static final byte REPLY = 3;
+    private static final byte SEND = 4;
+    private static final byte PING = 5;
+    private static final byte CHALLENGE = 6;
+
+    private static final int MAX_FRAME = 256 * 1024;
+    // Кадров в очереди на запись; при переполнении отправка возвращает false
+    private static final int MAX_QUEUED = 1024;
+
+    // Команда, которую лидер передаёт серверу из ключа server
+    record Command(long chatId, long messageId, long userId, String username, String text) {
+    }
+
+    // Ответ в Telegram через лидера. kind == null - рассылка, а не ответ на команду
+    record Reply(String chatId, long replyToMessageId, ReplyCoalescer.Kind kind, String text) {
+    }
+
+    interface Handler {
+        // Лидер прислал nonce для HMAC в HELLO
+        void onChallenge(ClusterLink link, byte[] nonce);
+
+        // Узел представился: имя сервера, версия протокола и HMAC (пустой у версий без авторизации)
+        void onHello(ClusterLink link, String server, int version, byte[] mac);
+
+        void onCommand(ClusterLink link, Command command);
+
+        void onReply(ClusterLink link, Reply reply);
+
+        // Пульс лидера с подтверждённым offset обновлений
+        void onPing(ClusterLink link, long offset);
+    }
+
+    private final Socket socket;
+    private final DataInputStream in;
+    private final DataOutputStream out;
+    private final ArrayBlockingQueue<byte[]> outbox = new ArrayBlockingQueue<>(MAX_QUEUED);
+    private final Future<?> writer;
+    private volatile String server = "";
+    private volatile boolean authenticated;
+    private volatile boolean closed;
+
+    ClusterLink(Socket socket, int readTimeoutMillis, IoExecutor io) throws IOException {
+        this.socket = socket;
+        socket.setTcpNoDelay(true);
+        socket.setKeepAlive(true);
+        socket.setSoTimeout(readTimeoutMillis);
+        this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        this.writer = io.start("Cluster-writer", this::writeLoop);
+    }
+
+    // Имя сервера на той стороне, после проверки HELLO
+    String server() {
+        return server;
+    }
+
+    String remoteAddress() {
+        return String.valueOf(socket.getRemoteSocketAddress());
+    }
+
+    boolean isAuthenticated() {
+        return authenticated;
+    }
+
+    // HELLO проверен: с этого момента принимаются остальные кадры
+    void authenticate(String server) {
+        this.server = server;
+        this.authenticated = true;
+    }
+
+    boolean isOpen() {
+        return !closed;
+    }
+
+    // ========== Отправка ==========
+
+    boolean challenge(byte[] nonce) {
+        return write(CHALLENGE, data -> writeBytes(data, nonce));
+    }
+
+    boolean hello(String serverName, byte[] mac) {
+        return write(HELLO, data -> {
+            data.writeShort(VERSION);
+            data.writeUTF(serverName);
+            writeBytes(data, mac);
+        });
+    }
+
+    private static void writeBytes(DataOutputStream data, byte[] bytes) throws IOException {
+        data.writeShort(bytes.length);
+        data.write(bytes);
+    }
+
+    private static byte[] readBytes(DataInputStream data) throws IOException {
+        byte[] bytes = new byte[data.readUnsignedShort()];
+        data.readFully(bytes);
+        return bytes;
+    }
+
+    boolean command(Command command) {
+        return write(COMMAND, data -> {
+            data.writeLong(command.chatId());
+            data.writeLong(command.messageId());
+            data.writeLong(command.userId());
+            data.writeUTF(command.username());
+            data.writeUTF(command.text());
+        });
+    }
+
+    boolean reply(Reply reply) {
+        if (reply.kind() == null) {
+            return write(SEND, data -> {
+                data.writeUTF(reply.chatId());
+                data.writeUTF(reply.text());
+            });
+        }
+        return write(REPLY, data -> {
+            data.writeUTF(reply.chatId());
+            data.writeLong(reply.replyToMessageId());
+            data.writeByte(reply.kind().ordinal());
+            data.writeUTF(reply.text());
+        });
+    }
+
+    boolean ping(long offset) {
+        return write(PING, data -> data.writeLong(offset));
+    }
+
+    private interface Body {
+        void write(DataOutputStream data) throws IOException;
+    }
+
+    // false - соединение закрыто или очередь записи заполнена. Не блокирует
+    private boolean write(byte type, Body body) {
+        if (closed) return false;
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+        try {
+            DataOutputStream data = new DataOutputStream(bytes);
+            data.writeInt(0);
+            data.writeByte(type);
+            body.write(data);
+        } catch (IOException e) {
+            // Строка длиннее 64 КБ в UTF-8: кадр не отправляется, соединение остаётся
+            return false;
+        }
+        byte[] frame = bytes.toByteArray();
+        int length = frame.length - 4;
+        frame[0] = (byte) (length >>> 24);
+        frame[1] = (byte) (length >>> 16);
+        frame[2] = (byte) (length >>> 8);
+        frame[3] = (byte) length;
+        return outbox.offer(frame);
+    }
+
+    // Пишет накопившиеся кадры одним flush; ошибка записи закрывает соединение
+    private void writeLoop() {
+        try {
+            while (!closed) {
+                byte[] frame = outbox.take();
+                do {
+                    out.write(frame);
+                } while ((frame = outbox.poll()) != null);
+                out.flush();
+            }
+        } catch (InterruptedException e) {
+            // close()
+        } catch (IOException e) {
+            close();
+        }
+    }
+
+    // ========== Приём ==========
+
+    // Читает кадры до закрытия соединения; тайм-аут чтения означает пропавший узел
+    void readLoop(Handler handler) throws IOException {
+        try {
+            while (!closed) {
+                int length = in.readInt();
+                if (length <= 0 || length > MAX_FRAME) {
+                    throw new IOException("Некорректная длина кадра: " + length);
+                }
+                byte[] frame = new byte[length];
+                in.readFully(frame);
+                dispatch(new DataInputStream(new ByteArrayInputStream(frame)), handler);
+            }
+        } catch (EOFException e) {
+            // Узел закрыл соединение
+        } finally {
+            close();
+        }
+    }
+
+    private void dispatch(DataInputStream data, Handler handler) throws IOException {
+        byte type = data.readByte();
+        if (!authenticated && type != HELLO && type != CHALLENGE) {
+            throw new IOException("Кадр " + type + " до авторизации");
+        }
+        switch (type) {
+            case CHALLENGE:
+                handler.onChallenge(this, readBytes(data));
+                break;
+            case HELLO:
+                int version = data.readUnsignedShort();
+                String name = data.readUTF();
+                handler.onHello(this, name, version, version >= 2 ? readBytes(data) : new byte[0]);
+                break;
+            case COMMAND:
+                handler.onCommand(this, new Command(data.readLong(), data.readLong(), data.readLong(),
+                        data.readUTF(), data.readUTF()));
+                break;
+            case REPLY:
+                String chatId = data.readUTF();
+                long replyTo = data.readLong();
+                int kind = data.readUnsignedByte();
+                String text = data.readUTF();
+                ReplyCoalescer.Kind[] kinds = ReplyCoalescer.Kind.values();
+                handler.onReply(this, new Reply(chatId, replyTo,
+                        kind < kinds.length ? kinds[kind] : ReplyCoalescer.Kind.OTHER, text));
+                break;
+            case SEND:
+                handler.onReply(this, new Reply(data.readUTF(), 0, null, data.readUTF()));
+                break;
+            case PING:
+                handler.onPing(this, data.readLong());
+                break;
+            default:
+                // Кадры новых версий протокола пропускаются
+                break;
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        writer.cancel(true);
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // Соединение уже закрыто
+        }
+    }
+}
@@ -0,0 +1,446 @@
+package me.galyakyxnya.telegrambot;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import java.util.logging.Logger;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+// Режим кластера: несколько серверов за прокси с одним ботом. Лидер - узел, который держит блокировку
+// файла аренды: только он опрашивает Telegram, передаёт команды с ключом server нужному серверу
+// по ClusterLink и отправляет в Telegram ответы серверов через свою очередь. Остальные узлы подключаются
+// к лидеру по адресу из файла лидера и раз в секунду пробуют взять аренду: когда процесс лидера
+// завершается, ОС снимает блокировку, и опрос продолжает другой узел. Узлы доказывают знание
+// cluster.secret через HMAC от nonce лидера, поэтому порт кластера не принимает чужие соединения.
+final class ClusterNode {
+
+    enum Delivery {
+        // Команда выполняется на этом сервере
+        LOCAL,
+        FORWARDED,
+        // Сервер из ключа server не подключён
+        OFFLINE
+    }
+
+    interface Listener {
+        // Узел взял аренду: запустить приём обновлений Telegram
+        void onLeader();
+
+        // Команда от лидера для выполнения на этом сервере
+        void onCommand(ClusterLink.Command command);
+
+        // Ответ или рассылка с другого сервера; лидер отправляет их в Telegram
+        void onReply(ClusterLink.Reply reply);
+
+        // Offset, подтверждённый лидером: после смены лидера опрос продолжится с него
+        void onOffset(long offset);
+    }
+
+    // advertiseAddress - адрес, по которому остальные узлы подключаются к этому, когда он лидер;
+    // secret - общий для всех узлов ключ HMAC рукопожатия
+    record Settings(String server, File leaseFile, InetSocketAddress bindAddress, String advertiseAddress,
+                    String secret) {
+    }
+
+    record Stats(boolean leader, List<String> servers, long forwarded, long relayed) {
+    }
+
+    private static final int HEARTBEAT_MILLIS = 1000;
+    private static final int READ_TIMEOUT_MILLIS = 5000;
+    private static final int CONNECT_TIMEOUT_MILLIS = 2000;
+    private static final int NONCE_SIZE = 16;
+    // Роль в HMAC: подпись сервера нельзя выдать за подпись лидера
+    private static final byte ROLE_FOLLOWER = 1;
+    private static final byte ROLE_LEADER = 2;
+
+    private final Settings settings;
+    private final Listener listener;
+    private final LongSupplier offset;
+    private final IoExecutor io;
+    private final Logger logger;
+    private final File leaderFile;
+    private final SecretKeySpec key;
+    private final SecureRandom random = new SecureRandom();
+
+    // Подключённые серверы по имени в нижнем регистре (на лидере)
+    private final Map<String, ClusterLink> followers = new ConcurrentHashMap<>();
+    private final LongAdder forwarded = new LongAdder();
+    private final LongAdder relayed = new LongAdder();
+
+    private volatile boolean running;
+    private volatile boolean leader;
+    private volatile ClusterLink leaderLink;
+    // Один канал на всё время работы: закрытие любого канала файла снимает блокировки процесса
+    private FileChannel leaseChannel;
+    private FileLock lease;
+    private volatile ServerSocket serverSocket;
+    private Future<?> loop;
+
+    ClusterNode(Settings settings, Listener listener, LongSupplier offset, IoExecutor io, Logger logger) {
+        this.settings = settings;
+        this.listener = listener;
+        this.offset = offset;
+        this.io = io;
+        this.logger = logger;
+        this.leaderFile = new File(settings.leaseFile().getPath() + ".leader");
+        this.key = new SecretKeySpec(settings.secret().getBytes(StandardCharsets.UTF_8), "HmacSHA256");
+    }
+
+    void start() throws IOException {
+        File parent = settings.leaseFile().getAbsoluteFile().getParentFile();
+        if (parent != null) parent.mkdirs();
+        leaseChannel = FileChannel.open(settings.leaseFile().toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        running = true;
+        loop = io.start("Cluster", this::run);
+    }
+
+    String server() {
+        return settings.server();
+    }
+
+    boolean isLeader() {
+        return leader;
+    }
+
+    // ========== Маршрутизация ==========
+
+    // Вызывается на лидере из цикла опроса для команды с ключом server. Не блокирует: если сервер
+    // не успевает читать и его очередь записи заполнена, команда считается недоставленной (OFFLINE)
+    Delivery forward(String target, ClusterLink.Command command) {
+        if (target.isEmpty() || target.equalsIgnoreCase(settings.server())) return Delivery.LOCAL;
+
+        ClusterLink link = followers.get(target.toLowerCase(Locale.ROOT));
+        if (link == null || !link.command(command)) return Delivery.OFFLINE;
+        forwarded.increment();
+        return Delivery.FORWARDED;
+    }
+
+    // Ответ с этого сервера в Telegram через лидера. false - связи с лидером нет
+    boolean reply(ClusterLink.Reply reply) {
+        ClusterLink link = leaderLink;
+        return link != null && link.isAuthenticated() && link.reply(reply);
+    }
+
+    Stats stats() {
+        List<String> servers = new ArrayList<>();
+        if (leader) {
+            for (ClusterLink link : followers.values()) {
+                servers.add(link.server());
+            }
+        } else {
+            ClusterLink link = leaderLink;
+            if (link != null && link.isAuthenticated()) servers.add(link.server());
+        }
+        return new Stats(leader, servers, forwarded.sum(), relayed.sum());
+    }
+
+    // ========== Аренда и соединения ==========
+
+    private void run() {
+        while (running) {
+            try {
+                if (!leader) {
+                    if (tryLease()) {
+                        becomeLeader();
+                    } else {
+                        ClusterLink link = leaderLink;
+                        if (link == null || !link.isOpen()) {
+                            connectToLeader();
+                        } else if (link.isAuthenticated()) {
+                            // Пульс, чтобы лидер не закрыл соединение по тайм-ауту чтения
+                            link.ping(0);
+                        }
+                    }
+                } else {
+                    if (serverSocket == null) {
+                        bind();
+                    }
+                    long confirmed = offset.getAsLong();
+                    for (ClusterLink link : followers.values()) {
+                        link.ping(confirmed);
+                    }
+                }
+                Thread.sleep(HEARTBEAT_MILLIS);
+            } catch (InterruptedException e) {
+                return;
+            } catch (Exception e) {
+                logger.warning("Ошибка кластера: " + e.getMessage());
+                try {
+                    Thread.sleep(HEARTBEAT_MILLIS);
+                } catch (InterruptedException ex) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private boolean tryLease() throws IOException {
+        try {
+            lease = leaseChannel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            // Аренду держит другой узел в этом же процессе (нагрузочный стенд)
+            lease = null;
+        }
+        return lease != null;
+    }
+
+    private void becomeLeader() {
+        ClusterLink link = leaderLink;
+        if (link != null) {
+            link.close();
+            leaderLink = null;
+        }
+        leader = true;
+        logger.info("Сервер " + settings.server() + " стал лидером кластера");
+        bind();
+        // Запуск опроса может ждать сеть; пульс кластера не должен вставать
+        io.start("Cluster-elected", listener::onLeader);
+    }
+
+    // Порт прежнего лидера может ещё освобождаться; повтор на следующем пульсе
+    private void bind() {
+        try {
+            ServerSocket socket = new ServerSocket();
+            socket.setReuseAddress(true);
+            socket.bind(settings.bindAddress());
+            serverSocket = socket;
+            writeLeaderFile(socket.getLocalPort());
+            io.start("Cluster-accept", () -> acceptLoop(socket));
+        } catch (IOException e) {
+            logger.warning("Не удалось открыть порт кластера " + settings.bindAddress() + ": " + e.getMessage());
+        }
+    }
+
+    private void writeLeaderFile(int port) throws IOException {
+        File temp = new File(leaderFile.getPath() + ".tmp");
+        Files.writeString(temp.toPath(), settings.advertiseAddress() + ":" + port + "\n" + settings.server() + "\n",
+                StandardCharsets.UTF_8);
+        Files.move(temp.toPath(), leaderFile.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private InetSocketAddress readLeaderAddress() {
+        try {
+            if (!leaderFile.exists()) return null;
+            String address = Files.readAllLines(leaderFile.toPath(), StandardCharsets.UTF_8).get(0).trim();
+            int colon = address.lastIndexOf(':');
+            return new InetSocketAddress(address.substring(0, colon), Integer.parseInt(address.substring(colon + 1)));
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private void acceptLoop(ServerSocket socket) {
+        while (running && !socket.isClosed()) {
+            try {
+                ClusterLink link = new ClusterLink(socket.accept(), READ_TIMEOUT_MILLIS, io);
+                io.start("Cluster-link", () -> serve(link));
+            } catch (IOException e) {
+                if (running && !socket.isClosed()) {
+                    logger.warning("Ошибка приёма соединения кластера: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    // Соединение с сервером на стороне лидера
+    private void serve(ClusterLink link) {
+        byte[] nonce = new byte[NONCE_SIZE];
+        random.nextBytes(nonce);
+        if (!link.challenge(nonce)) return;
+        try {
+            link.readLoop(new ClusterLink.Handler() {
+                @Override
+                public void onChallenge(ClusterLink from, byte[] challenge) {
+                    // Nonce присылает только лидер
+                }
+
+                @Override
+                public void onHello(ClusterLink from, String server, int version, byte[] mac) {
+                    if (version != ClusterLink.VERSION) {
+                        logger.warning("Сервер " + server + " использует протокол кластера v" + version
+                                + ", ожидается v" + ClusterLink.VERSION);
+                        from.close();
+                        return;
+                    }
+                    if (from.isAuthenticated() || !MessageDigest.isEqual(mac, mac(ROLE_FOLLOWER, nonce, server))) {
+                        logger.warning("Отклонено подключение к кластеру как " + server + " с "
+                                + from.remoteAddress() + ": неверный cluster.secret");
+                        from.close();
+                        return;
+                    }
+                    from.authenticate(server);
+                    // Переподключение вытесняет старое соединение того же сервера
+                    ClusterLink previous = followers.put(server.toLowerCase(Locale.ROOT), from);
+                    if (previous != null && previous != from) {
+                        previous.close();
+                    }
+                    from.hello(settings.server(), mac(ROLE_LEADER, nonce, settings.server()));
+                    logger.info("Сервер " + server + " подключился к кластеру");
+                }
+
+                @Override
+                public void onCommand(ClusterLink from, ClusterLink.Command command) {
+                    // Команды идут только от лидера
+                }
+
+                @Override
+                public void onReply(ClusterLink from, ClusterLink.Reply reply) {
+                    relayed.increment();
+                    listener.onReply(reply);
+                }
+
+                @Override
+                public void onPing(ClusterLink from, long confirmed) {
+                    // Пульс сервера
+                }
+            });
+        } catch (IOException e) {
+            if (running) {
+                logger.info("Соединение кластера с " + link.server() + " закрыто: " + e.getMessage());
+            }
+        } finally {
+            String server = link.server();
+            if (link.isAuthenticated() && followers.remove(server.toLowerCase(Locale.ROOT), link)) {
+                logger.info("Сервер " + server + " отключился от кластера");
+            }
+        }
+    }
+
+    private void connectToLeader() throws IOException {
+        InetSocketAddress address = readLeaderAddress();
+        if (address == null) return;
+
+        Socket socket = new Socket();
+        try {
+            socket.connect(address, CONNECT_TIMEOUT_MILLIS);
+        } catch (IOException e) {
+            socket.close();
+            // Лидер ещё не открыл порт или файл остался от упавшего лидера
+            return;
+        }
+        // HELLO уходит в ответ на CHALLENGE лидера
+        ClusterLink link = new ClusterLink(socket, READ_TIMEOUT_MILLIS, io);
+        leaderLink = link;
+        io.start("Cluster-leader", () -> follow(link));
+    }
+
+    // Соединение с лидером на стороне сервера
+    private void follow(ClusterLink link) {
+        byte[][] nonce = new byte[1][];
+        try {
+            link.readLoop(new ClusterLink.Handler() {
+                @Override
+                public void onChallenge(ClusterLink from, byte[] challenge) {
+                    if (nonce[0] != null || challenge.length < NONCE_SIZE) {
+                        from.close();
+                        return;
+                    }
+                    nonce[0] = challenge;
+                    from.hello(settings.server(), mac(ROLE_FOLLOWER, challenge, settings.server()));
+                }
+
+                @Override
+                public void onHello(ClusterLink from, String server, int version, byte[] mac) {
+                    if (nonce[0] == null || from.isAuthenticated()
+                            || !MessageDigest.isEqual(mac, mac(ROLE_LEADER, nonce[0], server))) {
+                        logger.warning("Лидер кластера " + from.remoteAddress() + " не прошёл проверку cluster.secret");
+                        from.close();
+                        return;
+                    }
+                    from.authenticate(server);
+                    logger.info("Подключено к лидеру кластера " + server);
+                }
+
+                @Override
+                public void onCommand(ClusterLink from, ClusterLink.Command command) {
+                    listener.onCommand(command);
+                }
+
+                @Override
+                public void onReply(ClusterLink from, ClusterLink.Reply reply) {
+                    // Ответы идут только к лидеру
+                }
+
+                @Override
+                public void onPing(ClusterLink from, long confirmed) {
+                    listener.onOffset(confirmed);
+                }
+            });
+        } catch (IOException e) {
+            if (running) {
+                logger.info("Соединение с лидером кластера закрыто: " + e.getMessage());
+            }
+        } finally {
+            if (leaderLink == link) {
+                leaderLink = null;
+            }
+        }
+    }
+
+    private byte[] mac(byte role, byte[] nonce, String server) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(key);
+            mac.update(role);
+            mac.update(nonce);
+            mac.update(server.getBytes(StandardCharsets.UTF_8));
+            return mac.doFinal();
+        } catch (GeneralSecurityException e) {
+            // HmacSHA256 есть в любой JVM
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // Снимает аренду: следующий узел станет лидером на ближайшем пульсе
+    void stop() {
+        running = false;
+        if (loop != null) {
+            loop.cancel(true);
+        }
+        ClusterLink link = leaderLink;
+        if (link != null) {
+            link.close();
+        }
+        for (ClusterLink follower : followers.values()) {
+            follower.close();
+        }
+        followers.clear();
+        try {
+            ServerSocket socket = serverSocket;
+            if (socket != null) {
+                socket.close();
+            }
+            if (lease != null) {
+                lease.release();
+                leaderFile.delete();
+            }
+            if (leaseChannel != null) {
+                leaseChannel.close();
+            }
+        } catch (IOException e) {
+            logger.warning("Ошибка освобождения аренды кластера: " + e.getMessage());
+        }
+        leader = false;
+    }
+}
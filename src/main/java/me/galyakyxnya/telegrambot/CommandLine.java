@@ -0,0 +1,25 @@
+package me.galyakyxnya.telegrambot;
+
+// Команда из текста сообщения: "/Name@bot  аргументы " -> name = "name", args = "аргументы".
+// Разбирается одним проходом без регулярных выражений.
+record CommandLine(String name, String args) {
+
+    // null, если текст не начинается с '/'
+    static CommandLine parse(String text) {
+        if (text == null || text.isEmpty() || text.charAt(0) != '/') return null;
+
+        int length = text.length();
+        int nameEnd = 1;
+        while (nameEnd < length && !Character.isWhitespace(text.charAt(nameEnd))) {
+            nameEnd++;
+        }
+
+        // В группах Telegram добавляет имя бота: /help@MyBot
+        int mention = text.indexOf('@', 1);
+        int cut = mention != -1 && mention < nameEnd ? mention : nameEnd;
+        String name = text.substring(1, cut).toLowerCase();
+
+        String args = nameEnd < length ? text.substring(nameEnd).trim() : "";
+        return new CommandLine(name, args);
+    }
+}
@@ -0,0 +1,128 @@
+package me.galyakyxnya.telegrambot;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+// Неизменяемый снимок загруженных команд. Строится целиком в стороннем потоке
+// и публикуется одной volatile-записью, поэтому чтение идёт без блокировок,
+// а перезагрузка не затрагивает команды, которые уже обрабатываются.
+final class CommandRegistry {
+
+    static final CommandRegistry EMPTY = new CommandRegistry(0, Collections.emptyList(), null);
+
+    private final long version;
+    private final List<BotCommand> commands;
+    private final Map<String, BotCommand> byName;
+    // Отсортированные имена и алиасы для поиска по префиксу
+    private final String[] sortedKeys;
+    private final HelpPages help;
+
+    CommandRegistry(long version, List<BotCommand> commands, HelpPages help) {
+        this.version = version;
+        this.commands = Collections.unmodifiableList(new ArrayList<>(commands));
+        this.help = help;
+
+        Map<String, BotCommand> names = new HashMap<>();
+        for (BotCommand cmd : commands) {
+            names.put(cmd.name.toLowerCase(Locale.ROOT).intern(), cmd);
+        }
+        // Алиасы не перекрывают настоящие имена команд
+        for (BotCommand cmd : commands) {
+            for (String alias : cmd.aliases) {
+                names.putIfAbsent(alias.toLowerCase(Locale.ROOT).intern(), cmd);
+            }
+        }
+        this.byName = Map.copyOf(names);
+
+        this.sortedKeys = names.keySet().toArray(new String[0]);
+        Arrays.sort(this.sortedKeys);
+    }
+
+    long version() {
+        return version;
+    }
+
+    // По имени или алиасу, без учёта регистра
+    BotCommand get(String name) {
+        return byName.get(name.toLowerCase(Locale.ROOT));
+    }
+
+    List<BotCommand> commands() {
+        return commands;
+    }
+
+    int size() {
+        return commands.size();
+    }
+
+    HelpPages help() {
+        return help;
+    }
+
+    // Имена и алиасы, начинающиеся с prefix, в алфавитном порядке
+    List<String> withPrefix(String prefix, int limit) {
+        String key = prefix.toLowerCase(Locale.ROOT);
+        int i = Arrays.binarySearch(sortedKeys, key);
+        if (i < 0) i = -i - 1;
+
+        List<String> result = new ArrayList<>();
+        while (i < sortedKeys.length && result.size() < limit && sortedKeys[i].startsWith(key)) {
+            result.add(sortedKeys[i++]);
+        }
+        return result;
+    }
+
+    // Подсказка "возможно, вы имели в виду": сначала по префиксу, затем по расстоянию
+    // Левенштейна не больше 2. null, если ничего близкого нет.
+    String suggest(String input) {
+        String key = input.toLowerCase(Locale.ROOT);
+        if (key.isEmpty()) return null;
+
+        List<String> byPrefix = withPrefix(key, 1);
+        if (!byPrefix.isEmpty()) {
+            return byPrefix.get(0);
+        }
+
+        String best = null;
+        int bestDistance = 3;
+        for (String candidate : sortedKeys) {
+            if (Math.abs(candidate.length() - key.length()) >= bestDistance) continue;
+            int distance = editDistance(key, candidate, bestDistance);
+            if (distance < bestDistance) {
+                best = candidate;
+                bestDistance = distance;
+            }
+        }
+        return best;
+    }
+
+    // Расстояние Левенштейна с ранним выходом, когда оно заведомо >= limit
+    private static int editDistance(String a, String b, int limit) {
+        int[] prev = new int[b.length() + 1];
+        int[] curr = new int[b.length() + 1];
+        for (int j = 0; j <= b.length(); j++) {
+            prev[j] = j;
+        }
+
+        for (int i = 1; i <= a.length(); i++) {
+            curr[0] = i;
+            int rowMin = curr[0];
+            for (int j = 1; j <= b.length(); j++) {
+                int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+                curr[j] = Math.min(Math.min(curr[j - 1] + 1, prev[j] + 1), prev[j - 1] + cost);
+                rowMin = Math.min(rowMin, curr[j]);
+            }
+            if (rowMin >= limit) return limit;
+
+            int[] tmp = prev;
+            prev = curr;
+            curr = tmp;
+        }
+        return prev[b.length()];
+    }
+}
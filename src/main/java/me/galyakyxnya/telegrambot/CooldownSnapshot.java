@@ -0,0 +1,137 @@
+package me.galyakyxnya.telegrambot;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.function.ToIntFunction;
+
+// Бинарный снимок кулдаунов.
+// Формат (big-endian):
+//   заголовок: magic "UTBC", version int, число записей long, смещение таблицы команд long;
+//   записи фиксированной длины: [user_id long][индекс команды int][время использования long][истечение long];
+//   таблица команд: число int, затем [длина short][UTF-8].
+// Таблица пишется после записей, чтобы в неё попали команды, добавленные во время обхода.
+final class CooldownSnapshot {
+
+    private static final int MAGIC = 0x55544243;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 4 + 4 + 8 + 8;
+    private static final int RECORD_SIZE = 8 + 4 + 8 + 8;
+
+    private CooldownSnapshot() {
+    }
+
+    // Пишет снимок во временный файл через FileChannel и атомарно подменяет target
+    static int write(File target, CooldownStore store) throws IOException {
+        File temp = new File(target.getPath() + ".tmp");
+
+        int[] written = {0};
+        try (FileChannel ch = FileChannel.open(temp.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(64 * 1024);
+
+            // Заголовок заполняется в конце, когда известны число записей и смещение таблицы
+            buffer.position(HEADER_SIZE);
+
+            IOException[] error = {null};
+            store.forEach((userId, command, lastUse, expireAt) -> {
+                if (error[0] != null) return;
+                try {
+                    ensureSpace(ch, buffer, RECORD_SIZE);
+                    buffer.putLong(userId).putInt(command).putLong(lastUse).putLong(expireAt);
+                    written[0]++;
+                } catch (IOException e) {
+                    error[0] = e;
+                }
+            });
+            if (error[0] != null) throw error[0];
+
+            long tableOffset = ch.position() + buffer.position();
+            List<String> table = store.commandNames();
+            ensureSpace(ch, buffer, 4);
+            buffer.putInt(table.size());
+            for (String name : table) {
+                byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+                ensureSpace(ch, buffer, 2 + bytes.length);
+                buffer.putShort((short) bytes.length).put(bytes);
+            }
+            drain(ch, buffer);
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).putInt(VERSION).putLong(written[0]).putLong(tableOffset).flip();
+            while (header.hasRemaining()) {
+                ch.write(header, header.position());
+            }
+            ch.force(true);
+        }
+
+        Files.move(temp.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        return written[0];
+    }
+
+    // Загружает снимок через MappedByteBuffer прямо в хранилище.
+    // commandMapper переводит имя команды в текущий индекс хранилища или -1, чтобы пропустить.
+    static int load(File file, CooldownStore store, ToIntFunction<String> commandMapper, long now) throws IOException {
+        try (FileChannel ch = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = ch.size();
+            MappedByteBuffer map = ch.map(FileChannel.MapMode.READ_ONLY, 0, size);
+
+            if (size < HEADER_SIZE || map.getInt(0) != MAGIC) {
+                throw new IOException("Файл не является снимком кулдаунов: " + file.getName());
+            }
+            int version = map.getInt(4);
+            if (version != VERSION) {
+                throw new IOException("Неподдерживаемая версия снимка кулдаунов: " + version);
+            }
+            long count = map.getLong(8);
+            long tableOffset = map.getLong(16);
+            if (count < 0 || tableOffset != HEADER_SIZE + count * RECORD_SIZE || tableOffset + 4 > size) {
+                throw new IOException("Снимок кулдаунов повреждён: " + file.getName());
+            }
+
+            map.position((int) tableOffset);
+            int tableSize = map.getInt();
+            int[] mapping = new int[tableSize];
+            for (int i = 0; i < tableSize; i++) {
+                byte[] bytes = new byte[map.getShort() & 0xFFFF];
+                map.get(bytes);
+                mapping[i] = commandMapper.applyAsInt(new String(bytes, StandardCharsets.UTF_8));
+            }
+
+            map.position(HEADER_SIZE);
+            int loaded = 0;
+            for (long i = 0; i < count; i++) {
+                long userId = map.getLong();
+                int command = map.getInt();
+                long lastUse = map.getLong();
+                long expireAt = map.getLong();
+
+                if (command < 0 || command >= tableSize || mapping[command] < 0 || expireAt <= now) continue;
+                store.restore(userId, mapping[command], lastUse, expireAt, now);
+                loaded++;
+            }
+            return loaded;
+        }
+    }
+
+    private static void ensureSpace(FileChannel ch, ByteBuffer buffer, int bytes) throws IOException {
+        if (buffer.remaining() < bytes) {
+            drain(ch, buffer);
+        }
+    }
+
+    private static void drain(FileChannel ch, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            ch.write(buffer);
+        }
+        buffer.clear();
+    }
+}
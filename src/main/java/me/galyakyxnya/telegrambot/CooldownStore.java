@@ -0,0 +1,403 @@
+package me.galyakyxnya.telegrambot;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Хранилище кулдаунов: ключ (id пользователя, индекс команды) в примитивных массивах
+// с открытой адресацией, без строк и упаковки. Истечение - через иерархическое
+// колесо таймеров, поэтому очистка не сканирует всю таблицу.
+final class CooldownStore {
+
+    private static final int SEGMENTS = 16;
+
+    private final Segment[] segments = new Segment[SEGMENTS];
+    private final TimingWheel wheel;
+
+    // Индексы команд выдаются один раз и не меняются между перезагрузками конфига
+    private final Map<String, Integer> commandIds = new ConcurrentHashMap<>();
+    private final List<String> commandNames = new ArrayList<>();
+
+    CooldownStore(long now) {
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment();
+        }
+        wheel = new TimingWheel(now);
+    }
+
+    // ========== Команды ==========
+
+    int commandIndex(String commandName) {
+        Integer id = commandIds.get(commandName);
+        if (id != null) return id;
+
+        synchronized (commandNames) {
+            return commandIds.computeIfAbsent(commandName, name -> {
+                commandNames.add(name);
+                return commandNames.size() - 1;
+            });
+        }
+    }
+
+    // Имена команд в порядке индексов
+    List<String> commandNames() {
+        synchronized (commandNames) {
+            return new ArrayList<>(commandNames);
+        }
+    }
+
+    String commandName(int index) {
+        synchronized (commandNames) {
+            return index >= 0 && index < commandNames.size() ? commandNames.get(index) : null;
+        }
+    }
+
+    // ========== Проверка и резервирование ==========
+
+    // Атомарно проверяет кулдаун и сразу занимает его.
+    // Возвращает 0, если использование разрешено, иначе оставшиеся миллисекунды.
+    long tryAcquire(long userId, int command, long now, long cooldownMillis) {
+        if (cooldownMillis <= 0) return 0;
+
+        Segment segment = segmentFor(userId, command);
+        synchronized (segment) {
+            int slot = segment.find(userId, command);
+            if (slot >= 0) {
+                long passed = now - segment.lastUse[slot];
+                if (passed < cooldownMillis) {
+                    return cooldownMillis - passed;
+                }
+            }
+            segment.put(userId, command, now, now + cooldownMillis);
+        }
+        wheel.schedule(userId, command, now + cooldownMillis);
+        return 0;
+    }
+
+    // Снимает резерв, если команда не выполнилась (и резерв не был обновлён)
+    boolean release(long userId, int command, long reservedAt) {
+        Segment segment = segmentFor(userId, command);
+        synchronized (segment) {
+            int slot = segment.find(userId, command);
+            if (slot >= 0 && segment.lastUse[slot] == reservedAt) {
+                segment.removeAt(slot);
+                return true;
+            }
+            return false;
+        }
+    }
+
+    void clear(long userId, int command) {
+        Segment segment = segmentFor(userId, command);
+        synchronized (segment) {
+            int slot = segment.find(userId, command);
+            if (slot >= 0) {
+                segment.removeAt(slot);
+            }
+        }
+    }
+
+    // Загрузка сохранённого значения; уже истёкшие записи пропускаются
+    void restore(long userId, int command, long lastUse, long expireAt, long now) {
+        if (expireAt <= now) return;
+
+        Segment segment = segmentFor(userId, command);
+        synchronized (segment) {
+            segment.put(userId, command, lastUse, expireAt);
+        }
+        wheel.schedule(userId, command, expireAt);
+    }
+
+    // Продвигает колесо до now и удаляет истёкшие записи. Возвращает число удалённых.
+    synchronized int expire(long now) {
+        int removed = 0;
+        TimingWheel.Batch batch = wheel.advance(now);
+        for (int i = 0; i < batch.size; i++) {
+            Segment segment = segmentFor(batch.users[i], batch.commands[i]);
+            synchronized (segment) {
+                int slot = segment.find(batch.users[i], batch.commands[i]);
+                // Запись могла быть продлена - тогда её срок ещё не наступил
+                if (slot >= 0 && segment.expireAt[slot] <= now) {
+                    segment.removeAt(slot);
+                    removed++;
+                }
+            }
+        }
+        return removed;
+    }
+
+    int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.size;
+            }
+        }
+        return size;
+    }
+
+    interface EntryVisitor {
+        void visit(long userId, int command, long lastUse, long expireAt);
+    }
+
+    // Обход для сохранения. Записи сегмента копируются под его блокировкой,
+    // а visitor вызывается уже без неё: запись на диск не держит команды игроков.
+    void forEach(EntryVisitor visitor) {
+        long[] users = new long[0];
+        int[] commands = new int[0];
+        long[] lastUse = new long[0];
+        long[] expireAt = new long[0];
+        for (Segment segment : segments) {
+            int count = 0;
+            synchronized (segment) {
+                if (users.length < segment.size) {
+                    users = new long[segment.size];
+                    commands = new int[segment.size];
+                    lastUse = new long[segment.size];
+                    expireAt = new long[segment.size];
+                }
+                for (int i = 0; i < segment.users.length; i++) {
+                    if (segment.commands[i] != Segment.EMPTY) {
+                        users[count] = segment.users[i];
+                        commands[count] = segment.commands[i];
+                        lastUse[count] = segment.lastUse[i];
+                        expireAt[count] = segment.expireAt[i];
+                        count++;
+                    }
+                }
+            }
+            for (int i = 0; i < count; i++) {
+                visitor.visit(users[i], commands[i], lastUse[i], expireAt[i]);
+            }
+        }
+    }
+
+    private Segment segmentFor(long userId, int command) {
+        return segments[(int) (hash(userId, command) >>> 60) & (SEGMENTS - 1)];
+    }
+
+    private static long hash(long userId, int command) {
+        long h = userId * 0x9E3779B97F4A7C15L + command;
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    // ========== Таблица с открытой адресацией ==========
+
+    private static final class Segment {
+        static final int EMPTY = -1;
+
+        long[] users = new long[64];
+        int[] commands = filled(64);
+        long[] lastUse = new long[64];
+        long[] expireAt = new long[64];
+        int size;
+
+        private static int[] filled(int capacity) {
+            int[] array = new int[capacity];
+            Arrays.fill(array, EMPTY);
+            return array;
+        }
+
+        int find(long userId, int command) {
+            int mask = users.length - 1;
+            int i = (int) hash(userId, command) & mask;
+            while (commands[i] != EMPTY) {
+                if (users[i] == userId && commands[i] == command) return i;
+                i = (i + 1) & mask;
+            }
+            return -1;
+        }
+
+        void put(long userId, int command, long last, long expire) {
+            if ((size + 1) * 4 > users.length * 3) {
+                resize(users.length * 2);
+            }
+            int mask = users.length - 1;
+            int i = (int) hash(userId, command) & mask;
+            while (commands[i] != EMPTY) {
+                if (users[i] == userId && commands[i] == command) {
+                    lastUse[i] = last;
+                    expireAt[i] = expire;
+                    return;
+                }
+                i = (i + 1) & mask;
+            }
+            users[i] = userId;
+            commands[i] = command;
+            lastUse[i] = last;
+            expireAt[i] = expire;
+            size++;
+        }
+
+        // Удаление со сдвигом назад: без "надгробий", цепочки остаются короткими
+        void removeAt(int slot) {
+            int mask = users.length - 1;
+            int hole = slot;
+            int i = (slot + 1) & mask;
+            while (commands[i] != EMPTY) {
+                int home = (int) hash(users[i], commands[i]) & mask;
+                // Элемент можно сдвинуть в дыру, если его домашняя позиция не между дырой и ним
+                if (((i - home) & mask) >= ((i - hole) & mask)) {
+                    users[hole] = users[i];
+                    commands[hole] = commands[i];
+                    lastUse[hole] = lastUse[i];
+                    expireAt[hole] = expireAt[i];
+                    hole = i;
+                }
+                i = (i + 1) & mask;
+            }
+            commands[hole] = EMPTY;
+            size--;
+        }
+
+        private void resize(int capacity) {
+            long[] oldUsers = users;
+            int[] oldCommands = commands;
+            long[] oldLastUse = lastUse;
+            long[] oldExpireAt = expireAt;
+
+            users = new long[capacity];
+            commands = filled(capacity);
+            lastUse = new long[capacity];
+            expireAt = new long[capacity];
+            size = 0;
+
+            for (int i = 0; i < oldUsers.length; i++) {
+                if (oldCommands[i] != EMPTY) {
+                    put(oldUsers[i], oldCommands[i], oldLastUse[i], oldExpireAt[i]);
+                }
+            }
+        }
+    }
+
+    // ========== Колесо таймеров ==========
+
+    // 4 уровня по 64 слота с шагом 1 с: до ~194 дней без переполнения.
+    // Записи верхних уровней при обороте нижнего переносятся ниже (каскад).
+    private static final class TimingWheel {
+        private static final long TICK_MILLIS = 1000;
+        private static final int LEVELS = 4;
+        private static final int BITS = 6;
+        private static final int SLOTS = 1 << BITS;
+        private static final int SLOT_MASK = SLOTS - 1;
+
+        private final Slot[][] slots = new Slot[LEVELS][SLOTS];
+        private long currentTick;
+        private final Batch expired = new Batch();
+
+        TimingWheel(long now) {
+            for (Slot[] level : slots) {
+                for (int i = 0; i < SLOTS; i++) {
+                    level[i] = new Slot();
+                }
+            }
+            currentTick = now / TICK_MILLIS;
+        }
+
+        synchronized void schedule(long userId, int command, long expireAt) {
+            place(userId, command, expireAt);
+        }
+
+        private void place(long userId, int command, long expireAt) {
+            long expireTick = Math.max(currentTick + 1, (expireAt + TICK_MILLIS - 1) / TICK_MILLIS);
+            long delta = expireTick - currentTick;
+
+            int level = 0;
+            while (level < LEVELS - 1 && delta >= 1L << (BITS * (level + 1))) {
+                level++;
+            }
+            long maxDelta = 1L << (BITS * LEVELS);
+            if (delta >= maxDelta) {
+                // Слишком далеко: кладём в последний слот верхнего уровня, при каскаде пересчитается
+                expireTick = currentTick + maxDelta - (1L << (BITS * (LEVELS - 1)));
+            }
+            int index = (int) (expireTick >>> (BITS * level)) & SLOT_MASK;
+            slots[level][index].add(userId, command, expireAt);
+        }
+
+        // Возвращает записи, срок которых наступил; буфер переиспользуется между вызовами
+        synchronized Batch advance(long now) {
+            expired.size = 0;
+            long target = now / TICK_MILLIS;
+
+            while (currentTick < target) {
+                currentTick++;
+
+                // Каскад: при обороте уровня переносим слот следующего уровня вниз
+                for (int level = 1; level < LEVELS; level++) {
+                    if ((currentTick & ((1L << (BITS * level)) - 1)) != 0) break;
+                    Slot slot = slots[level][(int) (currentTick >>> (BITS * level)) & SLOT_MASK];
+                    Slot moved = slot.drain();
+                    for (int i = 0; i < moved.size; i++) {
+                        place(moved.users[i], moved.commands[i], moved.expireAt[i]);
+                    }
+                }
+
+                Slot due = slots[0][(int) currentTick & SLOT_MASK];
+                for (int i = 0; i < due.size; i++) {
+                    if (due.expireAt[i] <= now) {
+                        expired.add(due.users[i], due.commands[i]);
+                    } else {
+                        place(due.users[i], due.commands[i], due.expireAt[i]);
+                    }
+                }
+                due.size = 0;
+            }
+            return expired;
+        }
+
+        private static final class Slot {
+            long[] users = new long[8];
+            int[] commands = new int[8];
+            long[] expireAt = new long[8];
+            int size;
+
+            void add(long userId, int command, long expire) {
+                if (size == users.length) {
+                    users = Arrays.copyOf(users, size * 2);
+                    commands = Arrays.copyOf(commands, size * 2);
+                    expireAt = Arrays.copyOf(expireAt, size * 2);
+                }
+                users[size] = userId;
+                commands[size] = command;
+                expireAt[size] = expire;
+                size++;
+            }
+
+            // Забирает содержимое, оставляя слот пустым
+            Slot drain() {
+                Slot copy = new Slot();
+                copy.users = users;
+                copy.commands = commands;
+                copy.expireAt = expireAt;
+                copy.size = size;
+                users = new long[8];
+                commands = new int[8];
+                expireAt = new long[8];
+                size = 0;
+                return copy;
+            }
+        }
+
+        static final class Batch {
+            long[] users = new long[64];
+            int[] commands = new int[64];
+            int size;
+
+            void add(long userId, int command) {
+                if (size == users.length) {
+                    users = Arrays.copyOf(users, size * 2);
+                    commands = Arrays.copyOf(commands, size * 2);
+                }
+                users[size] = userId;
+                commands[size] = command;
+                size++;
+            }
+        }
+    }
+}
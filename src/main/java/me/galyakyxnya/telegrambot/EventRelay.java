@@ -0,0 +1,253 @@
+package me.galyakyxnya.telegrambot;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+
+// Пересылка чата и событий сервера в Telegram. Слушатели (в том числе асинхронный чат) только кладут
+// событие в ограниченное кольцо без блокировок; если оно заполнено, событие отбрасывается и считается.
+// Один поток раз в flush-interval забирает накопленное и отправляет одним сообщением на окно.
+final class EventRelay {
+
+    enum Type {
+        CHAT("chat", "💬 <b>%player%</b>: %message%"),
+        JOIN("join", "➕ %player% зашёл на сервер"),
+        QUIT("quit", "➖ %player% вышел с сервера"),
+        DEATH("death", "💀 %message%"),
+        ADVANCEMENT("advancement", "🏆 %message%");
+
+        final String key;
+        final String defaultFormat;
+
+        Type(String key, String defaultFormat) {
+            this.key = key;
+            this.defaultFormat = defaultFormat;
+        }
+    }
+
+    // Отправка готового сообщения в чат
+    interface Sink {
+        void send(String chatId, String text);
+    }
+
+    // sample - доля пересылаемых событий этого типа (1 - все)
+    record Rule(double sample, MessageTemplate format) {
+    }
+
+    // Выключенные типы в rules отсутствуют
+    record Settings(List<String> chats, long flushMillis, Map<Type, Rule> rules) {
+
+        static final Settings DISABLED = new Settings(List.of(), 1000, Map.of());
+
+        Settings {
+            chats = List.copyOf(chats);
+            rules = rules.isEmpty() ? Map.of() : new EnumMap<>(rules);
+        }
+    }
+
+    record Stats(int queued, int capacity, long[] accepted, long[] sampled, long[] dropped, long batches) {
+    }
+
+    private record Event(Type type, String player, String text) {
+    }
+
+    private final Ring<Event> ring;
+    private final Sink sink;
+    private final Logger logger;
+    private final LongAdder[] accepted = counters();
+    private final LongAdder[] sampled = counters();
+    private final LongAdder[] dropped = counters();
+    private final LongAdder batches = new LongAdder();
+    // Отброшенные с прошлой отправки, для строки о пропуске в следующем сообщении
+    private final LongAdder droppedSinceFlush = new LongAdder();
+
+    private volatile Settings settings = Settings.DISABLED;
+
+    EventRelay(int capacity, Sink sink, Logger logger) {
+        this.ring = new Ring<>(capacity);
+        this.sink = sink;
+        this.logger = logger;
+    }
+
+    void configure(Settings settings) {
+        this.settings = settings;
+    }
+
+    boolean enabled(Type type) {
+        return settings.rules().containsKey(type);
+    }
+
+    boolean active() {
+        return !settings.rules().isEmpty();
+    }
+
+    boolean sendsTo(String chatId) {
+        return settings.chats().contains(chatId);
+    }
+
+    // ========== Приём событий ==========
+
+    // Вызывается из любого потока; не блокирует и не выделяет памяти сверх самого события
+    void offer(Type type, String player, String text) {
+        Rule rule = settings.rules().get(type);
+        if (rule == null) return;
+
+        if (rule.sample() < 1 && ThreadLocalRandom.current().nextDouble() >= rule.sample()) {
+            sampled[type.ordinal()].increment();
+            return;
+        }
+        if (ring.offer(new Event(type, player, text))) {
+            accepted[type.ordinal()].increment();
+        } else {
+            dropped[type.ordinal()].increment();
+            droppedSinceFlush.increment();
+        }
+    }
+
+    // ========== Отправка ==========
+
+    // Цикл отправки для IoExecutor.start
+    void run() {
+        List<String> lines = new ArrayList<>();
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                TimeUnit.MILLISECONDS.sleep(settings.flushMillis());
+            } catch (InterruptedException e) {
+                // Остаток уходит последним сообщением
+                flush(lines);
+                return;
+            }
+            flush(lines);
+        }
+    }
+
+    // Собирает всё накопленное за окно; при выключении отдаёт остаток
+    private void flush(List<String> lines) {
+        Settings current = settings;
+        lines.clear();
+        ring.drain(event -> {
+            Rule rule = current.rules().get(event.type());
+            if (rule == null) return;
+            lines.add(rule.format().render(new MessageTemplate.Values()
+                    .set(MessageTemplate.Placeholder.PLAYER, escapeHtml(event.player()))
+                    .set(MessageTemplate.Placeholder.MESSAGE, escapeHtml(event.text()))));
+        });
+        long skipped = droppedSinceFlush.sumThenReset();
+        if (skipped > 0) {
+            lines.add("⚠️ Пропущено событий: " + skipped);
+        }
+        if (lines.isEmpty() || current.chats().isEmpty()) return;
+
+        try {
+            for (String message : MessageSplitter.pack(lines, "\n", MessageSplitter.MAX_MESSAGE_LENGTH)) {
+                for (String chatId : current.chats()) {
+                    sink.send(chatId, message);
+                }
+                batches.increment();
+            }
+        } catch (Exception e) {
+            logger.warning("Ошибка пересылки событий в Telegram: " + e.getMessage());
+        }
+    }
+
+    Stats stats() {
+        return new Stats(ring.size(), ring.capacity(), sums(accepted), sums(sampled), sums(dropped), batches.sum());
+    }
+
+    // Текст игроков уходит с parse_mode HTML
+    static String escapeHtml(String text) {
+        if (text == null) return "";
+        StringBuilder out = null;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            String entity = c == '<' ? "&lt;" : c == '>' ? "&gt;" : c == '&' ? "&amp;" : null;
+            if (entity == null) {
+                if (out != null) out.append(c);
+                continue;
+            }
+            if (out == null) {
+                out = new StringBuilder(text.length() + 16).append(text, 0, i);
+            }
+            out.append(entity);
+        }
+        return out == null ? text : out.toString();
+    }
+
+    private static LongAdder[] counters() {
+        LongAdder[] counters = new LongAdder[Type.values().length];
+        for (int i = 0; i < counters.length; i++) {
+            counters[i] = new LongAdder();
+        }
+        return counters;
+    }
+
+    private static long[] sums(LongAdder[] counters) {
+        long[] sums = new long[counters.length];
+        for (int i = 0; i < counters.length; i++) {
+            sums[i] = counters[i].sum();
+        }
+        return sums;
+    }
+
+    // Ограниченное кольцо: много писателей, один читатель. Писатель занимает позицию CAS-ом по tail
+    // и публикует событие в ячейку; читатель ждёт публикации, очищает ячейку и только потом сдвигает head,
+    // поэтому писатель, увидевший свободное место, пишет в уже очищенную ячейку.
+    static final class Ring<T> {
+
+        private final AtomicReferenceArray<T> slots;
+        private final int mask;
+        private final AtomicLong tail = new AtomicLong();
+        // Пишет только читатель
+        private volatile long head;
+
+        Ring(int capacity) {
+            int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+            this.slots = new AtomicReferenceArray<>(size);
+            this.mask = size - 1;
+        }
+
+        int capacity() {
+            return mask + 1;
+        }
+
+        int size() {
+            return (int) Math.max(0, tail.get() - head);
+        }
+
+        // false - кольцо заполнено
+        boolean offer(T value) {
+            long position;
+            do {
+                position = tail.get();
+                if (position - head > mask) return false;
+            } while (!tail.compareAndSet(position, position + 1));
+            slots.set((int) position & mask, value);
+            return true;
+        }
+
+        // Только из одного потока. Останавливается на позиции, которую писатель занял, но ещё не заполнил
+        int drain(Consumer<T> consumer) {
+            long position = head;
+            long limit = tail.get();
+            int drained = 0;
+            while (position < limit) {
+                int index = (int) position & mask;
+                T value = slots.get(index);
+                if (value == null) break;
+                slots.set(index, null);
+                head = ++position;
+                drained++;
+                consumer.accept(value);
+            }
+            return drained;
+        }
+    }
+}
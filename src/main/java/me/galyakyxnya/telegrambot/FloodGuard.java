@@ -0,0 +1,136 @@
+package me.galyakyxnya.telegrambot;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+// Ограничение частоты команд по ключу (пользователь или чат) без блокировок и аллокаций.
+// Token bucket хранится в форме GCRA: одно число - теоретическое время следующей команды,
+// обновляемое CAS. Таблица фиксированного размера с открытой адресацией; ключ, чей лимит
+// полностью восстановился, может быть вытеснен, поэтому учёт приблизительный.
+final class FloodGuard {
+
+    enum Verdict {
+        ALLOW,
+        // Первое превышение: можно один раз предупредить
+        WARN,
+        // Отбросить молча
+        DROP,
+        // Ключ только что заглушен
+        MUTED
+    }
+
+    private static final int PROBES = 8;
+    private static final int STRIKE_SHIFT = 56;
+    private static final long TAT_MASK = (1L << STRIKE_SHIFT) - 1;
+    private static final long MAX_STRIKES = 0xFF;
+
+    private final AtomicLongArray keys;
+    // [отказов подряд 8 бит][TAT в микросекундах от base 56 бит]
+    private final AtomicLongArray states;
+    private final AtomicLongArray mutedUntil;
+    private final int mask;
+
+    private final long base;
+    private final long intervalMicros;
+    private final long toleranceMicros;
+    private final boolean notify;
+    private final int muteAfter;
+    private final long muteMicros;
+
+    private final LongAdder allowed = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder mutes = new LongAdder();
+    private final LongAdder overflow = new LongAdder();
+
+    FloodGuard(int capacity, double burst, double perSecond, boolean notify, int muteAfter, long muteMillis) {
+        int size = Integer.highestOneBit(Math.max(PROBES, capacity) - 1) << 1;
+        this.keys = new AtomicLongArray(size);
+        this.states = new AtomicLongArray(size);
+        this.mutedUntil = new AtomicLongArray(size);
+        this.mask = size - 1;
+
+        this.base = System.nanoTime() / 1000;
+        this.intervalMicros = perSecond > 0 ? Math.max(1, (long) (1_000_000 / perSecond)) : 0;
+        this.toleranceMicros = (long) (Math.max(0, burst - 1) * intervalMicros);
+        this.notify = notify;
+        this.muteAfter = (int) Math.min(MAX_STRIKES, Math.max(0, muteAfter));
+        this.muteMicros = muteMillis * 1000;
+    }
+
+    Verdict admit(long key, long nowNanos) {
+        if (intervalMicros == 0) return Verdict.ALLOW;
+
+        long now = nowNanos / 1000 - base;
+        int slot = slotFor(key, now);
+        if (slot < 0) {
+            // Таблица переполнена активными ключами: пропускаем, а не наказываем случайного
+            overflow.increment();
+            return Verdict.ALLOW;
+        }
+
+        if (mutedUntil.get(slot) > now) {
+            dropped.increment();
+            return Verdict.DROP;
+        }
+
+        while (true) {
+            long state = states.get(slot);
+            long tat = Math.max(state & TAT_MASK, now);
+            long strikes = state >>> STRIKE_SHIFT;
+
+            if (tat - now <= toleranceMicros) {
+                if (states.compareAndSet(slot, state, tat + intervalMicros)) {
+                    allowed.increment();
+                    return Verdict.ALLOW;
+                }
+                continue;
+            }
+
+            strikes = Math.min(MAX_STRIKES, strikes + 1);
+            boolean mute = muteAfter > 0 && strikes >= muteAfter;
+            long next = (mute ? 0 : strikes << STRIKE_SHIFT) | (state & TAT_MASK);
+            if (!states.compareAndSet(slot, state, next)) continue;
+
+            dropped.increment();
+            if (mute) {
+                mutedUntil.set(slot, now + muteMicros);
+                mutes.increment();
+                return Verdict.MUTED;
+            }
+            return notify && strikes == 1 ? Verdict.WARN : Verdict.DROP;
+        }
+    }
+
+    // Ячейка ключа: существующая, свободная или вытесняемая (лимит восстановлен, не заглушён)
+    private int slotFor(long key, long now) {
+        int start = hash(key);
+        for (int probe = 0; probe < PROBES; probe++) {
+            int i = (start + probe) & mask;
+            long current = keys.get(i);
+            if (current == key) return i;
+            if ((current == 0 || isIdle(i, now)) && keys.compareAndSet(i, current, key)) {
+                states.set(i, 0);
+                mutedUntil.set(i, 0);
+                return i;
+            }
+            if (keys.get(i) == key) return i;
+        }
+        return -1;
+    }
+
+    private boolean isIdle(int slot, long now) {
+        return (states.get(slot) & TAT_MASK) <= now && mutedUntil.get(slot) <= now;
+    }
+
+    private int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+    record Stats(long allowed, long dropped, long mutes, long overflow) {
+    }
+
+    Stats stats() {
+        return new Stats(allowed.sum(), dropped.sum(), mutes.sum(), overflow.sum());
+    }
+}
@@ -0,0 +1,178 @@
+package me.galyakyxnya.telegrambot;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Заранее отрисованная справка /help, разбитая на страницы в пределах лимита Telegram.
+// Строки команд рисуются один раз; страницы кэшируются по набору прав и списку команд чата,
+// от которых зависит видимость команд.
+final class HelpPages {
+
+    // Строка справки, имя команды в нижнем регистре и номер права из PermissionStore,
+    // без которого команда не показывается (-1 - видна всем)
+    record Entry(String command, int permission, String line) {
+    }
+
+    private record View(BitSet granted, Set<String> chatCommands) {
+    }
+
+    // Запас под строку "Страница N из M"
+    private static final int PAGE_FOOTER_RESERVE = 128;
+    // Теги, которые Telegram разбирает в parse_mode HTML
+    private static final Set<String> HTML_TAGS = Set.of("b", "strong", "i", "em", "u", "ins", "s", "strike", "del",
+            "a", "code", "pre", "span", "tg-spoiler", "tg-emoji", "blockquote");
+
+    private final List<Entry> entries;
+    private final String header;
+    private final String footer;
+    private final MessageTemplate pageFooter;
+    private final Map<View, List<String>> pagesByView = new ConcurrentHashMap<>();
+    // Права, от которых зависит справка; ключ кэша - только их пересечение с правами пользователя
+    private final BitSet allPermissions = new BitSet();
+    private final List<String> allPages;
+    // Фрагменты справки с символами, которые пришлось экранировать
+    private final List<String> unparsed = new ArrayList<>();
+
+    HelpPages(List<Entry> entries, String header, String footer, MessageTemplate pageFooter) {
+        this.entries = entries;
+        this.header = header;
+        this.footer = footer;
+        this.pageFooter = pageFooter;
+
+        for (Entry entry : entries) {
+            if (entry.permission() >= 0) allPermissions.set(entry.permission());
+            if (unescapedAt(entry.line(), 0) >= 0) unparsed.add(entry.line());
+        }
+        for (String part : List.of(header, footer, pageFooter.toString())) {
+            if (unescapedAt(part, 0) >= 0) unparsed.add(part);
+        }
+        this.allPages = paginate(new View(allPermissions, Set.of()));
+    }
+
+    // Все команды, без фильтра по правам
+    List<String> pages() {
+        return allPages;
+    }
+
+    // Команды, разрешённые в чате (пустой набор - все), без фильтра по правам
+    List<String> pages(Set<String> chatCommands) {
+        if (chatCommands.isEmpty()) return allPages;
+        return pagesByView.computeIfAbsent(new View(allPermissions, chatCommands), this::paginate);
+    }
+
+    // Только команды чата, доступные пользователю со скомпилированными правами granted
+    List<String> pages(Set<String> chatCommands, BitSet granted) {
+        BitSet visible = (BitSet) allPermissions.clone();
+        visible.and(granted);
+        if (visible.equals(allPermissions)) return pages(chatCommands);
+        return pagesByView.computeIfAbsent(new View(visible, chatCommands), this::paginate);
+    }
+
+    // Строки справки, в которых '<' или '&' не образуют тег или HTML-сущность
+    List<String> unparsed() {
+        return unparsed;
+    }
+
+    private List<String> paginate(View view) {
+        BitSet granted = view.granted();
+        Set<String> chatCommands = view.chatCommands();
+        int budget = MessageSplitter.MAX_MESSAGE_LENGTH - header.length() - footer.length() - PAGE_FOOTER_RESERVE;
+
+        List<StringBuilder> bodies = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        for (Entry entry : entries) {
+            if (entry.permission() >= 0 && !granted.get(entry.permission())) continue;
+            if (!chatCommands.isEmpty() && !chatCommands.contains(entry.command())) continue;
+
+            String line = entry.line();
+            if (line.length() > budget) {
+                line = line.substring(0, Math.max(0, budget));
+            }
+            if (current.length() + line.length() > budget) {
+                bodies.add(current);
+                current = new StringBuilder();
+            }
+            current.append(line);
+        }
+        bodies.add(current);
+
+        List<String> pages = new ArrayList<>(bodies.size());
+        for (int i = 0; i < bodies.size(); i++) {
+            StringBuilder page = new StringBuilder(MessageSplitter.MAX_MESSAGE_LENGTH);
+            page.append(header).append(bodies.get(i));
+            if (i == bodies.size() - 1) {
+                page.append(footer);
+            }
+            if (bodies.size() > 1) {
+                page.append(pageFooter.render(new MessageTemplate.Values()
+                        .set(MessageTemplate.Placeholder.PAGE, String.valueOf(i + 1))
+                        .set(MessageTemplate.Placeholder.PAGES, String.valueOf(bodies.size()))));
+            }
+            pages.add(escapeUnparsed(page.toString()));
+        }
+        return Collections.unmodifiableList(pages);
+    }
+
+    // ========== Проверка HTML ==========
+
+    // Позиция первого '<' или '&', который Telegram не разберёт как тег или сущность; -1 - всё корректно
+    static int unescapedAt(String html, int from) {
+        for (int i = from; i < html.length(); i++) {
+            char c = html.charAt(i);
+            if (c == '<') {
+                int end = html.indexOf('>', i);
+                if (end < 0 || !HTML_TAGS.contains(tagName(html, i + 1, end))) return i;
+                i = end;
+            } else if (c == '&') {
+                int semi = html.indexOf(';', i);
+                if (semi < 0 || !isEntity(html, i + 1, semi)) return i;
+                i = semi;
+            }
+        }
+        return -1;
+    }
+
+    // Экранирует только неразобранные символы: теги и сущности из настроек остаются как есть
+    static String escapeUnparsed(String html) {
+        int i = unescapedAt(html, 0);
+        if (i < 0) return html;
+
+        StringBuilder out = new StringBuilder(html.length() + 16);
+        int copied = 0;
+        while (i >= 0) {
+            out.append(html, copied, i).append(html.charAt(i) == '<' ? "&lt;" : "&amp;");
+            copied = i + 1;
+            i = unescapedAt(html, copied);
+        }
+        return out.append(html, copied, html.length()).toString();
+    }
+
+    private static String tagName(String html, int start, int end) {
+        if (start < end && html.charAt(start) == '/') start++;
+        int stop = start;
+        while (stop < end && (Character.isLetter(html.charAt(stop)) || html.charAt(stop) == '-')) stop++;
+        // После имени - конец тега, пробел перед атрибутами или '/'
+        if (stop == start || (stop < end && !Character.isWhitespace(html.charAt(stop)) && html.charAt(stop) != '/')) {
+            return "";
+        }
+        return html.substring(start, stop).toLowerCase(Locale.ROOT);
+    }
+
+    // &lt; &amp; &#60; &#x3c;
+    private static boolean isEntity(String html, int start, int end) {
+        if (end - start < 2 || end - start > 10) return false;
+        int i = html.charAt(start) == '#' ? start + 1 : start;
+        if (i > start && i < end && (html.charAt(i) == 'x' || html.charAt(i) == 'X')) i++;
+        if (i == end) return false;
+        for (; i < end; i++) {
+            if (!Character.isLetterOrDigit(html.charAt(i))) return false;
+        }
+        return true;
+    }
+}
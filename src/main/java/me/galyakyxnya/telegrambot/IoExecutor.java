@@ -0,0 +1,108 @@
+package me.galyakyxnya.telegrambot;
+
+import java.time.Duration;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+// Виртуальные потоки плагина для всего блокирующего сетевого ввода-вывода:
+// цикл опроса, отправка, HttpClient и webhook сервер.
+// Все задачи принадлежат одному исполнителю и отменяются вместе в shutdown.
+final class IoExecutor implements Executor {
+
+    private final String prefix;
+    private final Logger logger;
+    private final ExecutorService executor;
+
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicLong started = new AtomicLong();
+    private final AtomicLong timedOut = new AtomicLong();
+
+    IoExecutor(String prefix, Logger logger) {
+        this.prefix = prefix;
+        this.logger = logger;
+        this.executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(prefix + "-", 0).factory());
+    }
+
+    // Для HttpClient и HttpServer: каждая задача в своём виртуальном потоке
+    @Override
+    public void execute(Runnable command) {
+        executor.execute(track(command));
+    }
+
+    // Долгоживущая задача (цикл опроса, отправки). Отмена Future прерывает поток
+    Future<?> start(String name, Runnable loop) {
+        return executor.submit(track(() -> {
+            Thread.currentThread().setName(prefix + "-" + name);
+            loop.run();
+        }));
+    }
+
+    // Задача с крайним сроком: по истечении результат завершается TimeoutException, а поток прерывается
+    <T> CompletableFuture<T> submit(Callable<T> task, Duration deadline) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        Future<?> running;
+        try {
+            running = executor.submit(track(() -> {
+                try {
+                    result.complete(task.call());
+                } catch (Throwable e) {
+                    result.completeExceptionally(e);
+                }
+            }));
+        } catch (RejectedExecutionException e) {
+            result.completeExceptionally(e);
+            return result;
+        }
+
+        result.orTimeout(deadline.toMillis(), TimeUnit.MILLISECONDS).whenComplete((value, error) -> {
+            if (error instanceof TimeoutException) {
+                timedOut.incrementAndGet();
+                running.cancel(true);
+            }
+        });
+        return result;
+    }
+
+    // Отменяет все задачи и ждёт их завершения не дольше grace
+    boolean shutdown(Duration grace) {
+        executor.shutdownNow();
+        try {
+            if (executor.awaitTermination(grace.toMillis(), TimeUnit.MILLISECONDS)) {
+                return true;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        logger.warning("Не все сетевые задачи завершились за " + grace.toMillis() + " мс: " + active.get());
+        return false;
+    }
+
+    private Runnable track(Runnable task) {
+        return () -> {
+            active.incrementAndGet();
+            started.incrementAndGet();
+            try {
+                task.run();
+            } finally {
+                active.decrementAndGet();
+            }
+        };
+    }
+
+    record Stats(int active, long started, long timedOut) {
+    }
+
+    Stats stats() {
+        return new Stats(active.get(), started.get(), timedOut.get());
+    }
+}
@@ -0,0 +1,87 @@
+package me.galyakyxnya.telegrambot;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+// Гистограмма задержек в наносекундах с лог-линейными корзинами, как в HdrHistogram:
+// каждая степень двойки делится на 8 корзин, погрешность перцентилей не больше 12.5%.
+// Запись - один атомарный инкремент без аллокаций.
+final class LatencyHistogram {
+
+    private static final int SUB_BITS = 3;
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+    // Значения меньше 16 нс хранятся точно
+    private static final int LINEAR = SUB_COUNT * 2;
+    private static final int MIN_EXP = SUB_BITS + 1;
+    // 2^42 нс - больше часа, всё выше попадает в последнюю корзину
+    private static final int MAX_EXP = 42;
+    private static final int BUCKETS = LINEAR + (MAX_EXP - MIN_EXP + 1) * SUB_COUNT;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    void record(long nanos) {
+        long value = Math.max(0, nanos);
+        counts.incrementAndGet(index(value));
+        count.increment();
+        sum.add(value);
+
+        long current;
+        while (value > (current = max.get()) && !max.compareAndSet(current, value)) {
+            // повтор CAS
+        }
+    }
+
+    long count() {
+        return count.sum();
+    }
+
+    long sum() {
+        return sum.sum();
+    }
+
+    long max() {
+        return max.get();
+    }
+
+    // Верхняя граница корзины, в которую попадает перцентиль q (0..1)
+    long percentile(double q) {
+        long total = 0;
+        long[] snapshot = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0) return 0;
+
+        long rank = Math.max(1, (long) Math.ceil(q * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return Math.min(upperBound(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    private static int index(long value) {
+        if (value < LINEAR) return (int) value;
+
+        int exp = Math.min(MAX_EXP, 63 - Long.numberOfLeadingZeros(value));
+        if (exp == MAX_EXP && value >= (1L << (MAX_EXP + 1))) return BUCKETS - 1;
+        int sub = (int) (value >>> (exp - SUB_BITS)) & (SUB_COUNT - 1);
+        return LINEAR + (exp - MIN_EXP) * SUB_COUNT + sub;
+    }
+
+    private static long upperBound(int index) {
+        if (index < LINEAR) return index;
+
+        int exp = (index - LINEAR) / SUB_COUNT + MIN_EXP;
+        int sub = (index - LINEAR) % SUB_COUNT;
+        return ((long) (SUB_COUNT + sub + 1) << (exp - SUB_BITS)) - 1;
+    }
+}
@@ -0,0 +1,109 @@
+package me.galyakyxnya.telegrambot;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.DoubleSupplier;
+import java.util.logging.Logger;
+
+// Очередь задач для главного потока сервера. runTick() вызывается каждый тик и выполняет
+// задачи, пока не исчерпан бюджет времени; остаток переносится на следующий тик.
+// При высоком MSPT бюджет уменьшается, но одна задача за тик выполняется всегда.
+final class MainThreadDispatcher {
+
+    // Тик сервера при 20 TPS
+    private static final double TICK_MS = 50.0;
+
+    private final ConcurrentLinkedQueue<Task> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger size = new AtomicInteger();
+    private final long budgetNanos;
+    private final double highMspt;
+    private final DoubleSupplier msptSource;
+    private final Metrics metrics;
+    private final Logger logger;
+
+    // Пишутся только из главного потока
+    private volatile long lastTickNanos;
+    private volatile long avgTickNanos;
+    private volatile long maxTickNanos;
+    private volatile long avgWaitNanos;
+    private volatile long maxWaitNanos;
+    private volatile long executed;
+    private volatile long throttledTicks;
+
+    MainThreadDispatcher(long budgetNanos, double highMspt, DoubleSupplier msptSource, Metrics metrics,
+                         Logger logger) {
+        this.budgetNanos = budgetNanos;
+        this.highMspt = Math.min(highMspt, TICK_MS - 1);
+        this.msptSource = msptSource;
+        this.metrics = metrics;
+        this.logger = logger;
+    }
+
+    void submit(Runnable task) {
+        queue.add(new Task(task, System.nanoTime()));
+        size.incrementAndGet();
+    }
+
+    void runTick() {
+        if (queue.isEmpty()) {
+            lastTickNanos = 0;
+            return;
+        }
+
+        long start = System.nanoTime();
+        long deadline = start + currentBudget();
+        int ran = 0;
+
+        Task task;
+        while ((ran == 0 || System.nanoTime() < deadline) && (task = queue.poll()) != null) {
+            size.decrementAndGet();
+            recordWait(start - task.enqueuedNanos);
+            try {
+                task.runnable.run();
+            } catch (Exception e) {
+                logger.warning("Ошибка задачи главного потока: " + e.getMessage());
+            }
+            ran++;
+        }
+
+        long spent = System.nanoTime() - start;
+        lastTickNanos = spent;
+        avgTickNanos = avgTickNanos == 0 ? spent : (avgTickNanos * 7 + spent) / 8;
+        maxTickNanos = Math.max(maxTickNanos, spent);
+        executed += ran;
+    }
+
+    // Бюджет линейно сжимается от полного при highMspt до нуля при 50 мс
+    private long currentBudget() {
+        double mspt = msptSource.getAsDouble();
+        if (mspt <= highMspt) {
+            return budgetNanos;
+        }
+        throttledTicks++;
+        double factor = Math.max(0, (TICK_MS - mspt) / (TICK_MS - highMspt));
+        return (long) (budgetNanos * factor);
+    }
+
+    private void recordWait(long waitNanos) {
+        metrics.record(Metrics.Stage.QUEUE_WAIT, waitNanos);
+        avgWaitNanos = avgWaitNanos == 0 ? waitNanos : (avgWaitNanos * 15 + waitNanos) / 16;
+        maxWaitNanos = Math.max(maxWaitNanos, waitNanos);
+    }
+
+    Stats stats() {
+        return new Stats(size.get(), executed, throttledTicks,
+                lastTickNanos, avgTickNanos, maxTickNanos, avgWaitNanos, maxWaitNanos);
+    }
+
+    record Stats(int queued, long executed, long throttledTicks, long lastTickNanos, long avgTickNanos,
+                 long maxTickNanos, long avgWaitNanos, long maxWaitNanos) {
+
+        static String millis(long nanos) {
+            return String.format("%.2f мс", nanos / (double) TimeUnit.MILLISECONDS.toNanos(1));
+        }
+    }
+
+    private record Task(Runnable runnable, long enqueuedNanos) {
+    }
+}
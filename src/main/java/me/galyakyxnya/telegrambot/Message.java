@@ -0,0 +1,7 @@
+package me.galyakyxnya.telegrambot;
+
+// Только те поля сообщения Telegram, которые использует бот.
+// fromId == 0, если отправитель не указан; строки могут быть null.
+// date - время отправки в секундах Unix.
+record Message(long messageId, long chatId, long date, long fromId, String username, String firstName, String text) {
+}
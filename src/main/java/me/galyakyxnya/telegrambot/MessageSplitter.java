@@ -0,0 +1,73 @@
+package me.galyakyxnya.telegrambot;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+// Разбиение текста на сообщения в пределах лимита Telegram
+final class MessageSplitter {
+
+    static final int MAX_MESSAGE_LENGTH = 4096;
+
+    private MessageSplitter() {
+    }
+
+    // Складывает части в минимальное число сообщений, не разрывая части без необходимости
+    static List<String> pack(Collection<String> parts, String separator, int maxLength) {
+        List<String> messages = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+
+        for (String part : parts) {
+            if (part.length() > maxLength) {
+                if (current.length() > 0) {
+                    messages.add(current.toString());
+                    current.setLength(0);
+                }
+                messages.addAll(split(part, maxLength));
+                continue;
+            }
+
+            int needed = current.length() == 0 ? part.length() : current.length() + separator.length() + part.length();
+            if (needed > maxLength) {
+                messages.add(current.toString());
+                current.setLength(0);
+            }
+            if (current.length() > 0) {
+                current.append(separator);
+            }
+            current.append(part);
+        }
+
+        if (current.length() > 0) {
+            messages.add(current.toString());
+        }
+        return messages;
+    }
+
+    // Режет длинный текст по переводам строк, а если строка длиннее лимита - по символам
+    static List<String> split(String text, int maxLength) {
+        List<String> chunks = new ArrayList<>();
+        int start = 0;
+
+        while (text.length() - start > maxLength) {
+            int end = text.lastIndexOf('\n', start + maxLength);
+            if (end <= start) {
+                end = start + maxLength;
+                // Не разрываем суррогатную пару (эмодзи)
+                if (Character.isHighSurrogate(text.charAt(end - 1))) {
+                    end--;
+                }
+                chunks.add(text.substring(start, end));
+                start = end;
+            } else {
+                chunks.add(text.substring(start, end));
+                start = end + 1;
+            }
+        }
+
+        if (start < text.length()) {
+            chunks.add(text.substring(start));
+        }
+        return chunks;
+    }
+}
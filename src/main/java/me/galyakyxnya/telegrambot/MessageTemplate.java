@@ -0,0 +1,140 @@
+package me.galyakyxnya.telegrambot;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Шаблон с плейсхолдерами (%player%, %user% и т.д.), разобранный один раз при загрузке.
+// Подстановка - один проход в заранее рассчитанный StringBuilder; подставленные
+// значения повторно не сканируются, поэтому "%user%" в нике игрока не раскрывается.
+final class MessageTemplate {
+
+    enum Placeholder {
+        PLAYER("player"),
+        ARGS("args"),
+        USER("user"),
+        USER_ID("user_id"),
+        TIME("time"),
+        CMD("cmd"),
+        COOLDOWN("cooldown"),
+        EHO("eho"),
+        PAGE("page"),
+        PAGES("pages"),
+        // Состояние сервера для команд-запросов
+        ONLINE("online"),
+        MAX("max"),
+        PLAYERS("players"),
+        TPS("tps"),
+        MSPT("mspt"),
+        WORLDS("worlds"),
+        ENTITIES("entities"),
+        CHUNKS("chunks"),
+        UPTIME("uptime"),
+        // Текст события для пересылки в Telegram
+        MESSAGE("message");
+
+        private final String name;
+
+        Placeholder(String name) {
+            this.name = name;
+        }
+
+        static Placeholder byName(String name) {
+            for (Placeholder placeholder : values()) {
+                if (placeholder.name.equals(name)) return placeholder;
+            }
+            return null;
+        }
+    }
+
+    // Значения для подстановки; отсутствующие подставляются пустой строкой
+    static final class Values {
+        private final String[] values = new String[Placeholder.values().length];
+
+        Values set(Placeholder placeholder, String value) {
+            values[placeholder.ordinal()] = value;
+            return this;
+        }
+    }
+
+    private final String source;
+    // literals.length == placeholders.length + 1: литерал, плейсхолдер, литерал, ...
+    private final String[] literals;
+    private final Placeholder[] placeholders;
+    private final int literalLength;
+    private final int usedMask;
+
+    private MessageTemplate(String source, String[] literals, Placeholder[] placeholders) {
+        this.source = source;
+        this.literals = literals;
+        this.placeholders = placeholders;
+
+        int length = 0;
+        for (String literal : literals) {
+            length += literal.length();
+        }
+        int mask = 0;
+        for (Placeholder placeholder : placeholders) {
+            mask |= 1 << placeholder.ordinal();
+        }
+        this.literalLength = length;
+        this.usedMask = mask;
+    }
+
+    static MessageTemplate compile(String source) {
+        List<String> literals = new ArrayList<>();
+        List<Placeholder> placeholders = new ArrayList<>();
+
+        int literalStart = 0;
+        int i = source.indexOf('%');
+        while (i != -1) {
+            int end = source.indexOf('%', i + 1);
+            if (end == -1) break;
+
+            Placeholder placeholder = Placeholder.byName(source.substring(i + 1, end));
+            if (placeholder == null) {
+                // Одиночный '%' - часть текста; закрывающий может открывать следующий плейсхолдер
+                i = end;
+                continue;
+            }
+
+            literals.add(source.substring(literalStart, i));
+            placeholders.add(placeholder);
+            literalStart = end + 1;
+            i = source.indexOf('%', literalStart);
+        }
+        literals.add(source.substring(literalStart));
+
+        return new MessageTemplate(source, literals.toArray(new String[0]), placeholders.toArray(new Placeholder[0]));
+    }
+
+    boolean uses(Placeholder placeholder) {
+        return (usedMask & (1 << placeholder.ordinal())) != 0;
+    }
+
+    String render(Values values) {
+        if (placeholders.length == 0) {
+            return source;
+        }
+
+        String[] vals = values.values;
+        int length = literalLength;
+        for (Placeholder placeholder : placeholders) {
+            String value = vals[placeholder.ordinal()];
+            if (value != null) length += value.length();
+        }
+
+        StringBuilder sb = new StringBuilder(length);
+        for (int i = 0; i < placeholders.length; i++) {
+            sb.append(literals[i]);
+            String value = vals[placeholders[i].ordinal()];
+            if (value != null) sb.append(value);
+        }
+        sb.append(literals[placeholders.length]);
+        return sb.toString();
+    }
+
+    @Override
+    public String toString() {
+        return source;
+    }
+}
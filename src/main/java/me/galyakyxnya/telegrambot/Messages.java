@@ -0,0 +1,18 @@
+package me.galyakyxnya.telegrambot;
+
+// Скомпилированные шаблоны секции messages.*; пересоздаются при перезагрузке конфига
+record Messages(MessageTemplate welcome,
+                MessageTemplate helpHeader,
+                MessageTemplate commandFormat,
+                MessageTemplate helpFooter,
+                MessageTemplate helpPage,
+                MessageTemplate unknownCommand,
+                MessageTemplate didYouMean,
+                MessageTemplate cooldown,
+                MessageTemplate noPermission,
+                MessageTemplate notInChat,
+                MessageTemplate usage,
+                MessageTemplate floodWarning,
+                MessageTemplate floodMuted,
+                MessageTemplate serverOffline) {
+}
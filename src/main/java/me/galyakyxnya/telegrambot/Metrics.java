@@ -0,0 +1,120 @@
+package me.galyakyxnya.telegrambot;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.LongAdder;
+
+// Счётчики и гистограммы задержек по этапам обработки команды.
+// Запись не выделяет памяти; при выключенных метриках record/increment ничего не делают.
+final class Metrics {
+
+    enum Stage {
+        POLL("poll", "Опрос getUpdates"),
+        PARSE("parse", "Разбор обновлений"),
+        ADMISSION("admission", "Приём (повторы, антифлуд)"),
+        QUEUE_WAIT("queue_wait", "Ожидание главного потока"),
+        DISPATCH("dispatch", "dispatchCommand"),
+        SNAPSHOT("snapshot", "Сбор снимка сервера"),
+        QUERY("query", "Ответ из снимка"),
+        OUTBOUND_WAIT("outbound_wait", "Очередь отправки"),
+        SEND("send", "Отправка sendMessage");
+
+        final String key;
+        final String title;
+
+        Stage(String key, String title) {
+            this.key = key;
+            this.title = title;
+        }
+    }
+
+    enum Counter {
+        UPDATES("updates", "Получено обновлений"),
+        COMMANDS("commands", "Выполнено команд"),
+        FLOOD_REJECTED("flood_rejected", "Отброшено антифлудом"),
+        SENT("sent", "Отправлено сообщений"),
+        SEND_FAILED("send_failed", "Ошибок отправки"),
+        RETRIES("retries", "Повторов HTTP"),
+        RATE_LIMITED("rate_limited", "Ответов 429");
+
+        final String key;
+        final String title;
+
+        Counter(String key, String title) {
+            this.key = key;
+            this.title = title;
+        }
+    }
+
+    static final Metrics DISABLED = new Metrics(false);
+
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99};
+
+    private final boolean enabled;
+    private final LatencyHistogram[] histograms = new LatencyHistogram[Stage.values().length];
+    private final LongAdder[] counters = new LongAdder[Counter.values().length];
+
+    Metrics(boolean enabled) {
+        this.enabled = enabled;
+        for (int i = 0; i < histograms.length; i++) {
+            histograms[i] = new LatencyHistogram();
+        }
+        for (int i = 0; i < counters.length; i++) {
+            counters[i] = new LongAdder();
+        }
+    }
+
+    boolean enabled() {
+        return enabled;
+    }
+
+    void record(Stage stage, long nanos) {
+        if (enabled) {
+            histograms[stage.ordinal()].record(nanos);
+        }
+    }
+
+    void increment(Counter counter) {
+        if (enabled) {
+            counters[counter.ordinal()].increment();
+        }
+    }
+
+    LatencyHistogram histogram(Stage stage) {
+        return histograms[stage.ordinal()];
+    }
+
+    long count(Counter counter) {
+        return counters[counter.ordinal()].sum();
+    }
+
+    // Текстовый формат Prometheus 0.0.4: этапы как summary с квантилями, счётчики как counter
+    String toPrometheus() {
+        StringBuilder out = new StringBuilder(4096);
+
+        out.append("# HELP telegrambot_stage_latency_seconds Задержка этапов обработки\n");
+        out.append("# TYPE telegrambot_stage_latency_seconds summary\n");
+        for (Stage stage : Stage.values()) {
+            LatencyHistogram histogram = histogram(stage);
+            for (double q : QUANTILES) {
+                out.append("telegrambot_stage_latency_seconds{stage=\"").append(stage.key)
+                        .append("\",quantile=\"").append(q).append("\"} ")
+                        .append(seconds(histogram.percentile(q))).append('\n');
+            }
+            out.append("telegrambot_stage_latency_seconds_sum{stage=\"").append(stage.key).append("\"} ")
+                    .append(seconds(histogram.sum())).append('\n');
+            out.append("telegrambot_stage_latency_seconds_count{stage=\"").append(stage.key).append("\"} ")
+                    .append(histogram.count()).append('\n');
+        }
+
+        for (Counter counter : Counter.values()) {
+            String name = "telegrambot_" + counter.key + "_total";
+            out.append("# TYPE ").append(name).append(" counter\n");
+            out.append(name).append(' ').append(count(counter)).append('\n');
+        }
+        return out.toString();
+    }
+
+    private static String seconds(long nanos) {
+        return String.format(Locale.ROOT, "%.9f", nanos / 1e9);
+    }
+}
@@ -0,0 +1,63 @@
+package me.galyakyxnya.telegrambot;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executor;
+
+// Локальный HTTP endpoint с метриками в текстовом формате Prometheus
+final class MetricsServer {
+
+    private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private final InetSocketAddress address;
+    private final String path;
+    private final Metrics metrics;
+    private final Executor executor;
+
+    private HttpServer server;
+
+    MetricsServer(InetSocketAddress address, String path, Metrics metrics, Executor executor) {
+        this.address = address;
+        this.path = path;
+        this.metrics = metrics;
+        this.executor = executor;
+    }
+
+    void start() throws IOException {
+        server = HttpServer.create(address, 0);
+        server.createContext(path, this::handle);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    void stop() {
+        if (server != null) {
+            server.stop(0);
+        }
+    }
+
+    int port() {
+        return server.getAddress().getPort();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+
+            byte[] body = metrics.toPrometheus().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        }
+    }
+}
@@ -0,0 +1,500 @@
+package me.galyakyxnya.telegrambot;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Logger;
+
+// Единая очередь исходящих сообщений: лимиты Telegram на чат и на бота (token bucket),
+// приоритет ответов на команды перед рассылками и повтор после 429 с учётом retry_after.
+// Пока Telegram недоступен, CircuitBreaker останавливает отправку; сообщения сверх очереди в памяти
+// уходят в OutboundSpool на диске и возвращаются в очередь по мере отправки
+final class OutboundDispatcher {
+
+    enum Priority {
+        REPLY,
+        BROADCAST
+    }
+
+    enum DropPolicy {
+        DROP_OLDEST,
+        DROP_NEWEST;
+
+        static DropPolicy fromConfig(String value) {
+            return "drop-newest".equalsIgnoreCase(value) ? DROP_NEWEST : DROP_OLDEST;
+        }
+    }
+
+    // Сколько сообщений в очереди просматривается в поисках чата со свободным лимитом
+    private static final int MAX_SCAN = 64;
+    // Сколько сообщений за раз поднимается с диска
+    private static final int SPOOL_BATCH = 256;
+    // Сколько раз повторять сообщение, на которое Telegram ответил 5xx
+    private static final int MAX_SERVER_ERRORS = 3;
+
+    private final TelegramApiClient client;
+    private final Metrics metrics;
+    private final Logger logger;
+    private final int capacity;
+    private final DropPolicy dropPolicy;
+    private final int maxInFlight;
+    private final double chatBurst;
+    private final double chatPerSecond;
+    private final CircuitBreaker breaker;
+    // null - очередь на диске выключена
+    private final OutboundSpool spool;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+    private final ArrayDeque<OutboundMessage> replies = new ArrayDeque<>();
+    private final ArrayDeque<OutboundMessage> broadcasts = new ArrayDeque<>();
+    private final Map<String, TokenBucket> chatBuckets = new HashMap<>();
+    private final TokenBucket globalBucket;
+    // Отправляемые сейчас сообщения по чатам (в чат - не больше одного); при остановке сохраняются на диск
+    private final Map<String, OutboundMessage> inFlight = new HashMap<>();
+    private final Set<String> scanBlocked = new HashSet<>();
+    private long nextWakeNanos;
+    // Пока на диске есть сообщения, новые рассылки пишутся туда же, чтобы не обгонять их
+    private boolean spooling;
+
+    // Счётчики для /telegrambot status
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong rateLimited = new AtomicLong();
+    private final AtomicLong spooled = new AtomicLong();
+    private final long[] sentPerSecond = new long[60];
+    // nanoTime может быть отрицательным, поэтому отсчёт окна берётся от часов, а не от 0
+    private long sentPerSecondEpoch = TimeUnit.NANOSECONDS.toSeconds(System.nanoTime());
+
+    private volatile boolean running;
+    private Future<?> senderTask;
+
+    OutboundDispatcher(TelegramApiClient client, Metrics metrics, Logger logger, int capacity, DropPolicy dropPolicy,
+                       int maxInFlight, double globalPerSecond, double chatBurst, double chatPerSecond,
+                       CircuitBreaker breaker, OutboundSpool spool) {
+        this.client = client;
+        this.metrics = metrics;
+        this.logger = logger;
+        this.capacity = Math.max(1, capacity);
+        this.dropPolicy = dropPolicy;
+        this.maxInFlight = Math.max(1, maxInFlight);
+        this.chatBurst = Math.max(1, chatBurst);
+        this.chatPerSecond = chatPerSecond;
+        this.globalBucket = new TokenBucket(Math.max(1, globalPerSecond), globalPerSecond, System.nanoTime());
+        this.breaker = breaker;
+        this.spool = spool;
+        this.spooling = spool != null && !spool.isEmpty();
+    }
+
+    void start(IoExecutor executor) {
+        running = true;
+        senderTask = executor.start("Outbound", this::runLoop);
+    }
+
+    // Останавливает отправку, дав очереди до drainMillis на доставку оставшегося.
+    // Неотправленное из памяти сохраняется на диск, если очередь на диске включена
+    void stop(long drainMillis) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(drainMillis);
+        lock.lock();
+        try {
+            // При недоступном API ждать бесполезно
+            while ((!replies.isEmpty() || !broadcasts.isEmpty() || !inFlight.isEmpty())
+                    && breaker.state() == CircuitBreaker.State.CLOSED && System.nanoTime() < deadline) {
+                changed.awaitNanos(deadline - System.nanoTime());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            running = false;
+            changed.signalAll();
+            lock.unlock();
+        }
+        if (senderTask != null) {
+            senderTask.cancel(true);
+        }
+        if (spool != null) {
+            saveToSpool();
+        }
+    }
+
+    // Сначала отправляемые, затем ответы и рассылки: всё из памяти старше того, что уже на диске.
+    // Запрос, который ещё завершится успешно, после запуска будет отправлен повторно
+    private void saveToSpool() {
+        lock.lock();
+        try {
+            List<OutboundSpool.Entry> entries = new ArrayList<>(inFlight.size() + replies.size() + broadcasts.size());
+            for (OutboundMessage message : inFlight.values()) {
+                entries.add(message.toEntry());
+            }
+            inFlight.clear();
+            for (ArrayDeque<OutboundMessage> lane : List.of(replies, broadcasts)) {
+                for (OutboundMessage message : lane) {
+                    entries.add(message.toEntry());
+                }
+                lane.clear();
+            }
+            spool.prepend(entries);
+            if (!spool.isEmpty()) {
+                logger.info("Неотправленных сообщений сохранено на диск: " + spool.pending());
+            }
+        } catch (IOException e) {
+            logger.warning("Не удалось сохранить очередь сообщений на диск: " + e.getMessage());
+        } finally {
+            spool.close();
+            lock.unlock();
+        }
+    }
+
+    boolean enqueue(String chatId, String text, Priority priority) {
+        return enqueue(chatId, text, 0, priority);
+    }
+
+    boolean enqueue(String chatId, String text, long replyToMessageId, Priority priority) {
+        OutboundMessage message = new OutboundMessage(chatId, text, replyToMessageId, priority, System.nanoTime(), 0);
+        lock.lock();
+        try {
+            boolean full = replies.size() + broadcasts.size() >= capacity;
+            // Ответы на команды не встают за накопленным на диске, пока в памяти есть место
+            if ((full || (spooling && priority == Priority.BROADCAST)) && toSpool(message)) {
+                changed.signal();
+                return true;
+            }
+            if (full && !makeRoom(priority)) {
+                dropped.incrementAndGet();
+                return false;
+            }
+            lane(priority).addLast(message);
+            changed.signal();
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean toSpool(OutboundMessage message) {
+        if (spool == null) return false;
+        try {
+            if (!spool.append(message.toEntry())) return false;
+        } catch (IOException e) {
+            logger.warning("Ошибка записи очереди сообщений на диск: " + e.getMessage());
+            return false;
+        }
+        spooling = true;
+        spooled.incrementAndGet();
+        return true;
+    }
+
+    // Поднимает сообщения с диска, когда очередь в памяти опустела наполовину
+    private void refillFromSpool() {
+        int queued = replies.size() + broadcasts.size();
+        if (!spooling || !running || queued > capacity / 2) return;
+        try {
+            long now = System.nanoTime();
+            for (OutboundSpool.Entry entry : spool.read(Math.min(SPOOL_BATCH, capacity - queued))) {
+                Priority priority = entry.reply() ? Priority.REPLY : Priority.BROADCAST;
+                lane(priority).addLast(new OutboundMessage(entry.chatId(), entry.text(), entry.replyToMessageId(),
+                        priority, now, 0));
+            }
+            spooling = !spool.isEmpty();
+        } catch (IOException e) {
+            // Остаток на диске будет прочитан после перезапуска
+            logger.warning("Ошибка чтения очереди сообщений с диска: " + e.getMessage());
+            spooling = false;
+        }
+    }
+
+    private boolean makeRoom(Priority incoming) {
+        if (dropPolicy == DropPolicy.DROP_NEWEST) {
+            return false;
+        }
+        // Рассылки вытесняются первыми; ради рассылки ответ на команду не выбрасывается
+        if (!broadcasts.isEmpty()) {
+            broadcasts.pollFirst();
+        } else if (incoming == Priority.REPLY && !replies.isEmpty()) {
+            replies.pollFirst();
+        } else {
+            return false;
+        }
+        dropped.incrementAndGet();
+        return true;
+    }
+
+    private ArrayDeque<OutboundMessage> lane(Priority priority) {
+        return priority == Priority.REPLY ? replies : broadcasts;
+    }
+
+    // ========== Цикл отправки ==========
+
+    private void runLoop() {
+        while (running) {
+            OutboundMessage next;
+            lock.lock();
+            try {
+                long now = System.nanoTime();
+                refillFromSpool();
+                next = inFlight.size() < maxInFlight ? pollReady(now) : null;
+                if (next == null) {
+                    if (nextWakeNanos == Long.MAX_VALUE || inFlight.size() >= maxInFlight) {
+                        changed.await();
+                    } else {
+                        changed.awaitNanos(nextWakeNanos);
+                    }
+                    continue;
+                }
+                inFlight.put(next.chatId, next);
+            } catch (InterruptedException e) {
+                break;
+            } finally {
+                lock.unlock();
+            }
+
+            send(next);
+        }
+    }
+
+    // Первое сообщение, для чата которого есть токен; порядок внутри чата сохраняется
+    private OutboundMessage pollReady(long now) {
+        nextWakeNanos = Long.MAX_VALUE;
+
+        // Разомкнутый breaker: ждём окончания паузы или ответа на пробный запрос
+        long breakerWait = breaker.nanosUntilAllowed(now);
+        if (breakerWait > 0) {
+            nextWakeNanos = breakerWait;
+            return null;
+        }
+
+        for (ArrayDeque<OutboundMessage> lane : List.of(replies, broadcasts)) {
+            scanBlocked.clear();
+            int scanned = 0;
+            Iterator<OutboundMessage> it = lane.iterator();
+            while (it.hasNext() && scanned++ < MAX_SCAN) {
+                OutboundMessage message = it.next();
+                if (scanBlocked.contains(message.chatId)) continue;
+
+                TokenBucket chatBucket = chatBucket(message.chatId, now);
+                if (inFlight.containsKey(message.chatId)) {
+                    scanBlocked.add(message.chatId);
+                    continue;
+                }
+                long chatWait = chatBucket.nanosUntilAvailable(now);
+                if (chatWait > 0) {
+                    scanBlocked.add(message.chatId);
+                    nextWakeNanos = Math.min(nextWakeNanos, chatWait);
+                    continue;
+                }
+
+                long globalWait = globalBucket.nanosUntilAvailable(now);
+                if (globalWait > 0) {
+                    nextWakeNanos = Math.min(nextWakeNanos, globalWait);
+                    return null;
+                }
+
+                globalBucket.take();
+                chatBucket.take();
+                breaker.onAttempt();
+                it.remove();
+                return message;
+            }
+        }
+        return null;
+    }
+
+    private TokenBucket chatBucket(String chatId, long now) {
+        TokenBucket bucket = chatBuckets.get(chatId);
+        if (bucket == null) {
+            if (chatBuckets.size() >= 1024) {
+                chatBuckets.values().removeIf(b -> b.isIdle(now));
+            }
+            bucket = new TokenBucket(chatBurst, chatPerSecond, now);
+            chatBuckets.put(chatId, bucket);
+        }
+        return bucket;
+    }
+
+    private void send(OutboundMessage message) {
+        long sendStart = System.nanoTime();
+        metrics.record(Metrics.Stage.OUTBOUND_WAIT, sendStart - message.enqueuedNanos);
+        client.sendMessage(message.chatId, message.text, message.replyToMessageId).whenComplete((response, error) -> {
+            metrics.record(Metrics.Stage.SEND, System.nanoTime() - sendStart);
+            lock.lock();
+            try {
+                if (!running) {
+                    // Остановка: доставленное забываем, остальное остаётся в inFlight для saveToSpool
+                    if (error == null && response.statusCode() != 429 && response.statusCode() < 500) {
+                        inFlight.remove(message.chatId);
+                    }
+                    return;
+                }
+                inFlight.remove(message.chatId);
+
+                if (error != null || response.statusCode() >= 500) {
+                    // Сеть или сервер Telegram недоступны: сообщение возвращается в начало очереди
+                    failed.incrementAndGet();
+                    metrics.increment(Metrics.Counter.SEND_FAILED);
+                    onUnavailable(message, error != null ? error.getMessage() : "HTTP " + response.statusCode());
+                } else if (response.statusCode() == 429) {
+                    breaker.onSuccess();
+                    // Telegram просит подождать: ставим чат на паузу и возвращаем сообщение в начало очереди
+                    rateLimited.incrementAndGet();
+                    metrics.increment(Metrics.Counter.RATE_LIMITED);
+                    long retryAfter = parseRetryAfter(response.body());
+                    long pauseUntil = System.nanoTime() + TimeUnit.SECONDS.toNanos(retryAfter);
+                    chatBucket(message.chatId, System.nanoTime()).pauseUntil(pauseUntil);
+                    lane(message.priority).addFirst(message);
+                } else if (!response.ok()) {
+                    breaker.onSuccess();
+                    failed.incrementAndGet();
+                    metrics.increment(Metrics.Counter.SEND_FAILED);
+                    logger.warning("sendMessage вернул HTTP " + response.statusCode() + ": " + response.body());
+                } else {
+                    if (breaker.onSuccess()) {
+                        logger.info("Telegram API снова доступен, отправка возобновлена");
+                    }
+                    sent.incrementAndGet();
+                    metrics.increment(Metrics.Counter.SENT);
+                    recordSent();
+                }
+
+                changed.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        });
+    }
+
+    private void onUnavailable(OutboundMessage message, String reason) {
+        boolean wasClosed = breaker.state() == CircuitBreaker.State.CLOSED;
+        if (breaker.onFailure(System.nanoTime())) {
+            if (wasClosed) {
+                logger.warning("Telegram API недоступен (" + reason + "), отправка приостановлена");
+            }
+        } else if (wasClosed) {
+            logger.warning("Ошибка отправки Telegram сообщения: " + reason);
+        }
+
+        // Сеть повторяется без ограничений; 5xx на одно и то же сообщение - не больше MAX_SERVER_ERRORS раз
+        int serverErrors = message.serverErrors + (reason.startsWith("HTTP ") ? 1 : 0);
+        if (serverErrors >= MAX_SERVER_ERRORS) {
+            dropped.incrementAndGet();
+            return;
+        }
+        lane(message.priority).addFirst(new OutboundMessage(message.chatId, message.text, message.replyToMessageId,
+                message.priority, message.enqueuedNanos, serverErrors));
+    }
+
+    // "parameters":{"retry_after":N} из тела ответа 429
+    static long parseRetryAfter(String body) {
+        int idx = body == null ? -1 : body.indexOf("\"retry_after\"");
+        if (idx == -1) return 1;
+
+        int i = body.indexOf(':', idx) + 1;
+        while (i < body.length() && body.charAt(i) == ' ') i++;
+
+        long value = 0;
+        boolean digits = false;
+        while (i < body.length() && Character.isDigit(body.charAt(i))) {
+            value = value * 10 + (body.charAt(i++) - '0');
+            digits = true;
+        }
+        return digits ? Math.max(1, value) : 1;
+    }
+
+    // ========== Статистика ==========
+
+    private void recordSent() {
+        long second = TimeUnit.NANOSECONDS.toSeconds(System.nanoTime());
+        advanceRateWindow(second);
+        sentPerSecond[Math.floorMod(second, sentPerSecond.length)]++;
+    }
+
+    private void advanceRateWindow(long second) {
+        if (second - sentPerSecondEpoch >= sentPerSecond.length) {
+            Arrays.fill(sentPerSecond, 0);
+        } else {
+            for (long s = sentPerSecondEpoch + 1; s <= second; s++) {
+                sentPerSecond[Math.floorMod(s, sentPerSecond.length)] = 0;
+            }
+        }
+        sentPerSecondEpoch = Math.max(sentPerSecondEpoch, second);
+    }
+
+    Stats stats() {
+        lock.lock();
+        try {
+            advanceRateWindow(TimeUnit.NANOSECONDS.toSeconds(System.nanoTime()));
+            long lastMinute = 0;
+            for (long count : sentPerSecond) {
+                lastMinute += count;
+            }
+            return new Stats(replies.size(), broadcasts.size(), inFlight.size(),
+                    sent.get(), lastMinute, dropped.get(), failed.get(), rateLimited.get(),
+                    spool != null ? spool.pending() : 0, spooled.get(), breaker.state(), breaker.opened());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    record Stats(int queuedReplies, int queuedBroadcasts, int inFlight, long sent, long sentLastMinute,
+                 long dropped, long failed, long rateLimited, long onDisk, long spooled,
+                 CircuitBreaker.State breaker, long breakerOpened) {
+    }
+
+    private record OutboundMessage(String chatId, String text, long replyToMessageId, Priority priority,
+                                   long enqueuedNanos, int serverErrors) {
+
+        OutboundSpool.Entry toEntry() {
+            return new OutboundSpool.Entry(chatId, text, replyToMessageId, priority == Priority.REPLY);
+        }
+    }
+
+    // Не потокобезопасен: используется только под lock диспетчера
+    private static final class TokenBucket {
+        private final double capacity;
+        private final double perNano;
+        private double tokens;
+        private long lastRefill;
+        private long pausedUntil;
+
+        TokenBucket(double capacity, double perSecond, long now) {
+            this.capacity = capacity;
+            this.perNano = perSecond / TimeUnit.SECONDS.toNanos(1);
+            this.tokens = capacity;
+            this.lastRefill = now;
+        }
+
+        long nanosUntilAvailable(long now) {
+            tokens = Math.min(capacity, tokens + (now - lastRefill) * perNano);
+            lastRefill = now;
+
+            if (now < pausedUntil) return pausedUntil - now;
+            if (tokens >= 1) return 0;
+            return perNano > 0 ? (long) ((1 - tokens) / perNano) + 1 : Long.MAX_VALUE;
+        }
+
+        void take() {
+            tokens -= 1;
+        }
+
+        void pauseUntil(long deadline) {
+            pausedUntil = Math.max(pausedUntil, deadline);
+            tokens = 0;
+        }
+
+        boolean isIdle(long now) {
+            return now >= pausedUntil && nanosUntilAvailable(now) == 0 && tokens >= capacity;
+        }
+    }
+}
@@ -0,0 +1,410 @@
+package me.galyakyxnya.telegrambot;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+// Исходящие сообщения на диске, пока очередь в памяти заполнена или Telegram недоступен.
+// Сегменты <номер>.seg с записями [длина int][crc32 int][данные], как в журнале; прочитанный
+// сегмент удаляется. Позиция чтения хранится в файле cursor, поэтому после перезапуска отправка
+// продолжается с первого непрочитанного сообщения. Запись без fsync: сообщения переживают
+// падение процесса, но не ОС. Не потокобезопасен: используется под lock OutboundDispatcher.
+final class OutboundSpool {
+
+    record Entry(String chatId, String text, long replyToMessageId, boolean reply) {
+    }
+
+    private static final int HEADER_SIZE = 8;
+    private static final int MAX_RECORD_SIZE = 64 * 1024;
+    private static final String SEGMENT_SUFFIX = ".seg";
+    // Номера новых сегментов растут отсюда; сообщения из памяти при остановке пишутся в сегмент с меньшим номером
+    private static final long FIRST_SEGMENT = 1_000_000_000L;
+
+    private final File dir;
+    private final File cursorFile;
+    private final long segmentBytes;
+    private final long maxBytes;
+    private final Logger logger;
+
+    // Номера сегментов от старых к новым
+    private final ArrayDeque<Long> segments = new ArrayDeque<>();
+    private long totalBytes;
+    private long pending;
+
+    private FileChannel writer;
+    private long writeSegment;
+    private FileChannel reader;
+    private long readSegment;
+    private long readPosition;
+    private boolean closed;
+
+    private final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+    private final CRC32 crc = new CRC32();
+
+    OutboundSpool(File dir, long segmentBytes, long maxBytes, Logger logger) {
+        this.dir = dir;
+        this.cursorFile = new File(dir, "cursor");
+        this.segmentBytes = Math.max(64 * 1024, segmentBytes);
+        this.maxBytes = Math.max(this.segmentBytes, maxBytes);
+        this.logger = logger;
+    }
+
+    // ========== Восстановление ==========
+
+    // Находит сегменты, пропускает прочитанное до cursor и обрезает оборванный хвост
+    void open() throws IOException {
+        if (!dir.exists() && !dir.mkdirs()) {
+            throw new IOException("Не удалось создать папку " + dir);
+        }
+
+        long cursorSegment = 0;
+        long cursorPosition = 0;
+        if (cursorFile.exists()) {
+            String[] cursor = Files.readString(cursorFile.toPath(), StandardCharsets.UTF_8).trim().split(":");
+            try {
+                cursorSegment = Long.parseLong(cursor[0]);
+                cursorPosition = Long.parseLong(cursor[1]);
+            } catch (RuntimeException e) {
+                logger.warning("Повреждён файл позиции очереди на диске, сообщения будут отправлены повторно");
+            }
+        }
+
+        List<Long> found = new ArrayList<>();
+        File[] files = dir.listFiles((d, name) -> name.endsWith(SEGMENT_SUFFIX));
+        if (files != null) {
+            for (File file : files) {
+                try {
+                    found.add(Long.parseLong(file.getName().substring(0, file.getName().length() - SEGMENT_SUFFIX.length())));
+                } catch (NumberFormatException e) {
+                    // Чужой файл в папке очереди
+                }
+            }
+        }
+        found.sort(null);
+
+        for (long id : found) {
+            if (id < cursorSegment) {
+                // Прочитан до остановки, но не успел удалиться
+                Files.deleteIfExists(segmentFile(id).toPath());
+                continue;
+            }
+            long start = id == cursorSegment ? cursorPosition : 0;
+            long records = scan(id, start);
+            if (records == 0 && segmentFile(id).length() <= start) {
+                Files.deleteIfExists(segmentFile(id).toPath());
+                continue;
+            }
+            segments.addLast(id);
+            totalBytes += segmentFile(id).length();
+            pending += records;
+        }
+
+        if (!segments.isEmpty()) {
+            readSegment = segments.peekFirst();
+            readPosition = readSegment == cursorSegment ? cursorPosition : 0;
+        }
+        writeSegment = segments.isEmpty() ? FIRST_SEGMENT : segments.peekLast();
+    }
+
+    // Число целых записей начиная с позиции start; всё после последней целой записи обрезается
+    private long scan(long id, long start) throws IOException {
+        long records = 0;
+        try (FileChannel ch = FileChannel.open(segmentFile(id).toPath(), StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            long size = ch.size();
+            long position = 0;
+            while (position + HEADER_SIZE <= size) {
+                int length = readRecordLength(ch, position, size);
+                if (length < 0) break;
+                if (position >= start) records++;
+                position += HEADER_SIZE + length;
+            }
+            if (position < size) {
+                ch.truncate(position);
+            }
+        }
+        return records;
+    }
+
+    // Длина целой записи с верной контрольной суммой или -1
+    private int readRecordLength(FileChannel ch, long position, long size) throws IOException {
+        header.clear();
+        readFully(ch, header, position);
+        int length = header.getInt(0);
+        int checksum = header.getInt(4);
+        if (length <= 0 || length > MAX_RECORD_SIZE || position + HEADER_SIZE + length > size) return -1;
+
+        ByteBuffer payload = ByteBuffer.allocate(length);
+        readFully(ch, payload, position + HEADER_SIZE);
+        crc.reset();
+        crc.update(payload.array(), 0, length);
+        return (int) crc.getValue() == checksum ? length : -1;
+    }
+
+    // ========== Запись ==========
+
+    boolean isEmpty() {
+        return pending == 0;
+    }
+
+    long pending() {
+        return pending;
+    }
+
+    // false - очередь на диске заполнена или сообщение слишком длинное
+    boolean append(Entry entry) throws IOException {
+        byte[] payload = encode(entry);
+        if (closed || payload == null || totalBytes + HEADER_SIZE + payload.length > maxBytes) return false;
+
+        if (writer != null && !writer.isOpen()) {
+            // Канал закрыт прерыванием потока: запись могла оборваться, продолжаем в новом сегменте
+            writer = null;
+            writeSegment++;
+        }
+        if (writer == null || writer.size() >= segmentBytes) {
+            rollWriter();
+        }
+        writeRecord(writer, payload);
+        totalBytes += HEADER_SIZE + payload.length;
+        pending++;
+        return true;
+    }
+
+    private void rollWriter() throws IOException {
+        if (writer != null) {
+            writer.close();
+            writeSegment++;
+        } else if (segments.contains(writeSegment) && segmentFile(writeSegment).length() >= segmentBytes) {
+            writeSegment++;
+        }
+        writer = FileChannel.open(segmentFile(writeSegment).toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        if (!segments.contains(writeSegment)) {
+            segments.addLast(writeSegment);
+        }
+        if (segments.size() == 1) {
+            readSegment = writeSegment;
+        }
+    }
+
+    private void writeRecord(FileChannel ch, byte[] payload) throws IOException {
+        crc.reset();
+        crc.update(payload, 0, payload.length);
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + payload.length);
+        buffer.putInt(payload.length).putInt((int) crc.getValue()).put(payload).flip();
+        while (buffer.hasRemaining()) {
+            ch.write(buffer);
+        }
+    }
+
+    // ========== Чтение ==========
+
+    // До max сообщений в порядке записи. Позиция сохраняется сразу: прочитанное уходит в очередь в памяти
+    List<Entry> read(int max) throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        while (entries.size() < max && pending > 0 && !segments.isEmpty()) {
+            if (reader == null || !reader.isOpen()) {
+                readSegment = segments.peekFirst();
+                reader = FileChannel.open(segmentFile(readSegment).toPath(), StandardOpenOption.READ);
+            }
+            long size = reader.size();
+            int length = readPosition + HEADER_SIZE <= size ? readRecordLength(reader, readPosition, size) : -1;
+            if (length < 0) {
+                if (readSegment == writeSegment && writer != null) {
+                    // Записи учтены, но ещё не видны - не должно происходить; не теряем их
+                    logger.warning("Очередь на диске: запись не найдена в " + segmentFile(readSegment).getName());
+                    break;
+                }
+                // Сегмент прочитан (или повреждён дальше этой позиции)
+                dropReadSegment(size);
+                continue;
+            }
+
+            ByteBuffer payload = ByteBuffer.allocate(length);
+            readFully(reader, payload, readPosition + HEADER_SIZE);
+            entries.add(decode(payload.array()));
+            readPosition += HEADER_SIZE + length;
+            pending--;
+        }
+
+        if (pending == 0) {
+            clear();
+        } else if (!entries.isEmpty()) {
+            writeCursor();
+        }
+        return entries;
+    }
+
+    private void dropReadSegment(long size) throws IOException {
+        reader.close();
+        reader = null;
+        if (readSegment == writeSegment && writer != null) {
+            writer.close();
+            writer = null;
+        }
+        Files.deleteIfExists(segmentFile(readSegment).toPath());
+        segments.pollFirst();
+        totalBytes -= size;
+        readPosition = 0;
+    }
+
+    // Всё отправлено: удаляем сегменты, следующая запись начнётся с нового
+    private void clear() throws IOException {
+        closeChannels();
+        for (long id : segments) {
+            Files.deleteIfExists(segmentFile(id).toPath());
+        }
+        segments.clear();
+        Files.deleteIfExists(cursorFile.toPath());
+        totalBytes = 0;
+        pending = 0;
+        readPosition = 0;
+        writeSegment = FIRST_SEGMENT;
+    }
+
+    // ========== Остановка ==========
+
+    // Сообщения из памяти при остановке старше всего, что на диске: они пишутся в сегмент перед первым
+    // вместе с непрочитанным остатком текущего сегмента, чтобы после запуска порядок сохранился
+    void prepend(List<Entry> entries) throws IOException {
+        if (entries.isEmpty()) return;
+        if (segments.isEmpty()) {
+            for (Entry entry : entries) {
+                append(entry);
+            }
+            return;
+        }
+
+        List<byte[]> payloads = new ArrayList<>();
+        for (Entry entry : entries) {
+            byte[] payload = encode(entry);
+            if (payload != null) payloads.add(payload);
+        }
+        long id = segments.peekFirst() - 1;
+
+        if (readPosition > 0) {
+            // Остаток частично прочитанного сегмента переезжает в новый
+            List<Entry> rest = readSegmentRest();
+            for (Entry entry : rest) {
+                byte[] payload = encode(entry);
+                if (payload != null) payloads.add(payload);
+            }
+            pending -= rest.size();
+        }
+
+        try (FileChannel ch = FileChannel.open(segmentFile(id).toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            for (byte[] payload : payloads) {
+                writeRecord(ch, payload);
+                totalBytes += HEADER_SIZE + payload.length;
+            }
+        }
+        if (reader != null) {
+            reader.close();
+            reader = null;
+        }
+        segments.addFirst(id);
+        pending += payloads.size();
+        readSegment = id;
+        readPosition = 0;
+        writeCursor();
+    }
+
+    // Читает остаток текущего сегмента и удаляет его
+    private List<Entry> readSegmentRest() throws IOException {
+        if (reader == null || !reader.isOpen()) {
+            reader = FileChannel.open(segmentFile(readSegment).toPath(), StandardOpenOption.READ);
+        }
+        List<Entry> rest = new ArrayList<>();
+        long size = reader.size();
+        int length;
+        while (readPosition + HEADER_SIZE <= size && (length = readRecordLength(reader, readPosition, size)) > 0) {
+            ByteBuffer payload = ByteBuffer.allocate(length);
+            readFully(reader, payload, readPosition + HEADER_SIZE);
+            rest.add(decode(payload.array()));
+            readPosition += HEADER_SIZE + length;
+        }
+        dropReadSegment(size);
+        return rest;
+    }
+
+    void close() {
+        closed = true;
+        try {
+            if (pending > 0) {
+                writeCursor();
+            }
+            closeChannels();
+        } catch (IOException e) {
+            logger.warning("Ошибка закрытия очереди на диске: " + e.getMessage());
+        }
+    }
+
+    private void closeChannels() throws IOException {
+        if (reader != null) {
+            reader.close();
+            reader = null;
+        }
+        if (writer != null) {
+            writer.close();
+            writer = null;
+        }
+    }
+
+    private void writeCursor() throws IOException {
+        File temp = new File(cursorFile.getPath() + ".tmp");
+        Files.writeString(temp.toPath(), readSegment + ":" + readPosition, StandardCharsets.UTF_8);
+        Files.move(temp.toPath(), cursorFile.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    // ========== Формат записи ==========
+
+    private File segmentFile(long id) {
+        return new File(dir, id + SEGMENT_SUFFIX);
+    }
+
+    // null - сообщение не помещается в запись
+    private static byte[] encode(Entry entry) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + entry.text().length() * 2);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeUTF(entry.chatId());
+            out.writeLong(entry.replyToMessageId());
+            out.writeBoolean(entry.reply());
+            out.writeUTF(entry.text());
+        } catch (IOException e) {
+            // Текст длиннее 64 КБ в UTF-8
+            return null;
+        }
+        return bytes.size() <= MAX_RECORD_SIZE ? bytes.toByteArray() : null;
+    }
+
+    private static Entry decode(byte[] payload) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        String chatId = in.readUTF();
+        long replyTo = in.readLong();
+        boolean reply = in.readBoolean();
+        return new Entry(chatId, in.readUTF(), replyTo, reply);
+    }
+
+    private static void readFully(FileChannel ch, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (ch.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Неожиданный конец сегмента очереди");
+            }
+        }
+    }
+}
@@ -0,0 +1,285 @@
+package me.galyakyxnya.telegrambot;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Права пользователей Telegram: выданные строки прав, роли из config.yml и скомпилированный снимок.
+// Строки прав из команд получают постоянные номера; снимок хранит для каждого пользователя BitSet
+// номеров с учётом ролей и масок. Снимок неизменяем и подменяется одной volatile-записью при выдаче,
+// отзыве прав и перезагрузке конфига, поэтому проверка в потоке бота - один бит без блокировок.
+final class PermissionStore {
+
+    // Выдаёт все права
+    static final String ALL = "*";
+    static final String ADMIN = "telegrambot.admin";
+    // Выдача роли: role.<имя>
+    static final String ROLE_PREFIX = "role.";
+
+    // Права роли и роли, от которых она наследует
+    record Role(String name, Set<String> permissions, Set<String> inherits) {
+
+        Role {
+            permissions = Set.copyOf(permissions);
+            inherits = Set.copyOf(inherits);
+        }
+    }
+
+    // Индексы прав выдаются один раз и не меняются между перезагрузками конфига
+    private final Map<String, Integer> permissionIds = new ConcurrentHashMap<>();
+    private final List<String> permissionNames = new ArrayList<>();
+
+    // Выданные права как они заданы; значения неизменяемы и заменяются целиком
+    private final Map<String, Set<String>> grants = new ConcurrentHashMap<>();
+    // Скомпилированные права по id пользователя; меняется только под блокировкой
+    private final Map<Long, BitSet> compiled = new HashMap<>();
+    private Map<String, Role> roles = Map.of();
+    private Compiler compiler;
+
+    private volatile Snapshot snapshot = Snapshot.EMPTY;
+
+    // ========== Права команд ==========
+
+    // -1 для пустого права: команда доступна всем
+    int permissionIndex(String permission) {
+        if (permission == null || permission.isEmpty()) return -1;
+        Integer id = permissionIds.get(permission);
+        if (id != null) return id;
+
+        synchronized (permissionNames) {
+            return permissionIds.computeIfAbsent(permission, name -> {
+                permissionNames.add(name);
+                return permissionNames.size() - 1;
+            });
+        }
+    }
+
+    // ========== Снимок ==========
+
+    Snapshot snapshot() {
+        return snapshot;
+    }
+
+    // Роли из конфига; права пересобираются для всех пользователей
+    synchronized void configure(Map<String, Role> roles) {
+        this.roles = Map.copyOf(roles);
+        recompile();
+    }
+
+    // После появления новых прав в командах: маски и роли могли их покрыть
+    synchronized void recompile() {
+        compiler = new Compiler();
+        compiled.clear();
+        for (Map.Entry<String, Set<String>> entry : grants.entrySet()) {
+            compileUser(entry.getKey(), entry.getValue());
+        }
+        publish();
+    }
+
+    // ========== Выдача и отзыв ==========
+
+    // false, если право уже было выдано
+    synchronized boolean grant(String userId, String permission) {
+        Set<String> current = grants.getOrDefault(userId, Set.of());
+        if (current.contains(permission)) return false;
+
+        Set<String> updated = new LinkedHashSet<>(current);
+        updated.add(permission);
+        update(userId, updated);
+        return true;
+    }
+
+    // false, если такого права не было
+    synchronized boolean revoke(String userId, String permission) {
+        Set<String> current = grants.get(userId);
+        if (current == null || !current.contains(permission)) return false;
+
+        Set<String> updated = new LinkedHashSet<>(current);
+        updated.remove(permission);
+        update(userId, updated);
+        return true;
+    }
+
+    // Права при загрузке файла: заменяют выданные пользователю
+    synchronized void load(String userId, Collection<String> permissions) {
+        update(userId, new LinkedHashSet<>(permissions));
+    }
+
+    // Выданные права по id пользователя, для сохранения и вывода
+    Map<String, Set<String>> grants() {
+        return Collections.unmodifiableMap(new TreeMap<>(grants));
+    }
+
+    Set<String> grants(String userId) {
+        return grants.getOrDefault(userId, Set.of());
+    }
+
+    synchronized Map<String, Role> roles() {
+        return roles;
+    }
+
+    int users() {
+        return grants.size();
+    }
+
+    private void update(String userId, Set<String> permissions) {
+        permissions.remove("");
+        if (permissions.isEmpty()) {
+            grants.remove(userId);
+        } else {
+            grants.put(userId, Collections.unmodifiableSet(permissions));
+        }
+        if (compiler == null) {
+            compiler = new Compiler();
+        }
+        compileUser(userId, permissions);
+        publish();
+    }
+
+    private void compileUser(String userId, Set<String> permissions) {
+        long id;
+        try {
+            id = Long.parseLong(userId);
+        } catch (NumberFormatException e) {
+            // Запись сохраняется в файле, но проверить её нельзя
+            return;
+        }
+        BitSet bits = compiler.compile(permissions);
+        if (bits.isEmpty()) {
+            compiled.remove(id);
+        } else {
+            compiled.put(id, bits);
+        }
+    }
+
+    private void publish() {
+        snapshot = new Snapshot(compiled);
+    }
+
+    // Разворачивает роли и маски в номера прав. Роли компилируются один раз на сборку снимка
+    private final class Compiler {
+
+        private final List<String> names;
+        private final Map<String, BitSet> roleBits = new HashMap<>();
+
+        Compiler() {
+            synchronized (permissionNames) {
+                this.names = new ArrayList<>(permissionNames);
+            }
+        }
+
+        BitSet compile(Collection<String> permissions) {
+            BitSet bits = new BitSet(names.size());
+            for (String permission : permissions) {
+                if (permission.startsWith(ROLE_PREFIX)) {
+                    bits.or(role(permission.substring(ROLE_PREFIX.length())));
+                } else {
+                    apply(permission, bits);
+                }
+            }
+            return bits;
+        }
+
+        private BitSet role(String name) {
+            BitSet cached = roleBits.get(name);
+            if (cached != null) return cached;
+
+            // Обход наследования с защитой от циклов
+            BitSet bits = new BitSet(names.size());
+            Set<String> visited = new HashSet<>();
+            Deque<String> pending = new ArrayDeque<>();
+            pending.add(name);
+            while (!pending.isEmpty()) {
+                Role role = roles.get(pending.poll());
+                if (role == null || !visited.add(role.name())) continue;
+                for (String permission : role.permissions()) {
+                    if (permission.startsWith(ROLE_PREFIX)) {
+                        pending.add(permission.substring(ROLE_PREFIX.length()));
+                    } else {
+                        apply(permission, bits);
+                    }
+                }
+                pending.addAll(role.inherits());
+            }
+            roleBits.put(name, bits);
+            return bits;
+        }
+
+        private void apply(String permission, BitSet bits) {
+            if (permission.equals(ALL) || permission.equals(ADMIN)) {
+                bits.set(0, names.size());
+                return;
+            }
+            if (permission.endsWith(".*")) {
+                // telegrambot.* покрывает telegrambot.ban и telegrambot.mod.kick
+                String prefix = permission.substring(0, permission.length() - 1);
+                for (int i = 0; i < names.size(); i++) {
+                    if (names.get(i).startsWith(prefix)) bits.set(i);
+                }
+                return;
+            }
+            // Права, появившиеся после начала сборки, попадут в следующий снимок
+            Integer index = permissionIds.get(permission);
+            if (index != null && index < names.size()) bits.set(index);
+        }
+    }
+
+    // Неизменяемые права пользователей: открытая адресация по long id, без упаковки
+    static final class Snapshot {
+
+        static final Snapshot EMPTY = new Snapshot(Map.of());
+        private static final BitSet NONE = new BitSet();
+
+        private final long[] keys;
+        private final BitSet[] values;
+        private final int mask;
+
+        private Snapshot(Map<Long, BitSet> users) {
+            int capacity = Integer.highestOneBit(Math.max(4, users.size() * 2) - 1) << 1;
+            this.keys = new long[capacity];
+            this.values = new BitSet[capacity];
+            this.mask = capacity - 1;
+
+            for (Map.Entry<Long, BitSet> entry : users.entrySet()) {
+                long key = entry.getKey();
+                int i = slot(key);
+                while (values[i] != null) {
+                    i = (i + 1) & mask;
+                }
+                keys[i] = key;
+                values[i] = entry.getValue();
+            }
+        }
+
+        // Права пользователя; не изменять
+        BitSet granted(long userId) {
+            int i = slot(userId);
+            BitSet bits;
+            while ((bits = values[i]) != null) {
+                if (keys[i] == userId) return bits;
+                i = (i + 1) & mask;
+            }
+            return NONE;
+        }
+
+        boolean has(long userId, int permission) {
+            return permission < 0 || granted(userId).get(permission);
+        }
+
+        private int slot(long userId) {
+            long h = userId * 0x9E3779B97F4A7C15L;
+            return (int) (h ^ (h >>> 32)) & mask;
+        }
+    }
+}
@@ -0,0 +1,307 @@
+package me.galyakyxnya.telegrambot;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+// Журнал изменений (write-ahead log) для кулдаунов и прав.
+// Запись: [длина int][crc32 int][данные]. Фоновый поток пишет накопленное
+// раз в flush-интервал одним fsync; периодически состояние сбрасывается
+// в снимок (атомарный rename) и журнал обнуляется.
+final class PersistenceJournal {
+
+    enum Type {
+        COOLDOWN_SET,
+        COOLDOWN_CLEAR,
+        PERMISSION_ADD,
+        PERMISSION_REMOVE
+    }
+
+    record Entry(Type type, String subject, String name, long time, long expireAt) {
+
+        static Entry cooldownSet(long userId, String command, long lastUse, long expireAt) {
+            return new Entry(Type.COOLDOWN_SET, String.valueOf(userId), command, lastUse, expireAt);
+        }
+
+        static Entry cooldownClear(long userId, String command) {
+            return new Entry(Type.COOLDOWN_CLEAR, String.valueOf(userId), command, 0, 0);
+        }
+
+        static Entry permissionAdd(String userId, String permission) {
+            return new Entry(Type.PERMISSION_ADD, userId, permission, 0, 0);
+        }
+
+        static Entry permissionRemove(String userId, String permission) {
+            return new Entry(Type.PERMISSION_REMOVE, userId, permission, 0, 0);
+        }
+    }
+
+    // Пишет полный снимок состояния (атомарно); вызывается из потока журнала
+    interface SnapshotWriter {
+        void write() throws IOException;
+    }
+
+    private static final int HEADER_SIZE = 8;
+    private static final int MAX_RECORD_SIZE = 64 * 1024;
+
+    private final File file;
+    private final long flushIntervalMillis;
+    private final long compactIntervalMillis;
+    private final long compactMaxBytes;
+    private final SnapshotWriter snapshotWriter;
+    private final Logger logger;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition wakeUp = lock.newCondition();
+    private List<Entry> pending = new ArrayList<>();
+    private boolean running;
+
+    private FileChannel channel;
+    // Размер журнала после последнего удачного fsync: до него обрезается оборванная запись
+    private long durableSize;
+    private Thread writerThread;
+    private long nextCompaction;
+
+    PersistenceJournal(File file, long flushIntervalMillis, long compactIntervalMillis, long compactMaxBytes,
+                       SnapshotWriter snapshotWriter, Logger logger) {
+        this.file = file;
+        this.flushIntervalMillis = Math.max(10, flushIntervalMillis);
+        this.compactIntervalMillis = compactIntervalMillis;
+        this.compactMaxBytes = compactMaxBytes;
+        this.snapshotWriter = snapshotWriter;
+        this.logger = logger;
+    }
+
+    // ========== Восстановление ==========
+
+    // Применяет все целые записи журнала и обрезает оборванный хвост.
+    // Возвращает число применённых записей.
+    static int replay(File file, Consumer<Entry> consumer) throws IOException {
+        if (!file.exists()) return 0;
+
+        int applied = 0;
+        try (FileChannel ch = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long size = ch.size();
+            long position = 0;
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            CRC32 crc = new CRC32();
+
+            while (position + HEADER_SIZE <= size) {
+                header.clear();
+                readFully(ch, header, position);
+                int length = header.getInt(0);
+                int checksum = header.getInt(4);
+                if (length <= 0 || length > MAX_RECORD_SIZE || position + HEADER_SIZE + length > size) break;
+
+                ByteBuffer payload = ByteBuffer.allocate(length);
+                readFully(ch, payload, position + HEADER_SIZE);
+                crc.reset();
+                crc.update(payload.array(), 0, length);
+                if ((int) crc.getValue() != checksum) break;
+
+                consumer.accept(decode(payload.array()));
+                applied++;
+                position += HEADER_SIZE + length;
+            }
+
+            if (position < size) {
+                // Запись оборвалась при падении - всё после последней целой записи отбрасывается
+                ch.truncate(position);
+                ch.force(true);
+            }
+        }
+        return applied;
+    }
+
+    private static void readFully(FileChannel ch, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (ch.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Неожиданный конец журнала");
+            }
+        }
+    }
+
+    // ========== Запись ==========
+
+    void start() throws IOException {
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        durableSize = channel.size();
+        nextCompaction = System.currentTimeMillis() + compactIntervalMillis;
+        running = true;
+
+        writerThread = new Thread(this::runLoop, "TelegramBot-Journal");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    // Не блокирует: запись попадёт на диск при ближайшем групповом сбросе
+    void append(Entry entry) {
+        lock.lock();
+        try {
+            pending.add(entry);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Дописывает остаток, делает финальный снимок и закрывает файл
+    void close() {
+        lock.lock();
+        try {
+            running = false;
+            wakeUp.signalAll();
+        } finally {
+            lock.unlock();
+        }
+
+        if (writerThread != null) {
+            try {
+                writerThread.join(5000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        try {
+            flush();
+            compact();
+            channel.close();
+        } catch (IOException e) {
+            logger.warning("Ошибка закрытия журнала: " + e.getMessage());
+        }
+    }
+
+    private void runLoop() {
+        while (true) {
+            lock.lock();
+            try {
+                if (!running) return;
+                wakeUp.await(flushIntervalMillis, TimeUnit.MILLISECONDS);
+                if (!running) return;
+            } catch (InterruptedException e) {
+                return;
+            } finally {
+                lock.unlock();
+            }
+
+            try {
+                flush();
+                if (System.currentTimeMillis() >= nextCompaction || channel.size() >= compactMaxBytes) {
+                    compact();
+                }
+            } catch (IOException e) {
+                logger.warning("Ошибка записи журнала: " + e.getMessage());
+            }
+        }
+    }
+
+    // Групповой сброс: все накопленные записи одним write и одним fsync.
+    // При ошибке пачка возвращается в начало pending, а оборванный хвост обрезается,
+    // чтобы следующие записи не оказались за повреждённой (replay остановится на ней)
+    private void flush() throws IOException {
+        List<Entry> batch;
+        lock.lock();
+        try {
+            if (pending.isEmpty()) return;
+            batch = pending;
+            pending = new ArrayList<>();
+        } finally {
+            lock.unlock();
+        }
+
+        try {
+            if (channel.size() != durableSize) {
+                // Хвост от прошлой неудачной записи
+                channel.truncate(durableSize);
+            }
+            write(batch);
+        } catch (IOException e) {
+            lock.lock();
+            try {
+                batch.addAll(pending);
+                pending = batch;
+            } finally {
+                lock.unlock();
+            }
+            try {
+                channel.truncate(durableSize);
+            } catch (IOException ignored) {
+                // Повторим перед следующей записью
+            }
+            throw e;
+        }
+    }
+
+    private void write(List<Entry> batch) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(batch.size() * 64);
+        CRC32 crc = new CRC32();
+        for (Entry entry : batch) {
+            byte[] payload = encode(entry);
+            crc.reset();
+            crc.update(payload);
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(payload.length).putInt((int) crc.getValue());
+            bytes.write(header.array());
+            bytes.write(payload);
+        }
+
+        ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        channel.force(false);
+        durableSize = channel.size();
+    }
+
+    // Снимок пишется после сброса всех записей, поэтому он не старше журнала.
+    // Если упасть между rename снимка и обрезкой журнала, повтор записей поверх
+    // снимка даст то же состояние: все операции идемпотентны.
+    private void compact() throws IOException {
+        flush();
+        snapshotWriter.write();
+        channel.truncate(0);
+        channel.force(true);
+        durableSize = 0;
+        nextCompaction = System.currentTimeMillis() + compactIntervalMillis;
+    }
+
+    // ========== Формат записи ==========
+
+    private static byte[] encode(Entry entry) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(entry.type().ordinal());
+            out.writeUTF(entry.subject());
+            out.writeUTF(entry.name());
+            out.writeLong(entry.time());
+            out.writeLong(entry.expireAt());
+        }
+        return bytes.toByteArray();
+    }
+
+    private static Entry decode(byte[] payload) throws IOException {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload))) {
+            int type = in.readUnsignedByte();
+            if (type >= Type.values().length) {
+                throw new IOException("Неизвестный тип записи журнала: " + type);
+            }
+            return new Entry(Type.values()[type], in.readUTF(), in.readUTF(), in.readLong(), in.readLong());
+        }
+    }
+}
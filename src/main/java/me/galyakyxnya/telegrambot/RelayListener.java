@@ -0,0 +1,57 @@
+package me.galyakyxnya.telegrambot;
+
+import io.papermc.paper.event.player.AsyncChatEvent;
+import net.kyori.adventure.text.Component;
+import net.kyori.adventure.text.serializer.plain.PlainTextComponentSerializer;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.entity.PlayerDeathEvent;
+import org.bukkit.event.player.PlayerAdvancementDoneEvent;
+import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
+
+// События сервера для EventRelay. Обработчики только переводят текст в строку и кладут событие в кольцо:
+// AsyncChatEvent приходит из потоков чата, остальные - из главного потока, и ни один не должен ждать сеть.
+final class RelayListener implements Listener {
+
+    private final EventRelay relay;
+
+    RelayListener(EventRelay relay) {
+        this.relay = relay;
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onChat(AsyncChatEvent event) {
+        if (!relay.enabled(EventRelay.Type.CHAT)) return;
+        relay.offer(EventRelay.Type.CHAT, event.getPlayer().getName(), plain(event.message()));
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onJoin(PlayerJoinEvent event) {
+        relay.offer(EventRelay.Type.JOIN, event.getPlayer().getName(), "");
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onQuit(PlayerQuitEvent event) {
+        relay.offer(EventRelay.Type.QUIT, event.getPlayer().getName(), "");
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onDeath(PlayerDeathEvent event) {
+        // Без сообщения о смерти (скрыто другим плагином или правилом мира) не пересылаем
+        if (!relay.enabled(EventRelay.Type.DEATH) || event.deathMessage() == null) return;
+        relay.offer(EventRelay.Type.DEATH, event.getPlayer().getName(), plain(event.deathMessage()));
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onAdvancement(PlayerAdvancementDoneEvent event) {
+        // Рецепты и скрытые достижения не объявляются в чате: message() == null
+        if (!relay.enabled(EventRelay.Type.ADVANCEMENT) || event.message() == null) return;
+        relay.offer(EventRelay.Type.ADVANCEMENT, event.getPlayer().getName(), plain(event.message()));
+    }
+
+    private static String plain(Component component) {
+        return PlainTextComponentSerializer.plainText().serialize(component);
+    }
+}
@@ -0,0 +1,122 @@
+package me.galyakyxnya.telegrambot;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// Склеивает ответы в один чат, пришедшие в течение окна, в одно сообщение.
+// Одинаковые ответы схлопываются в одну строку со счётчиком. Цитата исходного сообщения
+// сохраняется, только если за окно пришёл один ответ.
+final class ReplyCoalescer {
+
+    enum Kind {
+        COOLDOWN("cooldown"),
+        UNKNOWN_COMMAND("unknown-command"),
+        NO_PERMISSION("no-permission"),
+        USAGE("usage"),
+        COMMAND_RESULT("command-result"),
+        OTHER("other");
+
+        private final String configName;
+
+        Kind(String configName) {
+            this.configName = configName;
+        }
+
+        static Set<Kind> fromConfig(List<String> names) {
+            Set<Kind> kinds = EnumSet.noneOf(Kind.class);
+            for (String name : names) {
+                for (Kind kind : values()) {
+                    if (kind.configName.equalsIgnoreCase(name.trim())) {
+                        kinds.add(kind);
+                    }
+                }
+            }
+            return kinds;
+        }
+    }
+
+    private final OutboundDispatcher outbound;
+    private final long windowMillis;
+    private final Set<Kind> kinds;
+    private final ScheduledExecutorService scheduler;
+    private final Map<String, Batch> pending = new HashMap<>();
+
+    ReplyCoalescer(OutboundDispatcher outbound, long windowMillis, Set<Kind> kinds) {
+        this.outbound = outbound;
+        this.windowMillis = windowMillis;
+        this.kinds = kinds;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "TelegramBot-Coalescer");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // replyToMessageId > 0 - ответ на это сообщение
+    void submit(String chatId, long replyToMessageId, String text, Kind kind) {
+        if (windowMillis <= 0 || !kinds.contains(kind)) {
+            outbound.enqueue(chatId, text, replyToMessageId, OutboundDispatcher.Priority.REPLY);
+            return;
+        }
+
+        synchronized (pending) {
+            Batch batch = pending.get(chatId);
+            if (batch == null) {
+                batch = new Batch(replyToMessageId);
+                pending.put(chatId, batch);
+                scheduler.schedule(() -> flush(chatId), windowMillis, TimeUnit.MILLISECONDS);
+            } else {
+                // Склеенный ответ относится к нескольким сообщениям, цитировать одно из них нельзя
+                batch.replyToMessageId = 0;
+            }
+            batch.parts.merge(text, 1, Integer::sum);
+        }
+    }
+
+    private void flush(String chatId) {
+        Batch batch;
+        synchronized (pending) {
+            batch = pending.remove(chatId);
+        }
+        if (batch == null || batch.parts.isEmpty()) return;
+
+        List<String> lines = new ArrayList<>(batch.parts.size());
+        for (Map.Entry<String, Integer> entry : batch.parts.entrySet()) {
+            lines.add(entry.getValue() > 1 ? entry.getKey() + " (×" + entry.getValue() + ")" : entry.getKey());
+        }
+
+        for (String message : MessageSplitter.pack(lines, "\n\n", MessageSplitter.MAX_MESSAGE_LENGTH)) {
+            outbound.enqueue(chatId, message, batch.replyToMessageId, OutboundDispatcher.Priority.REPLY);
+        }
+    }
+
+    // Отправляет всё накопленное сразу, не дожидаясь окна
+    void shutdown() {
+        scheduler.shutdownNow();
+        List<String> chats;
+        synchronized (pending) {
+            chats = new ArrayList<>(pending.keySet());
+        }
+        for (String chatId : chats) {
+            flush(chatId);
+        }
+    }
+
+    // Доступ только под synchronized (pending)
+    private static final class Batch {
+        private final Map<String, Integer> parts = new LinkedHashMap<>();
+        private long replyToMessageId;
+
+        Batch(long replyToMessageId) {
+            this.replyToMessageId = replyToMessageId;
+        }
+    }
+}
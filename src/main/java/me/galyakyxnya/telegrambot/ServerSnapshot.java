@@ -0,0 +1,132 @@
+package me.galyakyxnya.telegrambot;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.Locale;
+
+// Состояние сервера для команд-запросов (/online, /tps и т.д.). Собирается задачей в главном потоке
+// раз в queries.refresh-ticks и публикуется одной volatile-записью; ответ на запрос читает только
+// снимок и не ждёт главный поток. Строки для подстановки форматируются при первом запросе.
+final class ServerSnapshot {
+
+    // Встроенные запросы различаются только сообщением по умолчанию: все плейсхолдеры доступны в любом
+    enum Query {
+        ONLINE("online", "👥 Онлайн: %online%/%max%\n%players%"),
+        TPS("tps", "⚙️ TPS (1, 5, 15 мин): %tps%\nMSPT: %mspt% мс"),
+        WORLDS("worlds", "🌍 Миры:\n%worlds%\nВсего сущностей: %entities%, чанков: %chunks%"),
+        UPTIME("uptime", "⏱ Сервер работает: %uptime%"),
+        STATUS("status", "📊 Онлайн: %online%/%max%\nTPS: %tps% | MSPT: %mspt% мс\n"
+                + "Сущностей: %entities% | Чанков: %chunks%\n⏱ Аптайм: %uptime%");
+
+        final String key;
+        final String defaultMessage;
+
+        Query(String key, String defaultMessage) {
+            this.key = key;
+            this.defaultMessage = defaultMessage;
+        }
+
+        // null - обычная команда
+        static Query fromConfig(String value) {
+            for (Query query : values()) {
+                if (query.key.equalsIgnoreCase(value.trim())) return query;
+            }
+            return null;
+        }
+    }
+
+    record WorldStats(String name, int players, int entities, int chunks) {
+    }
+
+    // Время запуска JVM - практически время запуска сервера
+    private static final long STARTED_AT = ManagementFactory.getRuntimeMXBean().getStartTime();
+    // Список игроков обрезается, чтобы ответ поместился в одно сообщение
+    private static final int PLAYERS_TEXT_LIMIT = 3000;
+
+    private final long takenAt;
+    private final int online;
+    private final int maxPlayers;
+    private final List<String> players;
+    // TPS за 1, 5 и 15 минут
+    private final double[] tps;
+    private final double mspt;
+    private final List<WorldStats> worlds;
+
+    // Отформатированные значения; гонка при первом запросе безвредна - результат одинаковый
+    private volatile Formatted formatted;
+
+    private record Formatted(String online, String max, String players, String tps, String mspt,
+                             String worlds, String entities, String chunks) {
+    }
+
+    ServerSnapshot(long takenAt, int maxPlayers, List<String> players, double[] tps, double mspt,
+                   List<WorldStats> worlds) {
+        this.takenAt = takenAt;
+        this.online = players.size();
+        this.maxPlayers = maxPlayers;
+        this.players = List.copyOf(players);
+        this.tps = tps.clone();
+        this.mspt = mspt;
+        this.worlds = List.copyOf(worlds);
+    }
+
+    long takenAt() {
+        return takenAt;
+    }
+
+    int online() {
+        return online;
+    }
+
+    // Подставляет состояние сервера; %uptime% считается на момент now
+    MessageTemplate.Values fill(MessageTemplate.Values values, long now) {
+        Formatted f = formatted;
+        if (f == null) {
+            f = format();
+            formatted = f;
+        }
+        return values
+                .set(MessageTemplate.Placeholder.ONLINE, f.online())
+                .set(MessageTemplate.Placeholder.MAX, f.max())
+                .set(MessageTemplate.Placeholder.PLAYERS, f.players())
+                .set(MessageTemplate.Placeholder.TPS, f.tps())
+                .set(MessageTemplate.Placeholder.MSPT, f.mspt())
+                .set(MessageTemplate.Placeholder.WORLDS, f.worlds())
+                .set(MessageTemplate.Placeholder.ENTITIES, f.entities())
+                .set(MessageTemplate.Placeholder.CHUNKS, f.chunks())
+                .set(MessageTemplate.Placeholder.UPTIME, UpdateHandler.formatCooldown((now - STARTED_AT) / 1000));
+    }
+
+    private Formatted format() {
+        StringBuilder names = new StringBuilder();
+        int shown = 0;
+        for (String player : players) {
+            if (names.length() + player.length() > PLAYERS_TEXT_LIMIT) break;
+            if (shown > 0) names.append(", ");
+            names.append(player);
+            shown++;
+        }
+        if (shown < players.size()) {
+            names.append(" и ещё ").append(players.size() - shown);
+        }
+
+        StringBuilder worldLines = new StringBuilder();
+        long entities = 0;
+        long chunks = 0;
+        for (WorldStats world : worlds) {
+            if (worldLines.length() > 0) worldLines.append('\n');
+            worldLines.append("• ").append(world.name())
+                    .append(": игроков ").append(world.players())
+                    .append(", сущностей ").append(world.entities())
+                    .append(", чанков ").append(world.chunks());
+            entities += world.entities();
+            chunks += world.chunks();
+        }
+
+        return new Formatted(String.valueOf(online), String.valueOf(maxPlayers), names.toString(),
+                String.format(Locale.ROOT, "%.2f, %.2f, %.2f",
+                        Math.min(20, tps[0]), Math.min(20, tps[1]), Math.min(20, tps[2])),
+                String.format(Locale.ROOT, "%.1f", mspt),
+                worldLines.toString(), String.valueOf(entities), String.valueOf(chunks));
+    }
+}
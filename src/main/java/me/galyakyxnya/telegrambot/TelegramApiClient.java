@@ -0,0 +1,186 @@
+package me.galyakyxnya.telegrambot;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+// Единый клиент Bot API: одно HttpClient соединение (keep-alive, HTTP/2),
+// общие таймауты и политика повторов для всех вызовов
+final class TelegramApiClient {
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final HttpClient http;
+    private final Executor executor;
+    private final Metrics metrics;
+    private final String methodBaseUrl;
+    private final Duration requestTimeout;
+    private final int maxRetries;
+    private final long retryDelayMs;
+
+    TelegramApiClient(String apiUrl, String botToken, Duration connectTimeout, Duration requestTimeout,
+                      int maxRetries, long retryDelayMs, Executor executor, Metrics metrics) {
+        String base = apiUrl.endsWith("/") ? apiUrl.substring(0, apiUrl.length() - 1) : apiUrl;
+        this.methodBaseUrl = base + "/bot" + botToken + "/";
+        this.requestTimeout = requestTimeout;
+        this.maxRetries = Math.max(0, maxRetries);
+        this.retryDelayMs = Math.max(0, retryDelayMs);
+        this.executor = executor;
+        this.metrics = metrics;
+        // Ответы и зависимые стадии выполняются в виртуальных потоках плагина
+        this.http = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .connectTimeout(connectTimeout)
+                .executor(executor)
+                .build();
+    }
+
+    CompletableFuture<Boolean> getMe() {
+        return call("getMe", "{}").thenApply(ApiResponse::ok);
+    }
+
+    // Long-poll запрос; тело ответа разбирается потоково, без копирования в строку.
+    // Повторы здесь не делаются: паузами между опросами управляет сам цикл опроса.
+    CompletableFuture<List<Update>> getUpdates(long offset, int timeoutSeconds, int limit, String allowedUpdatesJson) {
+        String body = "{\"offset\": " + offset
+                + ", \"timeout\": " + timeoutSeconds
+                + ", \"limit\": " + limit
+                + ", \"allowed_updates\": " + allowedUpdatesJson + "}";
+
+        // Таймаут запроса обязан быть больше серверного таймаута long-poll
+        HttpRequest request = newRequest("getUpdates", body, Duration.ofSeconds(timeoutSeconds + 10L));
+
+        CompletableFuture<HttpResponse<InputStream>> raw =
+                http.sendAsync(request, HttpResponse.BodyHandlers.ofInputStream());
+
+        CompletableFuture<List<Update>> result = raw.thenApply(response -> {
+            try (InputStream in = response.body()) {
+                if (response.statusCode() != 200) {
+                    throw new IOException("getUpdates вернул HTTP " + response.statusCode());
+                }
+                // Разбор потоковый, поэтому время включает дочитывание тела ответа
+                long parseStart = System.nanoTime();
+                List<Update> updates = TelegramUpdateParser.parseUpdates(in);
+                metrics.record(Metrics.Stage.PARSE, System.nanoTime() - parseStart);
+                return updates;
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+        });
+
+        // Отмена результата обрывает сам HTTP запрос
+        result.whenComplete((updates, error) -> {
+            if (result.isCancelled()) {
+                raw.cancel(true);
+            }
+        });
+        return result;
+    }
+
+    CompletableFuture<ApiResponse> sendMessage(String chatId, String text) {
+        return sendMessage(chatId, text, 0);
+    }
+
+    // replyToMessageId > 0 - ответ на сообщение; если оно уже удалено, сообщение уходит без цитаты
+    CompletableFuture<ApiResponse> sendMessage(String chatId, String text, long replyToMessageId) {
+        String body = "{\"chat_id\": \"" + escapeJson(chatId)
+                + "\", \"text\": \"" + escapeJson(text)
+                + "\", \"parse_mode\": \"HTML\""
+                + (replyToMessageId > 0
+                ? ", \"reply_parameters\": {\"message_id\": " + replyToMessageId
+                + ", \"allow_sending_without_reply\": true}"
+                : "")
+                + "}";
+        return call("sendMessage", body);
+    }
+
+    // Произвольный метод Bot API с JSON телом, с повторами при сетевых ошибках и 5xx
+    CompletableFuture<ApiResponse> call(String method, String jsonBody) {
+        HttpRequest request = newRequest(method, jsonBody, requestTimeout);
+        return sendWithRetry(request, 0)
+                .thenApply(response -> new ApiResponse(response.statusCode(), response.body()));
+    }
+
+    void close() {
+        http.shutdownNow();
+    }
+
+    private HttpRequest newRequest(String method, String jsonBody, Duration timeout) {
+        return HttpRequest.newBuilder(URI.create(methodBaseUrl + method))
+                .timeout(timeout)
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(jsonBody, StandardCharsets.UTF_8))
+                .build();
+    }
+
+    private CompletableFuture<HttpResponse<String>> sendWithRetry(HttpRequest request, int attempt) {
+        return http.sendAsync(request, HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8))
+                .handle((response, error) -> {
+                    if (attempt < maxRetries && isRetryable(response, error)) {
+                        metrics.increment(Metrics.Counter.RETRIES);
+                        Executor delayed = CompletableFuture.delayedExecutor(
+                                retryDelayMs << attempt, TimeUnit.MILLISECONDS, executor);
+                        return CompletableFuture.supplyAsync(() -> attempt + 1, delayed)
+                                .thenCompose(next -> sendWithRetry(request, next));
+                    }
+                    return error != null
+                            ? CompletableFuture.<HttpResponse<String>>failedFuture(error)
+                            : CompletableFuture.completedFuture(response);
+                })
+                .thenCompose(Function.identity());
+    }
+
+    private static boolean isRetryable(HttpResponse<String> response, Throwable error) {
+        if (error != null) {
+            Throwable cause = error instanceof CompletionException && error.getCause() != null
+                    ? error.getCause() : error;
+            return cause instanceof IOException;
+        }
+        return response.statusCode() >= 500;
+    }
+
+    static String escapeJson(String text) {
+        // Быстрый путь: большинство сообщений экранировать не нужно
+        int length = text.length();
+        int first = 0;
+        while (first < length && !needsEscape(text.charAt(first))) {
+            first++;
+        }
+        if (first == length) return text;
+
+        StringBuilder sb = new StringBuilder(length + 16);
+        int run = 0;
+        for (int i = first; i < length; i++) {
+            char c = text.charAt(i);
+            if (!needsEscape(c)) continue;
+
+            // Неизменённый отрезок копируется целиком
+            sb.append(text, run, i);
+            run = i + 1;
+            switch (c) {
+                case '"' -> sb.append("\\\"");
+                case '\\' -> sb.append("\\\\");
+                case '\n' -> sb.append("\\n");
+                case '\r' -> sb.append("\\r");
+                case '\t' -> sb.append("\\t");
+                default -> sb.append("\\u00").append(HEX[c >> 4]).append(HEX[c & 0xF]);
+            }
+        }
+        return sb.append(text, run, length).toString();
+    }
+
+    private static boolean needsEscape(char c) {
+        return c == '"' || c == '\\' || c < 0x20;
+    }
+}
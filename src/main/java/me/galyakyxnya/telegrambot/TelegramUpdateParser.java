@@ -0,0 +1,429 @@
+package me.galyakyxnya.telegrambot;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+// Потоковый разбор JSON ответов Bot API прямо из InputStream, без сторонних библиотек.
+// Строки создаются только для полей, которые нужны боту, остальное пропускается.
+final class TelegramUpdateParser {
+
+    private final InputStream in;
+    private final byte[] buf = new byte[8192];
+    private int pos;
+    private int limit;
+
+    // Буфер для декодирования текущей строки (ключа или значения)
+    private char[] chars = new char[128];
+    private int charLen;
+
+    private TelegramUpdateParser(InputStream in) {
+        this.in = in;
+    }
+
+    // Ответ getUpdates: {"ok":true,"result":[...]}
+    static List<Update> parseUpdates(InputStream in) throws IOException {
+        return new TelegramUpdateParser(in).readResponse();
+    }
+
+    // Одиночный объект Update (тело webhook-запроса)
+    static Update parseUpdate(InputStream in) throws IOException {
+        return new TelegramUpdateParser(in).readUpdate();
+    }
+
+    // ========== Структура ответа ==========
+
+    private List<Update> readResponse() throws IOException {
+        boolean ok = false;
+        List<Update> updates = Collections.emptyList();
+
+        expect('{');
+        if (!consume('}')) {
+            do {
+                readKey();
+                expect(':');
+                if (keyIs("ok")) {
+                    ok = readBoolean();
+                } else if (keyIs("result") && peek() == '[') {
+                    updates = readUpdateArray();
+                } else {
+                    skipValue();
+                }
+            } while (nextMember('}'));
+        }
+
+        return ok ? updates : Collections.emptyList();
+    }
+
+    private List<Update> readUpdateArray() throws IOException {
+        List<Update> updates = new ArrayList<>();
+        expect('[');
+        if (!consume(']')) {
+            do {
+                updates.add(readUpdate());
+            } while (nextMember(']'));
+        }
+        return updates;
+    }
+
+    private Update readUpdate() throws IOException {
+        long updateId = 0;
+        Message message = null;
+
+        expect('{');
+        if (!consume('}')) {
+            do {
+                readKey();
+                expect(':');
+                if (keyIs("update_id")) {
+                    updateId = readLong();
+                } else if (keyIs("message") && peek() == '{') {
+                    message = readMessage();
+                } else {
+                    skipValue();
+                }
+            } while (nextMember('}'));
+        }
+
+        return new Update(updateId, message);
+    }
+
+    private Message readMessage() throws IOException {
+        long messageId = 0;
+        long chatId = 0;
+        long date = 0;
+        long fromId = 0;
+        String username = null;
+        String firstName = null;
+        String text = null;
+
+        expect('{');
+        if (!consume('}')) {
+            do {
+                readKey();
+                expect(':');
+                if (keyIs("message_id")) {
+                    messageId = readLong();
+                } else if (keyIs("date")) {
+                    date = readLong();
+                } else if (keyIs("text")) {
+                    text = readString();
+                } else if (keyIs("chat") && peek() == '{') {
+                    chatId = readObjectId();
+                } else if (keyIs("from") && peek() == '{') {
+                    // from читается вручную: кроме id нужны username и first_name
+                    expect('{');
+                    if (!consume('}')) {
+                        do {
+                            readKey();
+                            expect(':');
+                            if (keyIs("id")) {
+                                fromId = readLong();
+                            } else if (keyIs("username")) {
+                                username = readString();
+                            } else if (keyIs("first_name")) {
+                                firstName = readString();
+                            } else {
+                                skipValue();
+                            }
+                        } while (nextMember('}'));
+                    }
+                } else {
+                    skipValue();
+                }
+            } while (nextMember('}'));
+        }
+
+        return new Message(messageId, chatId, date, fromId, username, firstName, text);
+    }
+
+    // Объект, из которого нужен только числовой "id"
+    private long readObjectId() throws IOException {
+        long id = 0;
+        expect('{');
+        if (!consume('}')) {
+            do {
+                readKey();
+                expect(':');
+                if (keyIs("id")) {
+                    id = readLong();
+                } else {
+                    skipValue();
+                }
+            } while (nextMember('}'));
+        }
+        return id;
+    }
+
+    // ========== Токенизатор ==========
+
+    // После значения: ',' -> есть ещё элемент, закрывающая скобка -> конец
+    private boolean nextMember(char close) throws IOException {
+        int c = nextNonWhitespace();
+        if (c == ',') return true;
+        if (c == close) return false;
+        throw syntaxError("ожидалось ',' или '" + close + "'", c);
+    }
+
+    private void expect(char expected) throws IOException {
+        int c = nextNonWhitespace();
+        if (c != expected) {
+            throw syntaxError("ожидалось '" + expected + "'", c);
+        }
+    }
+
+    private boolean consume(char expected) throws IOException {
+        if (peek() == expected) {
+            pos++;
+            return true;
+        }
+        return false;
+    }
+
+    private int peek() throws IOException {
+        int c = nextNonWhitespace();
+        pos--;
+        return c;
+    }
+
+    private int nextNonWhitespace() throws IOException {
+        while (true) {
+            int c = read();
+            if (c != ' ' && c != '\n' && c != '\r' && c != '\t') {
+                return c;
+            }
+        }
+    }
+
+    private int read() throws IOException {
+        if (pos == limit) {
+            limit = in.read(buf, 0, buf.length);
+            pos = 0;
+            if (limit <= 0) {
+                limit = 0;
+                throw new EOFException("Неожиданный конец JSON");
+            }
+        }
+        return buf[pos++] & 0xFF;
+    }
+
+    private void readKey() throws IOException {
+        expect('"');
+        decodeString();
+    }
+
+    private boolean keyIs(String key) {
+        if (charLen != key.length()) return false;
+        for (int i = 0; i < charLen; i++) {
+            if (chars[i] != key.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    private String readString() throws IOException {
+        int c = nextNonWhitespace();
+        if (c == 'n') {
+            expectLiteral("ull");
+            return null;
+        }
+        if (c != '"') {
+            throw syntaxError("ожидалась строка", c);
+        }
+        decodeString();
+        return new String(chars, 0, charLen);
+    }
+
+    private boolean readBoolean() throws IOException {
+        int c = nextNonWhitespace();
+        if (c == 't') {
+            expectLiteral("rue");
+            return true;
+        }
+        if (c == 'f') {
+            expectLiteral("alse");
+            return false;
+        }
+        throw syntaxError("ожидалось true/false", c);
+    }
+
+    private long readLong() throws IOException {
+        int c = nextNonWhitespace();
+        boolean negative = false;
+        if (c == '-') {
+            negative = true;
+            c = read();
+        }
+        if (c < '0' || c > '9') {
+            throw syntaxError("ожидалось число", c);
+        }
+
+        long value = 0;
+        while (c >= '0' && c <= '9') {
+            value = value * 10 + (c - '0');
+            c = read();
+        }
+        // Дробная часть и экспонента для идентификаторов не нужны
+        while (c == '.' || c == 'e' || c == 'E' || c == '+' || c == '-' || (c >= '0' && c <= '9')) {
+            c = read();
+        }
+        pos--;
+        return negative ? -value : value;
+    }
+
+    private void skipValue() throws IOException {
+        int c = nextNonWhitespace();
+        switch (c) {
+            case '{':
+                if (!consume('}')) {
+                    do {
+                        readKey();
+                        expect(':');
+                        skipValue();
+                    } while (nextMember('}'));
+                }
+                break;
+            case '[':
+                if (!consume(']')) {
+                    do {
+                        skipValue();
+                    } while (nextMember(']'));
+                }
+                break;
+            case '"':
+                skipString();
+                break;
+            case 't':
+                expectLiteral("rue");
+                break;
+            case 'f':
+                expectLiteral("alse");
+                break;
+            case 'n':
+                expectLiteral("ull");
+                break;
+            default:
+                if (c != '-' && (c < '0' || c > '9')) {
+                    throw syntaxError("неожиданный символ", c);
+                }
+                c = read();
+                while (c == '.' || c == 'e' || c == 'E' || c == '+' || c == '-' || (c >= '0' && c <= '9')) {
+                    c = read();
+                }
+                pos--;
+                break;
+        }
+    }
+
+    private void skipString() throws IOException {
+        while (true) {
+            int c = read();
+            if (c == '"') return;
+            if (c == '\\') read();
+        }
+    }
+
+    private void expectLiteral(String rest) throws IOException {
+        for (int i = 0; i < rest.length(); i++) {
+            int c = read();
+            if (c != rest.charAt(i)) {
+                throw syntaxError("некорректный литерал", c);
+            }
+        }
+    }
+
+    // Декодирует строку (после открывающей кавычки) из UTF-8 с JSON-экранированием в chars
+    private void decodeString() throws IOException {
+        charLen = 0;
+        while (true) {
+            int b = read();
+            if (b == '"') {
+                return;
+            }
+            if (b == '\\') {
+                appendChar(readEscape());
+            } else if (b < 0x80) {
+                appendChar((char) b);
+            } else {
+                appendCodePoint(readUtf8(b));
+            }
+        }
+    }
+
+    private char readEscape() throws IOException {
+        int c = read();
+        switch (c) {
+            case '"': return '"';
+            case '\\': return '\\';
+            case '/': return '/';
+            case 'b': return '\b';
+            case 'f': return '\f';
+            case 'n': return '\n';
+            case 'r': return '\r';
+            case 't': return '\t';
+            case 'u':
+                int value = 0;
+                for (int i = 0; i < 4; i++) {
+                    int digit = Character.digit(read(), 16);
+                    if (digit < 0) {
+                        throw new IOException("Некорректная \\u последовательность в JSON");
+                    }
+                    value = (value << 4) | digit;
+                }
+                // Суррогатные пары приходят двумя \\u подряд и складываются сами
+                return (char) value;
+            default:
+                throw syntaxError("некорректное экранирование", c);
+        }
+    }
+
+    private int readUtf8(int first) throws IOException {
+        int extra;
+        int codePoint;
+        if ((first & 0xE0) == 0xC0) {
+            extra = 1;
+            codePoint = first & 0x1F;
+        } else if ((first & 0xF0) == 0xE0) {
+            extra = 2;
+            codePoint = first & 0x0F;
+        } else if ((first & 0xF8) == 0xF0) {
+            extra = 3;
+            codePoint = first & 0x07;
+        } else {
+            return 0xFFFD;
+        }
+
+        for (int i = 0; i < extra; i++) {
+            int b = read();
+            if ((b & 0xC0) != 0x80) {
+                pos--;
+                return 0xFFFD;
+            }
+            codePoint = (codePoint << 6) | (b & 0x3F);
+        }
+        return Character.isValidCodePoint(codePoint) ? codePoint : 0xFFFD;
+    }
+
+    private void appendCodePoint(int codePoint) {
+        if (Character.isBmpCodePoint(codePoint)) {
+            appendChar((char) codePoint);
+        } else {
+            appendChar(Character.highSurrogate(codePoint));
+            appendChar(Character.lowSurrogate(codePoint));
+        }
+    }
+
+    private void appendChar(char c) {
+        if (charLen == chars.length) {
+            chars = Arrays.copyOf(chars, chars.length * 2);
+        }
+        chars[charLen++] = c;
+    }
+
+    private IOException syntaxError(String message, int c) {
+        return new IOException("Ошибка JSON: " + message + ", получено '" + (char) c + "'");
+    }
+}
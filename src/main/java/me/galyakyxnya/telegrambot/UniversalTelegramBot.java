@@ -2,20 +2,31 @@ package me.galyakyxnya.telegrambot;
 
 import org.bukkit.plugin.java.JavaPlugin;
 import org.bukkit.scheduler.BukkitRunnable;
+import org.bukkit.scheduler.BukkitTask;
+import org.bukkit.World;
 import org.bukkit.configuration.file.FileConfiguration;
 import org.bukkit.command.Command;
 import org.bukkit.command.CommandSender;
 import org.bukkit.Bukkit;
 import org.bukkit.entity.Player;
 
+import javax.net.ssl.SSLContext;
 import java.io.*;
-import java.net.HttpURLConnection;
-import java.net.URL;
+import java.net.InetSocketAddress;
+import java.security.SecureRandom;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
-import java.text.SimpleDateFormat;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 
 public class UniversalTelegramBot extends JavaPlugin {
 
@@ -23,20 +34,44 @@ public class UniversalTelegramBot extends JavaPlugin {
 
     // Telegram бот
     private String botToken;
-    private String groupChatId;
     private boolean telegramBotEnabled;
     private boolean debugMode;
-    private int checkInterval;
-    private TelegramBotThread botThread;
+    private int pollTimeout;
+    private int pollLimit;
+    private String allowedUpdatesJson;
+    private long backoffMinMs;
+    private long backoffMaxMs;
+    private boolean webhookMode;
+    private IoExecutor ioExecutor;
+    private Metrics metrics = Metrics.DISABLED;
+    private MetricsServer metricsServer;
+    private volatile TelegramPoller poller;
+    private volatile WebhookServer webhookServer;
+    private volatile ClusterNode cluster;
+    private EventRelay relay;
+    private Future<?> relayTask;
+    private MainThreadDispatcher mainThread;
+    private BukkitTask serverStateTask;
+    private TelegramApiClient apiClient;
+    private OutboundDispatcher outbound;
+    private ReplyCoalescer coalescer;
+    private UpdateHandler handler;
 
     // Система команд
-    private Map<String, BotCommand> commands = new HashMap<>();
-    private Map<String, Long> cooldowns = new ConcurrentHashMap<>();
-    private Map<String, Set<String>> userPermissions = new ConcurrentHashMap<>();
+    private final AtomicLong registryVersion = new AtomicLong();
+    private volatile Messages messages;
+    private final CooldownStore cooldowns = new CooldownStore(System.currentTimeMillis());
+    private final PermissionStore permissions = new PermissionStore();
 
     // Файлы
     private File usedFile;
+    private File legacyUsedFile;
     private File permissionsFile;
+    private File journalFile;
+    private File offsetFile;
+    private File spoolDir;
+    private PersistenceJournal journal;
+    private UpdateTracker updateTracker;
 
     @Override
     public void onEnable() {
@@ -45,55 +80,96 @@ public class UniversalTelegramBot extends JavaPlugin {
 
         telegramBotEnabled = config.getBoolean("telegram.enabled", true);
         debugMode = config.getBoolean("telegram.debug", false);
-        checkInterval = config.getInt("telegram.check-interval", 3);
+        loadPollingSettings();
+        webhookMode = "webhook".equalsIgnoreCase(config.getString("telegram.mode", "polling").trim());
         botToken = config.getString("telegram.bot-token", "").trim();
-        groupChatId = config.getString("telegram.group-chat-id", "").trim();
 
+        metrics = config.getBoolean("metrics.enabled", true) ? new Metrics(true) : Metrics.DISABLED;
         setupFiles();
-        loadCommands();
+        loadMessages();
+        loadUpdateTracker();
+        mainThread = createMainThreadDispatcher();
+        handler = new UpdateHandler(updateTracker, cooldowns, permissions, mainThread,
+                this::dispatchCommand, this::sendTelegramReply, this::appendJournal,
+                metrics, getLogger(), loadHandlerSettings());
+        handler.setDebug(debugMode);
+        permissions.configure(loadRoles());
+        handler.setRegistry(buildRegistry(config));
+        loadCooldowns();
         loadPermissions();
+        startJournal();
+        ioExecutor = new IoExecutor("TelegramBot", getLogger());
+        handler.startBacklog(ioExecutor);
 
         if (telegramBotEnabled && !botToken.isEmpty()) {
-            if (checkBotConnection()) {
-                botThread = new TelegramBotThread();
-                botThread.start();
-                logInfo("Telegram бот запущен");
-
-                // Отправляем приветственное сообщение
-                String welcomeMsg = config.getString("messages.welcome",
-                        "🤖 Бот активирован!\n" +
-                                "Доступные команды:\n" +
-                                "/help - список команд");
-                sendTelegramMessage(groupChatId, welcomeMsg);
+            apiClient = createApiClient();
+            outbound = createOutboundDispatcher();
+            outbound.start(ioExecutor);
+            coalescer = createReplyCoalescer();
+            startRelay();
+            if (config.getBoolean("cluster.enabled", false)) {
+                // Обновления принимает только лидер кластера
+                startCluster();
             } else {
-                logWarning("Не удалось подключиться к Telegram боту. Проверьте токен.");
+                startReceiving();
             }
         }
 
+        startMainThreadDispatcher();
+        startServerStateRefresh();
+        startMetricsServer();
         startCleanupTimer();
 
         logInfo("══════════════════════════════════");
         logInfo("     Universal Telegram Bot       ");
         logInfo("══════════════════════════════════");
         logInfo("Telegram бот: " + (telegramBotEnabled ? "Включен" : "Выключен"));
-        logInfo("Загружено команд: " + commands.size());
-        logInfo("Интервал проверки: " + checkInterval + " сек");
+        logInfo("Загружено команд: " + handler.registry().size());
+        logInfo("Long-poll таймаут: " + pollTimeout + " сек");
         logInfo("Debug режим: " + (debugMode ? "Включен" : "Выключен"));
     }
 
     @Override
     public void onDisable() {
-        if (botThread != null) {
-            botThread.stopBot();
-            try {
-                botThread.join(3000);
-            } catch (InterruptedException e) {
-                logWarning("Ошибка при остановке бота: " + e.getMessage());
-            }
+        if (poller != null) {
+            poller.stopBot();
+        }
+        if (webhookServer != null) {
+            deleteWebhook();
+            webhookServer.stop();
+        }
+        // Опрос остановлен: аренду можно отдать следующему серверу
+        if (cluster != null) {
+            cluster.stop();
+        }
+        if (metricsServer != null) {
+            metricsServer.stop();
+        }
+        // Прерванный цикл пересылки отправляет остаток до остановки очереди
+        if (relayTask != null) {
+            relayTask.cancel(true);
+        }
+        if (coalescer != null) {
+            coalescer.shutdown();
+        }
+        if (outbound != null) {
+            outbound.stop(2000);
+        }
+        if (apiClient != null) {
+            apiClient.close();
+        }
+        // Отменяет оставшиеся сетевые задачи вместо ожидания отдельных потоков
+        if (ioExecutor != null) {
+            ioExecutor.shutdown(Duration.ofSeconds(3));
         }
 
-        saveCooldowns();
-        savePermissions();
+        flushUpdateTracker();
+        if (journal != null) {
+            journal.close();
+        } else {
+            saveCooldowns();
+            savePermissions();
+        }
         logInfo("Бот отключен");
     }
 
@@ -101,44 +177,187 @@ public class UniversalTelegramBot extends JavaPlugin {
         String basePath = config.getString("files.base-path", "plugins/TelegramBot");
         new File(basePath).mkdirs();
 
-        usedFile = new File(basePath, "cooldowns.txt");
+        usedFile = new File(basePath, "cooldowns.bin");
+        legacyUsedFile = new File(basePath, "cooldowns.txt");
         permissionsFile = new File(basePath, "permissions.txt");
+        journalFile = new File(basePath, "journal.log");
+        offsetFile = new File(basePath, "offset.dat");
+        spoolDir = new File(basePath, "spool");
 
         try {
-            if (!usedFile.exists()) usedFile.createNewFile();
             if (!permissionsFile.exists()) permissionsFile.createNewFile();
-
-            loadCooldowns();
         } catch (IOException e) {
             logSevere("Ошибка создания файлов: " + e.getMessage());
         }
     }
 
-    private void loadCommands() {
-        commands.clear();
+    private long parseChatId(String path, String chatId) {
+        try {
+            return Long.parseLong(chatId);
+        } catch (NumberFormatException e) {
+            logWarning("Некорректный " + path + ": " + chatId);
+            return 0;
+        }
+    }
 
-        if (!config.isConfigurationSection("commands")) {
-            logWarning("Секция 'commands' не найдена в конфиге!");
-            return;
+    // Секция telegram.chats; без неё команды принимаются только из group-chat-id
+    private ChatRoutes loadChatRoutes() {
+        if (!config.isConfigurationSection("telegram.chats")
+                || config.getConfigurationSection("telegram.chats").getKeys(false).isEmpty()) {
+            String path = "telegram.group-chat-id";
+            return ChatRoutes.single(parseChatId(path, config.getString(path, "").trim()));
         }
 
-        for (String cmdName : config.getConfigurationSection("commands").getKeys(false)) {
-            String path = "commands." + cmdName;
+        List<ChatRoutes.Route> routes = new ArrayList<>();
+        for (String name : config.getConfigurationSection("telegram.chats").getKeys(false)) {
+            String path = "telegram.chats." + name;
+            long chatId = parseChatId(path + ".id", config.getString(path + ".id", "").trim());
+            if (chatId == 0) continue;
 
-            BotCommand cmd = new BotCommand();
-            cmd.name = cmdName;
-            cmd.command = config.getString(path + ".command", "");
-            cmd.cooldown = config.getLong(path + ".cooldown", 86400);
-            cmd.permission = config.getString(path + ".permission", "");
-            cmd.message = config.getString(path + ".message", "✅ Команда выполнена!");
-            cmd.errorMessage = config.getString(path + ".error-message", "❌ Ошибка выполнения команды");
-            cmd.runAsConsole = config.getBoolean(path + ".run-as-console", true);
-            cmd.usePlayerAsSender = config.getBoolean(path + ".use-player-as-sender", false);
-            cmd.description = config.getString(path + ".eho", ""); // Загружаем описание
+            Set<String> commands = new HashSet<>();
+            for (String command : config.getStringList(path + ".commands")) {
+                commands.add(command.trim().toLowerCase(Locale.ROOT));
+            }
+            String replyChat = config.getString(path + ".reply-chat-id", "").trim();
+            routes.add(new ChatRoutes.Route(name, chatId, commands,
+                    ChatRoutes.CooldownScope.fromConfig(config.getString(path + ".cooldown-scope", "shared")),
+                    replyChat.isEmpty() ? String.valueOf(chatId) : replyChat,
+                    config.getBoolean(path + ".reply-to-message", true)));
+        }
+        return new ChatRoutes(routes);
+    }
 
-            commands.put(cmdName.toLowerCase(), cmd);
-            logInfo("Загружена команда: /" + cmdName + " -> " + cmd.command);
+    // Роли для выдачи через role.<имя>: свои права и наследование от других ролей
+    private Map<String, PermissionStore.Role> loadRoles() {
+        Map<String, PermissionStore.Role> roles = new HashMap<>();
+        if (!config.isConfigurationSection("roles")) return roles;
+
+        for (String name : config.getConfigurationSection("roles").getKeys(false)) {
+            String path = "roles." + name;
+            Set<String> rolePermissions = new HashSet<>();
+            for (String permission : config.getStringList(path + ".permissions")) {
+                rolePermissions.add(permission.trim());
+            }
+            Set<String> inherits = new HashSet<>();
+            for (String parent : config.getStringList(path + ".inherits")) {
+                String parentName = parent.trim();
+                if (!config.isConfigurationSection("roles." + parentName)) {
+                    logWarning("Роль " + name + " наследует неизвестную роль " + parentName);
+                }
+                inherits.add(parentName);
+            }
+            roles.put(name, new PermissionStore.Role(name, rolePermissions, inherits));
+        }
+        return roles;
+    }
+
+    private void loadPollingSettings() {
+        pollTimeout = Math.max(0, Math.min(50, config.getInt("telegram.poll-timeout", 30)));
+        pollLimit = Math.max(1, Math.min(100, config.getInt("telegram.poll-limit", 100)));
+        backoffMinMs = Math.max(100, config.getLong("telegram.backoff-min-ms", 500));
+        backoffMaxMs = Math.max(backoffMinMs, config.getLong("telegram.backoff-max-ms", 30000));
+
+        List<String> allowedUpdates = config.getStringList("telegram.allowed-updates");
+        if (allowedUpdates.isEmpty()) {
+            allowedUpdates = Collections.singletonList("message");
         }
+        StringJoiner joiner = new StringJoiner(",", "[", "]");
+        for (String type : allowedUpdates) {
+            joiner.add("\"" + type.trim() + "\"");
+        }
+        allowedUpdatesJson = joiner.toString();
+    }
+
+    private void loadMessages() {
+        messages = new Messages(
+                MessageTemplate.compile(config.getString("messages.welcome",
+                        "🤖 Бот активирован!\n" +
+                                "Доступные команды:\n" +
+                                "/help - список команд")),
+                MessageTemplate.compile(config.getString("messages.help-header", "📋 Доступные команды:\n\n")),
+                MessageTemplate.compile(config.getString("messages.command-format", "• /%cmd% - %eho%Кулдаун: %cooldown%\n")),
+                MessageTemplate.compile(config.getString("messages.help-footer", "\n💡 Просто напишите /команда в чат")),
+                MessageTemplate.compile(config.getString("messages.help-page", "\n📄 Страница %page% из %pages% (/help &lt;номер&gt;)")),
+                MessageTemplate.compile(config.getString("messages.unknown-command",
+                        "❌ Неизвестная команда. Используйте /help для списка команд")),
+                MessageTemplate.compile(config.getString("messages.did-you-mean", "\nВозможно, вы имели в виду /%cmd%?")),
+                MessageTemplate.compile(config.getString("messages.cooldown",
+                        "⏳ %user%, вы уже использовали эту команду.\nСледующее использование через: %time%")),
+                MessageTemplate.compile(config.getString("messages.no-permission",
+                        "❌ У вас нет прав для использования этой команды")),
+                MessageTemplate.compile(config.getString("messages.not-in-chat",
+                        "❌ Эта команда недоступна в этом чате")),
+                MessageTemplate.compile(config.getString("messages.usage",
+                        "❌ Укажите ник игрока: /%cmd% ник_игрока")),
+                MessageTemplate.compile(config.getString("messages.flood-warning",
+                        "⏳ %user%, слишком много команд. Подождите немного.")),
+                MessageTemplate.compile(config.getString("messages.flood-muted",
+                        "🔇 %user%, вы отправляете слишком много команд. Команды не принимаются: %time%")),
+                MessageTemplate.compile(config.getString("messages.server-offline",
+                        "❌ Сервер с этой командой сейчас недоступен")));
+    }
+
+    // Лимиты антифлуда пересоздаются при перезагрузке конфига вместе с накопленным состоянием
+    private UpdateHandler.Settings loadHandlerSettings() {
+        FloodGuard userFlood = null;
+        FloodGuard chatFlood = null;
+        long muteSeconds = config.getLong("flood.mute-seconds", 300);
+        if (config.getBoolean("flood.enabled", true)) {
+            userFlood = new FloodGuard(8192,
+                    config.getDouble("flood.user-burst", 5),
+                    config.getDouble("flood.user-per-second", 0.5),
+                    config.getBoolean("flood.notify", true),
+                    config.getInt("flood.mute-after", 10),
+                    muteSeconds * 1000);
+            // Лимит чата общий для всех участников, заглушение к нему не применяется
+            chatFlood = new FloodGuard(64,
+                    config.getDouble("flood.chat-burst", 20),
+                    config.getDouble("flood.chat-per-second", 5),
+                    false, 0, 0);
+        }
+        return new UpdateHandler.Settings(loadChatRoutes(), messages, userFlood, chatFlood, muteSeconds,
+                config.getBoolean("help.filter-by-permission", false));
+    }
+
+    // Читает секцию commands и собирает новый реестр вместе с отрисованной справкой.
+    // Не трогает текущий реестр, поэтому может выполняться вне главного потока.
+    private CommandRegistry buildRegistry(FileConfiguration cfg) {
+        List<BotCommand> loaded = new ArrayList<>();
+        if (!cfg.isConfigurationSection("commands")) {
+            logWarning("Секция 'commands' не найдена в конфиге!");
+        } else {
+            for (String cmdName : cfg.getConfigurationSection("commands").getKeys(false)) {
+                String path = "commands." + cmdName;
+
+                BotCommand cmd = new BotCommand();
+                cmd.name = cmdName;
+                cmd.id = cooldowns.commandIndex(cmd.name);
+                cmd.aliases = List.copyOf(cfg.getStringList(path + ".aliases"));
+                cmd.query = ServerSnapshot.Query.fromConfig(cfg.getString(path + ".query", ""));
+                cmd.command = cfg.getString(path + ".command", "");
+                cmd.commandTemplate = MessageTemplate.compile(cmd.command);
+                cmd.requiresPlayer = cmd.commandTemplate.uses(MessageTemplate.Placeholder.PLAYER);
+                // Запросы только читают снимок, поэтому по умолчанию без кулдауна
+                cmd.cooldown = cfg.getLong(path + ".cooldown", cmd.query != null ? 0 : 86400);
+                cmd.permission = cfg.getString(path + ".permission", "").trim();
+                cmd.permissionId = permissions.permissionIndex(cmd.permission);
+                cmd.message = MessageTemplate.compile(cfg.getString(path + ".message",
+                        cmd.query != null ? cmd.query.defaultMessage : "✅ Команда выполнена!"));
+                cmd.errorMessage = MessageTemplate.compile(cfg.getString(path + ".error-message",
+                        cmd.query != null ? "⏳ Состояние сервера ещё не собрано" : "❌ Ошибка выполнения команды"));
+                cmd.server = cfg.getString(path + ".server", "").trim();
+                cmd.runAsConsole = cfg.getBoolean(path + ".run-as-console", true);
+                cmd.usePlayerAsSender = cfg.getBoolean(path + ".use-player-as-sender", false);
+                cmd.description = cfg.getString(path + ".eho", ""); // Загружаем описание
+
+                loaded.add(cmd);
+                logInfo("Загружена команда: /" + cmdName + " -> " + describe(cmd));
+            }
+        }
+
+        // Новые права должны попасть в снимок до публикации реестра, иначе маски их не покроют
+        permissions.recompile();
+        return new CommandRegistry(registryVersion.incrementAndGet(), loaded, buildHelpPages(loaded));
     }
 
     private void loadPermissions() {
@@ -149,38 +368,198 @@ public class UniversalTelegramBot extends JavaPlugin {
             for (String line : lines) {
                 String[] parts = line.split(":", 2);
                 if (parts.length == 2) {
-                    String userId = parts[0];
-                    String[] perms = parts[1].split(",");
-                    userPermissions.put(userId, new HashSet<>(Arrays.asList(perms)));
+                    permissions.load(parts[0], Arrays.asList(parts[1].split(",")));
                 }
             }
 
-            logInfo("Загружено разрешений для " + userPermissions.size() + " пользователей");
+            logInfo("Загружено разрешений для " + permissions.users() + " пользователей");
         } catch (Exception e) {
             logWarning("Ошибка загрузки разрешений: " + e.getMessage());
         }
     }
 
     private void savePermissions() {
-        try (PrintWriter pw = new PrintWriter(permissionsFile)) {
-            for (Map.Entry<String, Set<String>> entry : userPermissions.entrySet()) {
+        try {
+            writePermissionsFile();
+        } catch (IOException e) {
+            logWarning("Ошибка сохранения разрешений: " + e.getMessage());
+        }
+    }
+
+    private void writePermissionsFile() throws IOException {
+        writeAtomically(permissionsFile, pw -> {
+            for (Map.Entry<String, Set<String>> entry : permissions.grants().entrySet()) {
                 String perms = String.join(",", entry.getValue());
                 pw.println(entry.getKey() + ":" + perms);
             }
+        });
+    }
+
+    // ========== Журнал ==========
+
+    private void startJournal() {
+        try {
+            int applied = PersistenceJournal.replay(journalFile, this::applyJournalEntry);
+            if (applied > 0) {
+                logInfo("Восстановлено из журнала записей: " + applied);
+            }
+
+            journal = new PersistenceJournal(journalFile,
+                    config.getLong("files.journal.flush-interval-ms", 200),
+                    TimeUnit.MINUTES.toMillis(config.getLong("files.journal.compact-interval-minutes", 30)),
+                    config.getLong("files.journal.compact-max-kb", 4096) * 1024,
+                    this::writeSnapshot, getLogger());
+            journal.start();
         } catch (IOException e) {
-            logWarning("Ошибка сохранения разрешений: " + e.getMessage());
+            logSevere("Ошибка открытия журнала, изменения будут сохраняться только при выключении: " + e.getMessage());
+            journal = null;
         }
     }
 
-    private boolean checkBotConnection() {
+    private void loadUpdateTracker() {
+        updateTracker = new UpdateTracker(offsetFile,
+                config.getInt("telegram.dedupe-window", 1024),
+                System.currentTimeMillis() / 1000,
+                config.getBoolean("telegram.catch-up.enabled", true),
+                config.getLong("telegram.catch-up.max-age-seconds", 300),
+                config.getDouble("telegram.catch-up.rate-per-second", 2));
         try {
-            URL url = new URL("https://api.telegram.org/bot" + botToken + "/getMe");
-            HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-            conn.setRequestMethod("GET");
-            conn.setConnectTimeout(5000);
-            conn.setReadTimeout(5000);
+            updateTracker.load();
+            if (updateTracker.offset() > 0) {
+                logInfo("Восстановлен offset обновлений: " + updateTracker.offset());
+            }
+        } catch (IOException e) {
+            logWarning("Не удалось загрузить offset обновлений: " + e.getMessage());
+        }
+    }
 
-            return conn.getResponseCode() == 200;
+    private void flushUpdateTracker() {
+        if (updateTracker == null) return;
+        try {
+            updateTracker.flush();
+        } catch (IOException e) {
+            logWarning("Ошибка сохранения offset обновлений: " + e.getMessage());
+        }
+    }
+
+    private void applyJournalEntry(PersistenceJournal.Entry entry) {
+        switch (entry.type()) {
+            case COOLDOWN_SET:
+            case COOLDOWN_CLEAR:
+                BotCommand cmd = handler.registry().get(entry.name());
+                if (cmd == null) return;
+                try {
+                    long userId = Long.parseLong(entry.subject());
+                    if (entry.type() == PersistenceJournal.Type.COOLDOWN_SET) {
+                        cooldowns.restore(userId, cmd.id, entry.time(), entry.expireAt(),
+                                System.currentTimeMillis());
+                    } else {
+                        cooldowns.clear(userId, cmd.id);
+                    }
+                } catch (NumberFormatException e) {
+                    // Пропускаем некорректные записи
+                }
+                break;
+            case PERMISSION_ADD:
+                permissions.grant(entry.subject(), entry.name());
+                break;
+            case PERMISSION_REMOVE:
+                permissions.revoke(entry.subject(), entry.name());
+                break;
+        }
+    }
+
+    // Без журнала права сохраняются сразу, как раньше
+    private void persistPermission(PersistenceJournal.Entry entry) {
+        if (journal != null) {
+            journal.append(entry);
+        } else {
+            savePermissions();
+        }
+    }
+
+    private void appendJournal(PersistenceJournal.Entry entry) {
+        if (journal != null) {
+            journal.append(entry);
+        }
+    }
+
+    // Снимок для компактификации журнала; вызывается из потока журнала
+    private void writeSnapshot() throws IOException {
+        writeCooldownsFile();
+        writePermissionsFile();
+    }
+
+    // Запись во временный файл, fsync и атомарная замена: файл либо старый, либо новый целиком
+    private void writeAtomically(File target, Consumer<PrintWriter> writer) throws IOException {
+        File temp = new File(target.getPath() + ".tmp");
+        try (FileOutputStream fos = new FileOutputStream(temp);
+             PrintWriter pw = new PrintWriter(new OutputStreamWriter(fos, StandardCharsets.UTF_8))) {
+            writer.accept(pw);
+            pw.flush();
+            if (pw.checkError()) {
+                throw new IOException("Ошибка записи " + temp.getName());
+            }
+            fos.getFD().sync();
+        }
+        Files.move(temp.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private TelegramApiClient createApiClient() {
+        String apiUrl = config.getString("telegram.api-url", "https://api.telegram.org").trim();
+        Duration connectTimeout = Duration.ofMillis(config.getLong("telegram.http.connect-timeout-ms", 10000));
+        Duration requestTimeout = Duration.ofMillis(config.getLong("telegram.http.request-timeout-ms", 10000));
+        int maxRetries = config.getInt("telegram.http.max-retries", 2);
+        long retryDelayMs = config.getLong("telegram.http.retry-delay-ms", 500);
+        return new TelegramApiClient(apiUrl, botToken, connectTimeout, requestTimeout, maxRetries, retryDelayMs,
+                ioExecutor, metrics);
+    }
+
+    private OutboundDispatcher createOutboundDispatcher() {
+        return new OutboundDispatcher(apiClient, metrics, getLogger(),
+                config.getInt("outbound.queue-capacity", 1000),
+                OutboundDispatcher.DropPolicy.fromConfig(config.getString("outbound.drop-policy", "drop-oldest")),
+                config.getInt("outbound.max-in-flight", 4),
+                config.getDouble("outbound.global-per-second", 25),
+                config.getDouble("outbound.chat-burst", 3),
+                config.getDouble("outbound.chat-per-minute", 20) / 60.0,
+                new CircuitBreaker(config.getInt("outbound.circuit-breaker.failure-threshold", 5),
+                        TimeUnit.SECONDS.toMillis(config.getLong("outbound.circuit-breaker.open-seconds", 5)),
+                        TimeUnit.SECONDS.toMillis(config.getLong("outbound.circuit-breaker.max-open-seconds", 120))),
+                openOutboundSpool());
+    }
+
+    // null - очередь на диске выключена или не открылась: сообщения сверх queue-capacity отбрасываются
+    private OutboundSpool openOutboundSpool() {
+        if (!config.getBoolean("outbound.spool.enabled", true)) return null;
+
+        OutboundSpool spool = new OutboundSpool(spoolDir,
+                config.getLong("outbound.spool.segment-size-kb", 1024) * 1024,
+                config.getLong("outbound.spool.max-size-mb", 64) * 1024 * 1024, getLogger());
+        try {
+            spool.open();
+        } catch (IOException e) {
+            logSevere("Ошибка открытия очереди сообщений на диске: " + e.getMessage());
+            return null;
+        }
+        if (!spool.isEmpty()) {
+            logInfo("Неотправленных сообщений на диске: " + spool.pending());
+        }
+        return spool;
+    }
+
+    private ReplyCoalescer createReplyCoalescer() {
+        List<String> kinds = config.isList("outbound.coalesce.kinds")
+                ? config.getStringList("outbound.coalesce.kinds")
+                : Arrays.asList("cooldown", "unknown-command", "no-permission");
+        return new ReplyCoalescer(outbound,
+                config.getLong("outbound.coalesce.window-ms", 250),
+                ReplyCoalescer.Kind.fromConfig(kinds));
+    }
+
+    private boolean checkBotConnection() {
+        try {
+            return apiClient.getMe().get(15, TimeUnit.SECONDS);
         } catch (Exception e) {
             return false;
         }
@@ -188,27 +567,55 @@ public class UniversalTelegramBot extends JavaPlugin {
 
     // ========== Telegram бот ==========
 
-    private class TelegramBotThread extends Thread {
+    // Проверка токена, запуск опроса или webhook и приветствие; в кластере - когда узел стал лидером
+    private void startReceiving() {
+        if (checkBotConnection()) {
+            if (webhookMode) {
+                startWebhook();
+            } else {
+                // getUpdates не работает, пока у бота установлен webhook
+                deleteWebhook();
+                poller = new TelegramPoller();
+                poller.start();
+            }
+            logInfo("Telegram бот запущен (" + (webhookMode ? "webhook" : "long-poll") + ")");
+
+            // Отправляем приветственное сообщение во все чаты
+            broadcast(messages.welcome().toString());
+        } else {
+            logWarning("Не удалось подключиться к Telegram боту. Проверьте токен.");
+        }
+    }
+
+    // Цикл long-poll в виртуальном потоке IoExecutor
+    private class TelegramPoller implements Runnable {
         private volatile boolean running = true;
-        private int lastUpdateId = 0;
+        private volatile CompletableFuture<List<Update>> activePoll;
+        private Future<?> task;
+        private long backoffMs = 0;
+
+        void start() {
+            task = ioExecutor.start("Poll", this);
+        }
 
         @Override
         public void run() {
-            logInfo("Telegram бот запущен в отдельном потоке");
+            logInfo("Telegram бот запущен в виртуальном потоке");
 
             while (running) {
                 try {
+                    // Long-poll: сервер держит запрос до pollTimeout секунд,
+                    // поэтому сразу после ответа опрашиваем снова
                     checkTelegramUpdates();
-                    Thread.sleep(checkInterval * 1000L);
-                } catch (InterruptedException e) {
-                    break;
+                    backoffMs = 0;
                 } catch (Exception e) {
-                    String errorMsg = e.getMessage();
-                    if (debugMode && (errorMsg == null || !errorMsg.contains("Read timed out"))) {
-                        logWarning("Ошибка в Telegram боте: " + errorMsg);
+                    if (!running) break;
+
+                    if (debugMode) {
+                        logWarning("Ошибка в Telegram боте: " + e.getMessage());
                     }
                     try {
-                        Thread.sleep(10000);
+                        Thread.sleep(nextBackoff());
                     } catch (InterruptedException ex) {
                         break;
                     }
@@ -220,407 +627,452 @@ public class UniversalTelegramBot extends JavaPlugin {
 
         public void stopBot() {
             running = false;
-            this.interrupt();
-        }
-
-        private void checkTelegramUpdates() throws IOException {
-            URL url = new URL("https://api.telegram.org/bot" + botToken + "/getUpdates");
-            HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-            conn.setRequestMethod("POST");
-            conn.setRequestProperty("Content-Type", "application/json");
-            conn.setDoOutput(true);
-            conn.setConnectTimeout(10000);
-            conn.setReadTimeout(10000);
-
-            String requestBody = String.format(
-                    "{\"offset\": %d, \"timeout\": 30}",
-                    lastUpdateId + 1
-            );
-
-            try (OutputStream os = conn.getOutputStream()) {
-                os.write(requestBody.getBytes());
-                os.flush();
-            }
 
-            if (conn.getResponseCode() == 200) {
-                try (BufferedReader br = new BufferedReader(new InputStreamReader(conn.getInputStream()))) {
-                    StringBuilder response = new StringBuilder();
-                    String line;
-                    while ((line = br.readLine()) != null) {
-                        response.append(line);
-                    }
-                    processTelegramUpdates(response.toString());
-                }
+            // Обрываем висящий long-poll запрос, иначе поток ждёт до pollTimeout секунд
+            CompletableFuture<List<Update>> poll = activePoll;
+            if (poll != null) {
+                poll.cancel(true);
+            }
+            if (task != null) {
+                task.cancel(true);
             }
         }
 
-        private void processTelegramUpdates(String jsonResponse) {
-            try {
-                if (!jsonResponse.contains("\"ok\":true")) return;
-
-                String[] updates = jsonResponse.split("\"update_id\":");
+        // Экспоненциальная задержка с джиттером, только при реальных ошибках
+        private long nextBackoff() {
+            long base = Math.max(backoffMinMs, backoffMs * 2);
+            backoffMs = Math.min(backoffMaxMs, base);
+            return backoffMs / 2 + ThreadLocalRandom.current().nextLong(backoffMs / 2 + 1);
+        }
 
-                for (int i = 1; i < updates.length; i++) {
-                    try {
-                        String update = updates[i];
-
-                        // Получаем update_id
-                        String updateIdStr = update.substring(0, update.indexOf(',')).trim();
-                        int updateId = Integer.parseInt(updateIdStr);
-                        lastUpdateId = Math.max(lastUpdateId, updateId);
-
-                        // Проверяем что сообщение из нужной группы
-                        if (!update.contains("\"chat\":{\"id\":" + groupChatId)) {
-                            continue;
-                        }
-
-                        // Извлекаем текст сообщения
-                        int textStart = update.indexOf("\"text\":\"");
-                        if (textStart == -1) continue;
-
-                        textStart += 8;
-                        int textEnd = update.indexOf("\"", textStart);
-                        if (textEnd == -1) continue;
-
-                        String text = update.substring(textStart, textEnd);
-
-                        // Извлекаем ID пользователя
-                        String userId = "unknown";
-                        int idStart = update.indexOf("\"from\":{\"id\":");
-                        if (idStart != -1) {
-                            idStart += 13;
-                            int idEnd = update.indexOf(",", idStart);
-                            if (idEnd != -1) {
-                                userId = update.substring(idStart, idEnd).trim();
-                            }
-                        }
-
-                        // Извлекаем имя пользователя
-                        String username = "Пользователь";
-                        int userStart = update.indexOf("\"username\":\"");
-                        if (userStart != -1) {
-                            userStart += 12;
-                            int userEnd = update.indexOf("\"", userStart);
-                            if (userEnd != -1) {
-                                username = "@" + update.substring(userStart, userEnd);
-                            }
-                        } else {
-                            int nameStart = update.indexOf("\"first_name\":\"");
-                            if (nameStart != -1) {
-                                nameStart += 15;
-                                int nameEnd = update.indexOf("\"", nameStart);
-                                if (nameEnd != -1) {
-                                    username = update.substring(nameStart, nameEnd);
-                                }
-                            }
-                        }
-
-                        // Получаем message_id для ответа
-                        String messageId = "0";
-                        int msgIdStart = update.indexOf("\"message_id\":");
-                        if (msgIdStart != -1) {
-                            msgIdStart += 13;
-                            int msgIdEnd = update.indexOf(",", msgIdStart);
-                            if (msgIdEnd != -1) {
-                                messageId = update.substring(msgIdStart, msgIdEnd).trim();
-                            }
-                        }
-
-                        // Обрабатываем команду
-                        if (text.startsWith("/")) {
-                            processTelegramCommand(text, userId, username, messageId);
-                        }
-
-                    } catch (Exception e) {
-                        if (debugMode) {
-                            logWarning("Ошибка обработки обновления: " + e.getMessage());
-                        }
-                    }
-                }
-            } catch (Exception e) {
-                if (debugMode) {
-                    logWarning("Ошибка парсинга JSON: " + e.getMessage());
-                }
+        private void checkTelegramUpdates() throws Exception {
+            // Offset берётся из трекера, поэтому после перезапуска опрос продолжается с того же места
+            CompletableFuture<List<Update>> poll = apiClient.getUpdates(
+                    updateTracker.offset() + 1, pollTimeout, pollLimit, allowedUpdatesJson);
+            activePoll = poll;
+            long pollStart = System.nanoTime();
+            try {
+                // Крайний срок с запасом сверх таймаута HTTP запроса: зависший опрос не блокирует цикл
+                List<Update> updates = poll.get(pollTimeout + 15L, TimeUnit.SECONDS);
+                metrics.record(Metrics.Stage.POLL, System.nanoTime() - pollStart);
+                processTelegramUpdates(updates);
+            } catch (TimeoutException e) {
+                poll.cancel(true);
+                throw e;
+            } catch (ExecutionException e) {
+                throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+            } finally {
+                activePoll = null;
             }
         }
+
+        private void processTelegramUpdates(List<Update> updates) {
+            if (!running || updates.isEmpty()) return;
+            handler.handleUpdates(updates);
+        }
     }
 
-    private void processTelegramCommand(String text, String userId, String username, String messageId) {
-        // Обработка команды help
-        if (text.equalsIgnoreCase("/help") || text.equalsIgnoreCase("/start")) {
-            sendHelpMessage(messageId, username);
+    // ========== Webhook ==========
+
+    private void startWebhook() {
+        String publicUrl = config.getString("telegram.webhook.public-url", "").trim();
+        if (publicUrl.isEmpty()) {
+            logWarning("telegram.webhook.public-url не задан, webhook не запущен");
             return;
         }
 
-        // Разбираем команду
-        String[] parts = text.substring(1).split("\\s+", 2);
-        String commandName = parts[0].toLowerCase();
-        String args = parts.length > 1 ? parts[1].trim() : "";
+        String secretToken = config.getString("telegram.webhook.secret-token", "").trim();
+        if (secretToken.isEmpty()) {
+            byte[] random = new byte[24];
+            new SecureRandom().nextBytes(random);
+            secretToken = HexFormat.of().formatHex(random);
+        }
+
+        try {
+            SSLContext sslContext = null;
+            String keystore = config.getString("telegram.webhook.keystore", "").trim();
+            if (!keystore.isEmpty()) {
+                sslContext = WebhookServer.loadSslContext(new File(keystore),
+                        config.getString("telegram.webhook.keystore-password", ""));
+            }
 
-        // Проверяем команду
-        BotCommand cmd = commands.get(commandName);
-        if (cmd == null) {
-            String unknownMsg = config.getString("messages.unknown-command",
-                    "❌ Неизвестная команда. Используйте /help для списка команд");
-            sendTelegramReply(messageId, unknownMsg);
+            InetSocketAddress address = new InetSocketAddress(
+                    config.getString("telegram.webhook.bind-address", "0.0.0.0"),
+                    config.getInt("telegram.webhook.port", 8443));
+            webhookServer = new WebhookServer(address, config.getString("telegram.webhook.path", "/telegram"),
+                    secretToken, sslContext, handler::handleUpdate, ioExecutor, metrics, getLogger());
+            webhookServer.start();
+        } catch (Exception e) {
+            logSevere("Не удалось запустить webhook сервер: " + e.getMessage());
+            webhookServer = null;
             return;
         }
 
-        // Проверяем разрешения
-        if (!cmd.permission.isEmpty()) {
-            Set<String> userPerms = userPermissions.get(userId);
-            if (userPerms == null || !userPerms.contains(cmd.permission)) {
-                sendTelegramReply(messageId, "❌ У вас нет прав для использования этой команды");
-                return;
+        String body = "{\"url\": \"" + TelegramApiClient.escapeJson(publicUrl)
+                + "\", \"secret_token\": \"" + secretToken
+                + "\", \"allowed_updates\": " + allowedUpdatesJson
+                + ", \"max_connections\": " + config.getInt("telegram.webhook.max-connections", 40) + "}";
+        apiClient.call("setWebhook", body).whenComplete((response, error) -> {
+            if (error != null) {
+                logWarning("Ошибка setWebhook: " + error.getMessage());
+            } else if (!response.ok()) {
+                logWarning("setWebhook вернул HTTP " + response.statusCode() + ": " + response.body());
+            } else {
+                logInfo("Webhook установлен: " + publicUrl + " (порт " + webhookServer.port() + ")");
             }
-        }
+        });
+    }
 
-        // Проверяем наличие аргумента если нужно
-        if (args.isEmpty() && cmd.command.contains("%player%")) {
-            sendTelegramReply(messageId, "❌ Укажите ник игрока: /" + commandName + " ник_игрока");
-            return;
+    private void deleteWebhook() {
+        try {
+            ApiResponse response = apiClient.call("deleteWebhook", "{\"drop_pending_updates\": false}")
+                    .get(5, TimeUnit.SECONDS);
+            if (!response.ok()) {
+                logWarning("deleteWebhook вернул HTTP " + response.statusCode() + ": " + response.body());
+            }
+        } catch (Exception e) {
+            logWarning("Ошибка deleteWebhook: " + e.getMessage());
         }
+    }
 
-        // Проверяем кулдаун
-        String cooldownKey = userId + ":" + commandName;
-        if (isOnCooldown(cooldownKey, cmd.cooldown)) {
-            long timeLeft = getCooldownLeft(cooldownKey, cmd.cooldown);
-            String timeStr = formatCooldown(timeLeft);
+    private static String describe(BotCommand cmd) {
+        String target = cmd.query != null ? "запрос " + cmd.query.key : cmd.command;
+        return cmd.server.isEmpty() ? target : target + " @" + cmd.server;
+    }
 
-            String cooldownMsg = config.getString("messages.cooldown",
-                    "⏳ %user%, вы уже использовали эту команду.\nСледующее использование через: %time%");
-            cooldownMsg = cooldownMsg.replace("%user%", username).replace("%time%", timeStr);
+    // ========== Пересылка событий ==========
 
-            sendTelegramReply(messageId, cooldownMsg);
-            return;
+    // Слушатели регистрируются всегда: выключенные типы отсекаются в EventRelay и переключаются перезагрузкой
+    private void startRelay() {
+        relay = new EventRelay(config.getInt("relay.buffer-size", 4096), this::sendTelegramMessage, getLogger());
+        relay.configure(loadRelaySettings());
+        relayTask = ioExecutor.start("Relay", relay::run);
+        Bukkit.getPluginManager().registerEvents(new RelayListener(relay), this);
+    }
+
+    private EventRelay.Settings loadRelaySettings() {
+        if (!config.getBoolean("relay.enabled", false)) return EventRelay.Settings.DISABLED;
+
+        List<String> chats = new ArrayList<>();
+        for (String chatId : config.getStringList("relay.chats")) {
+            if (!chatId.trim().isEmpty()) chats.add(chatId.trim());
+        }
+        if (chats.isEmpty()) {
+            // По умолчанию - все чаты из telegram.chats
+            for (ChatRoutes.Route route : handler.settings().chats().all()) {
+                chats.add(String.valueOf(route.chatId()));
+            }
         }
 
-        // Выполняем команду
-        executeMinecraftCommand(cmd, args, userId, username, messageId);
+        Map<EventRelay.Type, EventRelay.Rule> rules = new EnumMap<>(EventRelay.Type.class);
+        for (EventRelay.Type type : EventRelay.Type.values()) {
+            String path = "relay.events." + type.key;
+            if (!config.getBoolean(path + ".enabled", true)) continue;
+            double sample = Math.max(0, Math.min(1, config.getDouble(path + ".sample", 1)));
+            rules.put(type, new EventRelay.Rule(sample,
+                    MessageTemplate.compile(config.getString(path + ".format", type.defaultFormat))));
+        }
+        return new EventRelay.Settings(chats, Math.max(100, config.getLong("relay.flush-interval-ms", 3000)), rules);
     }
 
-    private void sendHelpMessage(String messageId, String username) {
-        StringBuilder help = new StringBuilder();
+    // ========== Кластер ==========
 
-        String header = config.getString("messages.help-header", "📋 Доступные команды:\n\n");
-        help.append(header);
+    private void startCluster() {
+        String secret = config.getString("cluster.secret", "").trim();
+        if (secret.isEmpty()) {
+            // Без ключа любой, кто достучится до порта, выдаст себя за сервер кластера
+            logSevere("Режим кластера не запущен: задайте одинаковый cluster.secret на всех серверах");
+            return;
+        }
+        String server = config.getString("cluster.server-name", "").trim();
+        if (server.isEmpty()) {
+            // По умолчанию - имя папки сервера (plugins/UniversalTelegramBot -> сервер)
+            server = getDataFolder().getAbsoluteFile().getParentFile().getParentFile().getName();
+        }
+        String leasePath = config.getString("cluster.lease-file", "").trim();
+        File leaseFile = leasePath.isEmpty()
+                ? new File(System.getProperty("java.io.tmpdir"), "telegrambot-cluster.lock")
+                : new File(leasePath);
+        ClusterNode.Settings settings = new ClusterNode.Settings(server, leaseFile,
+                new InetSocketAddress(config.getString("cluster.bind-address", "127.0.0.1"),
+                        config.getInt("cluster.port", 25590)),
+                config.getString("cluster.advertise-address", "127.0.0.1"), secret);
+
+        ClusterNode node = new ClusterNode(settings, new ClusterNode.Listener() {
+            @Override
+            public void onLeader() {
+                startReceiving();
+            }
 
-        for (BotCommand cmd : commands.values()) {
-            String cooldownStr = formatCooldown(cmd.cooldown);
-            String descriptionPart = cmd.description.isEmpty() ? "" : cmd.description + " | ";
+            @Override
+            public void onCommand(ClusterLink.Command command) {
+                handler.handleForwarded(command);
+            }
 
-            String line = config.getString("messages.command-format", "• /%cmd% - %eho%Кулдаун: %cooldown%\n")
-                    .replace("%cmd%", cmd.name)
-                    .replace("%cooldown%", cooldownStr)
-                    .replace("%eho%", descriptionPart);
+            @Override
+            public void onReply(ClusterLink.Reply reply) {
+                // Серверы пишут только в чаты бота: telegram.chats и relay.chats лидера
+                if (!isBotChat(reply.chatId())) {
+                    logWarning("Ответ сервера кластера в чужой чат " + reply.chatId() + " отброшен");
+                    return;
+                }
+                if (reply.kind() == null) {
+                    sendTelegramMessage(reply.chatId(), reply.text());
+                } else {
+                    sendTelegramReply(reply.chatId(), reply.replyToMessageId(), reply.text(), reply.kind());
+                }
+            }
 
-            help.append(line);
+            @Override
+            public void onOffset(long offset) {
+                // На диск попадёт с таймером очистки
+                updateTracker.advance(offset);
+            }
+        }, updateTracker::offset, ioExecutor, getLogger());
+        try {
+            node.start();
+            cluster = node;
+            handler.setCluster(node);
+            logInfo("Режим кластера: сервер " + server + ", файл аренды " + leaseFile.getAbsolutePath());
+        } catch (IOException e) {
+            // Без аренды опрос не запускается: два опроса одного бота мешают друг другу
+            logSevere("Не удалось открыть файл аренды кластера: " + e.getMessage());
         }
+    }
 
-        String footer = config.getString("messages.help-footer", "\n💡 Просто напишите /команда в чат");
-        help.append(footer);
-
-        sendTelegramReply(messageId, help.toString());
+    private boolean isBotChat(String chatId) {
+        try {
+            if (handler.settings().chats().get(Long.parseLong(chatId)) != null) return true;
+        } catch (NumberFormatException e) {
+            // @username канала - только через relay.chats
+        }
+        return relay != null && relay.sendsTo(chatId);
     }
 
-    private void executeMinecraftCommand(BotCommand cmd, String args, String userId,
-                                         String username, String messageId) {
-        new BukkitRunnable() {
-            @Override
-            public void run() {
-                try {
-                    // Подготавливаем команду
-                    String finalCommand = cmd.command
-                            .replace("%player%", args)
-                            .replace("%args%", args)
-                            .replace("%user%", username)
-                            .replace("%user_id%", userId);
-
-                    logInfo("Выполняю команду от Telegram: " + finalCommand);
-
-                    boolean success = false;
-
-                    if (cmd.usePlayerAsSender && !args.isEmpty()) {
-                        // Пытаемся выполнить команду от имени игрока
-                        Player player = Bukkit.getPlayerExact(args);
-                        if (player != null && player.isOnline()) {
-                            success = player.performCommand(finalCommand);
-                        } else {
-                            success = Bukkit.dispatchCommand(Bukkit.getConsoleSender(), finalCommand);
-                        }
-                    } else if (cmd.runAsConsole) {
-                        // Выполняем от имени консоли
-                        success = Bukkit.dispatchCommand(Bukkit.getConsoleSender(), finalCommand);
-                    } else {
-                        // Выполняем от имени плагина
-                        success = getServer().dispatchCommand(getServer().getConsoleSender(), finalCommand);
-                    }
+    private HelpPages buildHelpPages(List<BotCommand> commands) {
+        Messages msgs = messages;
+        MessageTemplate.Values values = new MessageTemplate.Values();
+        List<HelpPages.Entry> entries = new ArrayList<>();
 
-                    // Обновляем кулдаун если успешно
-                    if (success) {
-                        String cooldownKey = userId + ":" + cmd.name;
-                        updateCooldown(cooldownKey);
-                    }
+        for (BotCommand cmd : commands) {
+            String cooldownStr = UpdateHandler.formatCooldown(cmd.cooldown);
+            String descriptionPart = cmd.description.isEmpty() ? "" : cmd.description + " | ";
+
+            String line = msgs.commandFormat().render(values
+                    .set(MessageTemplate.Placeholder.CMD, cmd.name)
+                    .set(MessageTemplate.Placeholder.COOLDOWN, cooldownStr)
+                    .set(MessageTemplate.Placeholder.EHO, descriptionPart));
+            entries.add(new HelpPages.Entry(cmd.name.toLowerCase(Locale.ROOT), cmd.permissionId, line));
+        }
 
-                    // Отправляем ответ
-                    String response = success ? cmd.message : cmd.errorMessage;
-                    response = response.replace("%player%", args).replace("%user%", username);
-                    sendTelegramReply(messageId, response);
+        HelpPages help = new HelpPages(entries, msgs.helpHeader().toString(), msgs.helpFooter().toString(),
+                msgs.helpPage());
+        // Сообщения уходят с parse_mode HTML: лишний '<' или '&' - ошибка 400 у Telegram
+        for (String part : help.unparsed()) {
+            logWarning("Справка /help содержит '<' или '&' вне HTML-тега, они будут экранированы: " + part);
+        }
+        return help;
+    }
 
-                    // Логируем
-                    String logMsg = String.format("[%s] %s (ID:%s) -> /%s %s -> %s",
-                            new SimpleDateFormat("HH:mm:ss").format(new Date()),
-                            username, userId, cmd.name, args, success ? "Успех" : "Ошибка");
-                    logInfo(logMsg);
+    // ========== Выполнение команд ==========
 
-                } catch (Exception e) {
-                    logWarning("Ошибка выполнения команды: " + e.getMessage());
-                    sendTelegramReply(messageId, "❌ Внутренняя ошибка при выполнении команды");
-                }
+    // Вызывается UpdateHandler из главного потока
+    private boolean dispatchCommand(BotCommand cmd, String args, String command) {
+        if (cmd.usePlayerAsSender && !args.isEmpty()) {
+            // Пытаемся выполнить команду от имени игрока
+            Player player = Bukkit.getPlayerExact(args);
+            if (player != null && player.isOnline()) {
+                return player.performCommand(command);
             }
-        }.runTask(this);
+            return Bukkit.dispatchCommand(Bukkit.getConsoleSender(), command);
+        } else if (cmd.runAsConsole) {
+            // Выполняем от имени консоли
+            return Bukkit.dispatchCommand(Bukkit.getConsoleSender(), command);
+        }
+        // Выполняем от имени плагина
+        return getServer().dispatchCommand(getServer().getConsoleSender(), command);
     }
 
     // ========== Кулдаун система ==========
 
     private void loadCooldowns() {
         try {
-            if (!usedFile.exists()) return;
-
-            List<String> lines = Files.readAllLines(usedFile.toPath());
-            for (String line : lines) {
-                String[] parts = line.split(":", 2);
-                if (parts.length == 2) {
-                    try {
-                        cooldowns.put(parts[0], Long.parseLong(parts[1]));
-                    } catch (NumberFormatException e) {
-                        // Пропускаем некорректные строки
-                    }
-                }
+            if (usedFile.exists()) {
+                int loaded = CooldownSnapshot.load(usedFile, cooldowns, name -> {
+                    BotCommand cmd = handler.registry().get(name);
+                    return cmd != null ? cmd.id : -1;
+                }, System.currentTimeMillis());
+                logInfo("Загружено " + loaded + " кулдаунов");
+            } else if (legacyUsedFile.exists()) {
+                migrateLegacyCooldowns();
             }
-
-            logInfo("Загружено " + cooldowns.size() + " кулдаунов");
         } catch (Exception e) {
             logWarning("Ошибка загрузки кулдаунов: " + e.getMessage());
         }
     }
 
-    private void saveCooldowns() {
-        try (PrintWriter pw = new PrintWriter(usedFile)) {
-            for (Map.Entry<String, Long> entry : cooldowns.entrySet()) {
-                pw.println(entry.getKey() + ":" + entry.getValue());
+    // Перенос из старого текстового cooldowns.txt в бинарный снимок
+    private void migrateLegacyCooldowns() throws IOException {
+        long now = System.currentTimeMillis();
+        int loaded = 0;
+        List<String> lines = Files.readAllLines(legacyUsedFile.toPath());
+        for (String line : lines) {
+            // Формат: user_id:команда:время_использования
+            int first = line.indexOf(':');
+            int last = line.lastIndexOf(':');
+            if (first <= 0 || last <= first) continue;
+
+            BotCommand cmd = handler.registry().get(line.substring(first + 1, last));
+            if (cmd == null) continue;
+
+            try {
+                long userId = Long.parseLong(line.substring(0, first));
+                long lastUse = Long.parseLong(line.substring(last + 1));
+                cooldowns.restore(userId, cmd.id, lastUse,
+                        lastUse + TimeUnit.SECONDS.toMillis(cmd.cooldown), now);
+                loaded++;
+            } catch (NumberFormatException e) {
+                // Пропускаем некорректные строки
             }
+        }
+
+        writeCooldownsFile();
+        Files.move(legacyUsedFile.toPath(), new File(legacyUsedFile.getPath() + ".migrated").toPath(),
+                StandardCopyOption.REPLACE_EXISTING);
+        logInfo("Кулдауны перенесены из cooldowns.txt в cooldowns.bin: " + loaded);
+    }
+
+    private void saveCooldowns() {
+        try {
+            writeCooldownsFile();
         } catch (IOException e) {
             logWarning("Ошибка сохранения кулдаунов: " + e.getMessage());
         }
     }
 
-    private boolean isOnCooldown(String key, long cooldownSeconds) {
-        Long lastTime = cooldowns.get(key);
-        if (lastTime == null) return false;
-
-        long timePassed = (System.currentTimeMillis() - lastTime) / 1000;
-        return timePassed < cooldownSeconds;
+    private void writeCooldownsFile() throws IOException {
+        CooldownSnapshot.write(usedFile, cooldowns);
     }
 
-    private long getCooldownLeft(String key, long cooldownSeconds) {
-        Long lastTime = cooldowns.get(key);
-        if (lastTime == null) return 0;
+    // ========== Главный поток ==========
 
-        long timePassed = (System.currentTimeMillis() - lastTime) / 1000;
-        long timeLeft = cooldownSeconds - timePassed;
-        return Math.max(0, timeLeft);
+    private MainThreadDispatcher createMainThreadDispatcher() {
+        long budgetNanos = (long) (config.getDouble("dispatch.tick-budget-ms", 2.0) * 1_000_000);
+        double highMspt = config.getDouble("dispatch.high-mspt", 45.0);
+        return new MainThreadDispatcher(budgetNanos, highMspt, Bukkit::getAverageTickTime, metrics, getLogger());
     }
 
-    private void updateCooldown(String key) {
-        cooldowns.put(key, System.currentTimeMillis());
+    private void startMainThreadDispatcher() {
+        new BukkitRunnable() {
+            @Override
+            public void run() {
+                mainThread.runTick();
+            }
+        }.runTaskTimer(this, 1L, 1L);
     }
 
-    private String formatCooldown(long seconds) {
-        if (seconds <= 0) return "сейчас";
+    // Снимок для команд-запросов собирается в главном потоке: API Bukkit нельзя читать из других потоков.
+    // Собираются только счётчики и имена, форматирование - в потоке бота при первом запросе
+    private void startServerStateRefresh() {
+        if (serverStateTask != null) {
+            serverStateTask.cancel();
+        }
+        long interval = Math.max(1, config.getLong("queries.refresh-ticks", 20));
+        serverStateTask = new BukkitRunnable() {
+            @Override
+            public void run() {
+                long start = System.nanoTime();
+                handler.setServerState(collectServerState());
+                metrics.record(Metrics.Stage.SNAPSHOT, System.nanoTime() - start);
+            }
+        }.runTaskTimer(this, 0L, interval);
+    }
+
+    private ServerSnapshot collectServerState() {
+        List<String> players = new ArrayList<>();
+        for (Player player : Bukkit.getOnlinePlayers()) {
+            players.add(player.getName());
+        }
+        List<ServerSnapshot.WorldStats> worlds = new ArrayList<>();
+        for (World world : Bukkit.getWorlds()) {
+            worlds.add(new ServerSnapshot.WorldStats(world.getName(), world.getPlayerCount(),
+                    world.getEntityCount(), world.getChunkCount()));
+        }
+        return new ServerSnapshot(System.currentTimeMillis(), Bukkit.getMaxPlayers(), players,
+                Bukkit.getTPS(), Bukkit.getAverageTickTime(), worlds);
+    }
 
-        long days = TimeUnit.SECONDS.toDays(seconds);
-        long hours = TimeUnit.SECONDS.toHours(seconds) % 24;
-        long minutes = TimeUnit.SECONDS.toMinutes(seconds) % 60;
+    private void startMetricsServer() {
+        if (!metrics.enabled() || !config.getBoolean("metrics.http.enabled", false)) return;
 
-        if (days > 0) {
-            return String.format("%dд %dч", days, hours);
-        } else if (hours > 0) {
-            return String.format("%dч %dм", hours, minutes);
-        } else if (minutes > 0) {
-            return String.format("%dм", minutes);
-        } else {
-            return String.format("%dс", seconds);
+        try {
+            InetSocketAddress address = new InetSocketAddress(
+                    config.getString("metrics.http.bind-address", "127.0.0.1"),
+                    config.getInt("metrics.http.port", 9464));
+            metricsServer = new MetricsServer(address, config.getString("metrics.http.path", "/metrics"),
+                    metrics, ioExecutor);
+            metricsServer.start();
+            logInfo("Метрики Prometheus: http://" + address.getHostString() + ":" + metricsServer.port()
+                    + config.getString("metrics.http.path", "/metrics"));
+        } catch (IOException e) {
+            logWarning("Не удалось запустить сервер метрик: " + e.getMessage());
+            metricsServer = null;
         }
     }
 
     private void startCleanupTimer() {
+        // Колесо таймеров продвигается раз в секунду и удаляет только истёкшие записи
         new BukkitRunnable() {
             @Override
             public void run() {
-                cleanupOldCooldowns();
+                int removed = cooldowns.expire(System.currentTimeMillis());
+                // Обновления без команд отмечаются без записи на диск, сохраняем их здесь
+                flushUpdateTracker();
+                if (removed > 0 && debugMode) {
+                    logInfo("Истекло кулдаунов: " + removed);
+                }
             }
-        }.runTaskTimer(this, 36000L, 36000L);
+        }.runTaskTimerAsynchronously(this, 20L, 20L);
     }
 
-    private void cleanupOldCooldowns() {
-        long cutoffTime = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(7);
-        int removed = 0;
+    // ========== Отправка сообщений ==========
 
-        Iterator<Map.Entry<String, Long>> it = cooldowns.entrySet().iterator();
-        while (it.hasNext()) {
-            Map.Entry<String, Long> entry = it.next();
-            if (entry.getValue() < cutoffTime) {
-                it.remove();
-                removed++;
-            }
-        }
+    private void sendTelegramMessage(String chatId, String text) {
+        sendTelegramMessage(chatId, text, OutboundDispatcher.Priority.BROADCAST);
+    }
 
-        if (removed > 0) {
-            saveCooldowns();
-            logInfo("Очищено " + removed + " старых кулдаунов");
+    private void sendTelegramMessage(String chatId, String text, OutboundDispatcher.Priority priority) {
+        if (relayToLeader(new ClusterLink.Reply(chatId, 0, null, text))) return;
+        if (outbound == null) return;
+
+        if (!outbound.enqueue(chatId, text, priority) && debugMode) {
+            logWarning("Очередь исходящих сообщений переполнена, сообщение отброшено");
         }
     }
 
-    // ========== Отправка сообщений ==========
+    // Рассылка во все чаты из telegram.chats
+    private void broadcast(String text) {
+        for (ChatRoutes.Route route : handler.settings().chats().all()) {
+            sendTelegramMessage(String.valueOf(route.chatId()), text);
+        }
+    }
 
-    private void sendTelegramMessage(String chatId, String text) {
-        new BukkitRunnable() {
-            @Override
-            public void run() {
-                try {
-                    URL url = new URL("https://api.telegram.org/bot" + botToken + "/sendMessage");
-                    HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-                    conn.setRequestMethod("POST");
-                    conn.setRequestProperty("Content-Type", "application/json");
-                    conn.setDoOutput(true);
-                    conn.setConnectTimeout(5000);
-                    conn.setReadTimeout(5000);
-
-                    String escapedText = text.replace("\\", "\\\\")
-                            .replace("\"", "\\\"")
-                            .replace("\n", "\\n");
-
-                    String requestBody = String.format(
-                            "{\"chat_id\": \"%s\", \"text\": \"%s\", \"parse_mode\": \"HTML\"}",
-                            chatId, escapedText
-                    );
-
-                    try (OutputStream os = conn.getOutputStream()) {
-                        os.write(requestBody.getBytes());
-                        os.flush();
-                    }
+    private void sendTelegramReply(String chatId, long replyToMessageId, String text, ReplyCoalescer.Kind kind) {
+        if (relayToLeader(new ClusterLink.Reply(chatId, replyToMessageId, kind, text))) return;
+        if (coalescer == null) return;
 
-                    conn.getResponseCode();
-                } catch (Exception e) {
-                    logWarning("Ошибка отправки Telegram сообщения: " + e.getMessage());
-                }
-            }
-        }.runTaskAsynchronously(this);
+        coalescer.submit(chatId, replyToMessageId, text, kind);
     }
 
-    private void sendTelegramReply(String messageId, String text) {
-        sendTelegramMessage(groupChatId, text);
+    // Ведомый сервер кластера не обращается к Telegram: сообщение отправит лидер
+    private boolean relayToLeader(ClusterLink.Reply reply) {
+        ClusterNode node = cluster;
+        if (node == null || node.isLeader()) return false;
+
+        if (!node.reply(reply) && debugMode) {
+            logWarning("Нет связи с лидером кластера, сообщение отброшено");
+        }
+        return true;
     }
 
     // ========== Команды плагина ==========
@@ -641,20 +1093,43 @@ public class UniversalTelegramBot extends JavaPlugin {
                     }
                     reloadConfig();
                     config = getConfig();
-                    loadCommands();
-                    sender.sendMessage("§aКонфиг перезагружен! Загружено команд: " + commands.size());
+                    loadPollingSettings();
+                    loadMessages();
+                    handler.configure(loadHandlerSettings());
+                    permissions.configure(loadRoles());
+                    startServerStateRefresh();
+                    if (relay != null) {
+                        relay.configure(loadRelaySettings());
+                    }
+
+                    // Реестр собирается в фоне и подменяется одной записью
+                    FileConfiguration reloaded = config;
+                    ioExecutor.submit(() -> buildRegistry(reloaded), Duration.ofSeconds(30))
+                            .whenComplete((built, error) -> {
+                                if (built != null) {
+                                    handler.setRegistry(built);
+                                }
+                                Bukkit.getScheduler().runTask(this, () -> sender.sendMessage(error == null
+                                        ? "§aКонфиг перезагружен! Загружено команд: " + built.size()
+                                        : "§cОшибка загрузки команд: " + error.getMessage()));
+                            });
                     break;
 
                 case "status":
                     showStatus(sender);
                     break;
 
+                case "metrics":
+                    showMetrics(sender);
+                    break;
+
                 case "debug":
                     if (!sender.hasPermission("telegrambot.admin")) {
                         sender.sendMessage("§cНет прав");
                         return true;
                     }
                     debugMode = !debugMode;
+                    handler.setDebug(debugMode);
                     sender.sendMessage("§eDebug режим: " + (debugMode ? "§aВключен" : "§cВыключен"));
                     break;
 
@@ -665,7 +1140,7 @@ public class UniversalTelegramBot extends JavaPlugin {
                     }
                     if (telegramBotEnabled) {
                         sender.sendMessage("§aОтправляю тестовое сообщение в Telegram...");
-                        sendTelegramMessage(groupChatId, "✅ Тестовое сообщение от сервера Minecraft!");
+                        broadcast("✅ Тестовое сообщение от сервера Minecraft!");
                         sender.sendMessage("§aСообщение отправлено");
                     } else {
                         sender.sendMessage("§cTelegram бот выключен");
@@ -676,13 +1151,14 @@ public class UniversalTelegramBot extends JavaPlugin {
                     sender.sendMessage("§6╔══════════════════════════════════╗");
                     sender.sendMessage("§6║      Загруженные команды        §6║");
                     sender.sendMessage("§6╠══════════════════════════════════╣");
-                    for (BotCommand botCmd : commands.values()) {
-                        String cooldownStr = formatCooldown(botCmd.cooldown);
-                        String execType = botCmd.usePlayerAsSender ? "игрок" :
+                    for (BotCommand botCmd : handler.registry().commands()) {
+                        String cooldownStr = UpdateHandler.formatCooldown(botCmd.cooldown);
+                        String execType = botCmd.query != null ? "снимок сервера" :
+                                botCmd.usePlayerAsSender ? "игрок" :
                                 botCmd.runAsConsole ? "консоль" : "плагин";
                         String perm = botCmd.permission.isEmpty() ? "нет" : botCmd.permission;
                         sender.sendMessage(String.format("§e/%s §7-> §f%s",
-                                botCmd.name, botCmd.command));
+                                botCmd.name, describe(botCmd)));
                         sender.sendMessage(String.format("  §7Кулдаун: §f%s §7| Исполнитель: §f%s §7| Права: §f%s",
                                 cooldownStr, execType, perm));
                     }
@@ -712,17 +1188,24 @@ public class UniversalTelegramBot extends JavaPlugin {
                     if (args.length < 3) {
                         sender.sendMessage("§cИспользование: /telegrambot addperm <user_id> <permission>");
                         sender.sendMessage("§7Пример: /telegrambot addperm 123456789 telegrambot.restart");
+                        sender.sendMessage("§7Роль: /telegrambot addperm 123456789 role.moderator, все права: telegrambot.*");
                         return true;
                     }
                     String targetUserId = args[1];
                     String permission = args[2];
 
-                    Set<String> perms = userPermissions.getOrDefault(targetUserId, new HashSet<>());
-                    perms.add(permission);
-                    userPermissions.put(targetUserId, perms);
-                    savePermissions();
+                    // Новый снимок прав публикуется сразу, поток бота видит его при следующей проверке
+                    if (!permissions.grant(targetUserId, permission)) {
+                        sender.sendMessage("§eУ пользователя уже есть " + permission);
+                        return true;
+                    }
+                    persistPermission(PersistenceJournal.Entry.permissionAdd(targetUserId, permission));
 
                     sender.sendMessage("§aРазрешение " + permission + " выдано пользователю ID: " + targetUserId);
+                    if (permission.startsWith(PermissionStore.ROLE_PREFIX) && !permissions.roles()
+                            .containsKey(permission.substring(PermissionStore.ROLE_PREFIX.length()))) {
+                        sender.sendMessage("§eРоль не описана в секции roles и пока ничего не даёт");
+                    }
                     break;
 
                 case "removeperm":
@@ -737,16 +1220,13 @@ public class UniversalTelegramBot extends JavaPlugin {
                     String removeUserId = args[1];
                     String removePermission = args[2];
 
-                    Set<String> userPerms = userPermissions.get(removeUserId);
-                    if (userPerms != null) {
-                        userPerms.remove(removePermission);
-                        if (userPerms.isEmpty()) {
-                            userPermissions.remove(removeUserId);
-                        }
-                        savePermissions();
+                    if (permissions.revoke(removeUserId, removePermission)) {
+                        persistPermission(PersistenceJournal.Entry.permissionRemove(removeUserId, removePermission));
                         sender.sendMessage("§aРазрешение " + removePermission + " удалено у пользователя ID: " + removeUserId);
-                    } else {
+                    } else if (permissions.grants(removeUserId).isEmpty()) {
                         sender.sendMessage("§cУ пользователя нет разрешений");
+                    } else {
+                        sender.sendMessage("§cУ пользователя нет разрешения " + removePermission);
                     }
                     break;
 
@@ -758,15 +1238,20 @@ public class UniversalTelegramBot extends JavaPlugin {
                     sender.sendMessage("§6╔══════════════════════════════════╗");
                     sender.sendMessage("§6║        Пользовательские права   §6║");
                     sender.sendMessage("§6╠══════════════════════════════════╣");
-                    for (Map.Entry<String, Set<String>> entry : userPermissions.entrySet()) {
+                    for (Map.Entry<String, Set<String>> entry : permissions.grants().entrySet()) {
                         sender.sendMessage("§eID: §f" + entry.getKey());
                         sender.sendMessage("§7Права: §f" + String.join(", ", entry.getValue()));
                     }
+                    for (PermissionStore.Role role : permissions.roles().values()) {
+                        sender.sendMessage("§eРоль: §f" + role.name()
+                                + (role.inherits().isEmpty() ? "" : " §7(наследует " + String.join(", ", role.inherits()) + ")"));
+                        sender.sendMessage("§7Права: §f" + String.join(", ", role.permissions()));
+                    }
                     sender.sendMessage("§6╚══════════════════════════════════╝");
                     break;
 
                 default:
-                    sender.sendMessage("§cНеизвестная подкоманда. Доступно: reload, status, debug, test, list, execute, addperm, removeperm, listperms");
+                    sender.sendMessage("§cНеизвестная подкоманда. Доступно: reload, status, metrics, debug, test, list, execute, addperm, removeperm, listperms");
                     break;
             }
             return true;
@@ -780,12 +1265,92 @@ public class UniversalTelegramBot extends JavaPlugin {
         sender.sendMessage("§6╠══════════════════════════════════╣");
         sender.sendMessage("§eTelegram бот: §f" + (telegramBotEnabled ? "§aВключен" : "§cВыключен"));
         sender.sendMessage("§eDebug режим: §f" + (debugMode ? "§aВключен" : "§cВыключен"));
-        sender.sendMessage("§eЗагружено команд: §f" + commands.size());
+        sender.sendMessage("§eЗагружено команд: §f" + handler.registry().size());
+        sender.sendMessage("§eЧатов: §f" + handler.settings().chats().size());
         sender.sendMessage("§eАктивных кулдаунов: §f" + cooldowns.size());
-        sender.sendMessage("§eПользователей с правами: §f" + userPermissions.size());
-        sender.sendMessage("§eИнтервал проверки: §f" + checkInterval + " сек");
+        sender.sendMessage("§eПользователей с правами: §f" + permissions.users()
+                + " §7(ролей: " + permissions.roles().size() + ")");
+        sender.sendMessage("§eLong-poll таймаут: §f" + pollTimeout + " сек");
+        UpdateHandler.Settings settings = handler.settings();
+        if (settings.userFlood() != null) {
+            FloodGuard.Stats users = settings.userFlood().stats();
+            sender.sendMessage("§eАнтифлуд: §fпринято " + users.allowed() + ", отброшено " + users.dropped()
+                    + " §7(заглушений: " + users.mutes() + ", лимит чата: "
+                    + settings.chatFlood().stats().dropped() + ")");
+        }
+        if (relay != null && relay.active()) {
+            EventRelay.Stats stats = relay.stats();
+            sender.sendMessage("§eПересылка событий: §f" + Arrays.stream(stats.accepted()).sum() + " принято, "
+                    + stats.batches() + " сообщений §7(в буфере: " + stats.queued() + "/" + stats.capacity()
+                    + ", отброшено: " + Arrays.stream(stats.dropped()).sum()
+                    + ", отсеяно выборкой: " + Arrays.stream(stats.sampled()).sum() + ")");
+        }
+        ClusterNode node = cluster;
+        if (node != null) {
+            ClusterNode.Stats stats = node.stats();
+            sender.sendMessage("§eКластер: §f" + node.server() + (stats.leader() ? " §a(лидер)" : " §7(ведомый)")
+                    + " §7(серверы: " + (stats.servers().isEmpty() ? "нет" : String.join(", ", stats.servers()))
+                    + ", передано команд: " + stats.forwarded() + ", ответов: " + stats.relayed() + ")");
+        }
+        if (ioExecutor != null) {
+            IoExecutor.Stats io = ioExecutor.stats();
+            sender.sendMessage("§eСетевых задач: §f" + io.active()
+                    + " §7(запущено: " + io.started() + ", по таймауту: " + io.timedOut() + ")");
+        }
+        if (updateTracker != null) {
+            sender.sendMessage("§eOffset обновлений: §f" + updateTracker.offset()
+                    + " §7(повторов: " + updateTracker.duplicates()
+                    + ", догонка: " + updateTracker.backlog()
+                    + ", устаревших: " + updateTracker.stale() + ")");
+        }
+        if (mainThread != null) {
+            MainThreadDispatcher.Stats tick = mainThread.stats();
+            sender.sendMessage("§eОчередь главного потока: §f" + tick.queued()
+                    + " §7(выполнено: " + tick.executed() + ", тиков с ограничением: " + tick.throttledTicks() + ")");
+            sender.sendMessage("§eВремя за тик: §f" + MainThreadDispatcher.Stats.millis(tick.lastTickNanos())
+                    + " §7(сред. " + MainThreadDispatcher.Stats.millis(tick.avgTickNanos())
+                    + ", макс. " + MainThreadDispatcher.Stats.millis(tick.maxTickNanos()) + ")");
+            sender.sendMessage("§eОжидание в очереди: §f" + MainThreadDispatcher.Stats.millis(tick.avgWaitNanos())
+                    + " §7(макс. " + MainThreadDispatcher.Stats.millis(tick.maxWaitNanos()) + ")");
+        }
+        if (outbound != null) {
+            OutboundDispatcher.Stats stats = outbound.stats();
+            sender.sendMessage("§eОчередь отправки: §f" + stats.queuedReplies() + " ответов, "
+                    + stats.queuedBroadcasts() + " рассылок §7(в полёте: " + stats.inFlight() + ")");
+            sender.sendMessage("§eОтправлено: §f" + stats.sent() + " §7(" + stats.sentLastMinute() + "/мин)"
+                    + " §eОтброшено: §f" + stats.dropped()
+                    + " §eОшибок: §f" + stats.failed()
+                    + " §e429: §f" + stats.rateLimited());
+            sender.sendMessage("§eTelegram API: " + (stats.breaker() == CircuitBreaker.State.CLOSED
+                    ? "§aдоступен" : "§cнедоступен, " + stats.breaker())
+                    + " §7(отключений: " + stats.breakerOpened() + ")"
+                    + " §eНа диске: §f" + stats.onDisk() + " §7(всего записано: " + stats.spooled() + ")");
+        }
         sender.sendMessage("§6╚══════════════════════════════════╝");
-        sender.sendMessage("§7Используйте: §f/telegrambot reload|status|debug|test|list|execute|addperm|removeperm|listperms");
+        sender.sendMessage("§7Используйте: §f/telegrambot reload|status|metrics|debug|test|list|execute|addperm|removeperm|listperms");
+    }
+
+    private void showMetrics(CommandSender sender) {
+        if (!metrics.enabled()) {
+            sender.sendMessage("§cМетрики выключены (metrics.enabled)");
+            return;
+        }
+        sender.sendMessage("§6═════ Задержки этапов (p50 / p99 / макс.) ═════");
+        for (Metrics.Stage stage : Metrics.Stage.values()) {
+            LatencyHistogram histogram = metrics.histogram(stage);
+            if (histogram.count() == 0) continue;
+            sender.sendMessage("§e" + stage.title + ": §f"
+                    + MainThreadDispatcher.Stats.millis(histogram.percentile(0.5)) + " / "
+                    + MainThreadDispatcher.Stats.millis(histogram.percentile(0.99)) + " / "
+                    + MainThreadDispatcher.Stats.millis(histogram.max())
+                    + " §7(" + histogram.count() + ")");
+        }
+        StringBuilder counters = new StringBuilder("§7");
+        for (Metrics.Counter counter : Metrics.Counter.values()) {
+            if (counters.length() > 2) counters.append(", ");
+            counters.append(counter.title).append(": ").append(metrics.count(counter));
+        }
+        sender.sendMessage(counters.toString());
     }
 
     // ========== Утилиты логгирования ==========
@@ -801,18 +1366,4 @@ public class UniversalTelegramBot extends JavaPlugin {
     private void logSevere(String message) {
         getLogger().severe(message);
     }
-
-    // ========== Класс команды ==========
-
-    private static class BotCommand {
-        String name;
-        String command;
-        long cooldown;
-        String permission;
-        String message;
-        String errorMessage;
-        boolean runAsConsole = true;
-        boolean usePlayerAsSender = false;
-        String description = "";
-    }
-}
\ No newline at end of file
+}
@@ -0,0 +1,5 @@
+package me.galyakyxnya.telegrambot;
+
+// Обновление из getUpdates; message == null для типов, которые бот не обрабатывает
+record Update(long updateId, Message message) {
+}
@@ -0,0 +1,483 @@
+package me.galyakyxnya.telegrambot;
+
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+
+// Общий путь обработки обновлений для long-poll и webhook: дедупликация, антифлуд, разбор команды,
+// права, кулдаун и выполнение в очереди главного потока. Не зависит от Bukkit: плагин подставляет
+// Bukkit.dispatchCommand, нагрузочный стенд - заглушку.
+final class UpdateHandler {
+
+    // Выполнение готовой команды; вызывается из главного потока
+    interface CommandRunner {
+        boolean dispatch(BotCommand cmd, String args, String command);
+    }
+
+    // replyToMessageId > 0 - ответить на это сообщение
+    interface ReplySink {
+        void reply(String chatId, long replyToMessageId, String text, ReplyCoalescer.Kind kind);
+    }
+
+    // Настройки из config.yml; при перезагрузке подменяются целиком, как реестр команд
+    record Settings(ChatRoutes chats, Messages messages, FloodGuard userFlood, FloodGuard chatFlood,
+                    long floodMuteSeconds, boolean helpFilterByPermission) {
+    }
+
+    // Накопившихся за время простоя команд в очереди; сверх этого они отбрасываются как устаревшие
+    private static final int MAX_BACKLOG = 10_000;
+
+    // Команда, прошедшая повторы и антифлуд; выполняется после сохранения offset
+    private record Admitted(ChatRoutes.Route route, Message message, boolean backlog) {
+    }
+
+    private final UpdateTracker tracker;
+    private final CooldownStore cooldowns;
+    private final PermissionStore permissions;
+    private final MainThreadDispatcher mainThread;
+    private final CommandRunner runner;
+    private final ReplySink replies;
+    private final Consumer<PersistenceJournal.Entry> journal;
+    private final Metrics metrics;
+    private final Logger logger;
+
+    private volatile CommandRegistry registry = CommandRegistry.EMPTY;
+    private volatile Settings settings;
+    private volatile ServerSnapshot serverState;
+    // Режим кластера; null - одиночный сервер
+    private volatile ClusterNode cluster;
+    private volatile boolean debug;
+    // Накопившиеся команды выполняются отдельным циклом с ограничением скорости, не задерживая приём
+    private final LinkedBlockingQueue<Admitted> backlog = new LinkedBlockingQueue<>(MAX_BACKLOG);
+
+    UpdateHandler(UpdateTracker tracker, CooldownStore cooldowns, PermissionStore permissions,
+                  MainThreadDispatcher mainThread, CommandRunner runner, ReplySink replies,
+                  Consumer<PersistenceJournal.Entry> journal, Metrics metrics, Logger logger, Settings settings) {
+        this.tracker = tracker;
+        this.cooldowns = cooldowns;
+        this.permissions = permissions;
+        this.mainThread = mainThread;
+        this.runner = runner;
+        this.replies = replies;
+        this.journal = journal;
+        this.metrics = metrics;
+        this.logger = logger;
+        this.settings = settings;
+    }
+
+    CommandRegistry registry() {
+        return registry;
+    }
+
+    void setRegistry(CommandRegistry registry) {
+        this.registry = registry;
+    }
+
+    Settings settings() {
+        return settings;
+    }
+
+    void configure(Settings settings) {
+        this.settings = settings;
+    }
+
+    // Публикуется задачей главного потока; запросы читают последний снимок
+    void setServerState(ServerSnapshot serverState) {
+        this.serverState = serverState;
+    }
+
+    ServerSnapshot serverState() {
+        return serverState;
+    }
+
+    void setCluster(ClusterNode cluster) {
+        this.cluster = cluster;
+    }
+
+    void setDebug(boolean debug) {
+        this.debug = debug;
+    }
+
+    // ========== Обработка обновлений ==========
+
+    void handleUpdate(Update update) {
+        handleUpdates(List.of(update));
+    }
+
+    // Пачка обновлений (ответ getUpdates или один webhook-запрос): сначала все отмечаются принятыми,
+    // затем offset сохраняется одним fsync на пачку и только после этого команды выполняются,
+    // поэтому повторная доставка после сбоя не выполнит команду дважды
+    void handleUpdates(List<Update> updates) {
+        Settings current = settings;
+        List<Admitted> admitted = new ArrayList<>(updates.size());
+        for (Update update : updates) {
+            try {
+                Admitted command = admit(current, update);
+                if (command != null) admitted.add(command);
+            } catch (Exception e) {
+                if (debug) {
+                    logger.warning("Ошибка обработки обновления: " + e.getMessage());
+                }
+            }
+        }
+        if (admitted.isEmpty()) return;
+
+        flushTracker();
+
+        for (Admitted command : admitted) {
+            if (command.backlog()) {
+                if (!backlog.offer(command) && debug) {
+                    logger.info("Очередь накопившихся команд заполнена, пропущена: " + command.message().text());
+                }
+                continue;
+            }
+            process(current, command);
+        }
+    }
+
+    // null - обновление не команда, повтор, устаревшее или отсечено антифлудом
+    private Admitted admit(Settings current, Update update) {
+        metrics.increment(Metrics.Counter.UPDATES);
+        if (tracker.seen(update.updateId())) return null;
+
+        Message message = update.message();
+        // Проверяем что это команда из одного из настроенных чатов
+        ChatRoutes.Route route = message != null && message.text() != null && message.text().startsWith("/")
+                ? current.chats().get(message.chatId())
+                : null;
+        if (route == null) {
+            tracker.markSeen(update.updateId());
+            return null;
+        }
+
+        long admissionStart = System.nanoTime();
+        UpdateTracker.Verdict verdict = tracker.classify(message.date(), System.currentTimeMillis() / 1000);
+        if (!tracker.markSeen(update.updateId())) return null;
+        if (verdict == UpdateTracker.Verdict.STALE) {
+            if (debug) {
+                logger.info("Пропущена устаревшая команда: " + message.text());
+            }
+            return null;
+        }
+        // Отброшенная команда не пишется на диск сразу: offset сохранит таймер
+        boolean allowed = admitFlood(current, route, message);
+        metrics.record(Metrics.Stage.ADMISSION, System.nanoTime() - admissionStart);
+        if (!allowed) {
+            metrics.increment(Metrics.Counter.FLOOD_REJECTED);
+            return null;
+        }
+        return new Admitted(route, message, verdict == UpdateTracker.Verdict.BACKLOG);
+    }
+
+    private void process(Settings current, Admitted command) {
+        Message message = command.message();
+        try {
+            processTelegramCommand(current, command.route(), message.chatId(), message.text(), message.fromId(),
+                    displayName(message), message.messageId(), false);
+        } catch (Exception e) {
+            if (debug) {
+                logger.warning("Ошибка обработки обновления: " + e.getMessage());
+            }
+        }
+    }
+
+    // Цикл накопившихся команд для IoExecutor.start. Команды уже отмечены принятыми:
+    // не выполненные к остановке не придут снова
+    Future<?> startBacklog(IoExecutor executor) {
+        return executor.start("Backlog", () -> {
+            try {
+                while (true) {
+                    Admitted command = backlog.take();
+                    tracker.awaitBacklogSlot();
+                    process(settings, command);
+                }
+            } catch (InterruptedException e) {
+                if (!backlog.isEmpty()) {
+                    logger.warning("Не выполнено накопившихся команд при остановке: " + backlog.size());
+                }
+            }
+        });
+    }
+
+    // Команда, переданная лидером кластера: флуд и повторы уже проверены на лидере
+    void handleForwarded(ClusterLink.Command command) {
+        try {
+            Settings current = settings;
+            ChatRoutes.Route route = current.chats().get(command.chatId());
+            if (route == null) {
+                // Чат настроен только на лидере: отвечаем в исходный чат
+                route = ChatRoutes.single(command.chatId()).get(command.chatId());
+            }
+            processTelegramCommand(current, route, command.chatId(), command.text(), command.userId(),
+                    command.username(), command.messageId(), true);
+        } catch (Exception e) {
+            if (debug) {
+                logger.warning("Ошибка обработки команды от лидера кластера: " + e.getMessage());
+            }
+        }
+    }
+
+    private void flushTracker() {
+        try {
+            tracker.flush();
+        } catch (IOException e) {
+            logger.warning("Ошибка сохранения offset обновлений: " + e.getMessage());
+        }
+    }
+
+    private static String displayName(Message message) {
+        if (message.username() != null) {
+            return "@" + message.username();
+        } else if (message.firstName() != null) {
+            return message.firstName();
+        }
+        return "Пользователь";
+    }
+
+    // Лимит частоты до разбора команды: отказ не выделяет памяти и не отвечает повторно
+    private boolean admitFlood(Settings current, ChatRoutes.Route route, Message message) {
+        FloodGuard users = current.userFlood();
+        FloodGuard chats = current.chatFlood();
+        if (users == null) return true;
+
+        long now = System.nanoTime();
+        FloodGuard.Verdict verdict = users.admit(message.fromId(), now);
+        if (verdict == FloodGuard.Verdict.ALLOW) {
+            verdict = chats.admit(message.chatId(), now);
+            if (verdict == FloodGuard.Verdict.ALLOW) return true;
+        }
+
+        if (verdict == FloodGuard.Verdict.WARN || verdict == FloodGuard.Verdict.MUTED) {
+            MessageTemplate template = verdict == FloodGuard.Verdict.WARN
+                    ? current.messages().floodWarning()
+                    : current.messages().floodMuted();
+            String text = template.render(new MessageTemplate.Values()
+                    .set(MessageTemplate.Placeholder.USER, displayName(message))
+                    .set(MessageTemplate.Placeholder.TIME, formatCooldown(current.floodMuteSeconds())));
+            reply(route, message.messageId(), text, ReplyCoalescer.Kind.OTHER);
+        }
+        if (verdict == FloodGuard.Verdict.MUTED) {
+            logger.info("Пользователь " + displayName(message) + " временно заглушен за флуд");
+        }
+        return false;
+    }
+
+    private void processTelegramCommand(Settings current, ChatRoutes.Route route, long chatId, String text,
+                                        long userId, String username, long messageId, boolean forwarded) {
+        // Разбираем команду
+        CommandLine line = CommandLine.parse(text);
+        if (line == null) return;
+        String commandName = line.name();
+        String args = line.args();
+
+        // Один снимок реестра на всю обработку: перезагрузка не подменит команду посередине
+        CommandRegistry commands = registry;
+
+        // Обработка команды help
+        if (commandName.equals("help") || commandName.equals("start")) {
+            sendHelpMessage(current, route, commands, messageId, userId, args);
+            return;
+        }
+
+        // Проверяем команду
+        BotCommand cmd = commands.get(commandName);
+        if (cmd == null) {
+            String unknownMsg = current.messages().unknownCommand().toString();
+            String suggestion = commands.suggest(commandName);
+            // Не подсказываем команду, которой в этом чате нет
+            if (suggestion != null && route.allows(commands.get(suggestion))) {
+                unknownMsg += current.messages().didYouMean().render(new MessageTemplate.Values()
+                        .set(MessageTemplate.Placeholder.CMD, suggestion));
+            }
+            reply(route, messageId, unknownMsg, ReplyCoalescer.Kind.UNKNOWN_COMMAND);
+            return;
+        }
+
+        // Проверяем список команд чата
+        if (!route.allows(cmd)) {
+            reply(route, messageId, current.messages().notInChat().toString(), ReplyCoalescer.Kind.NO_PERMISSION);
+            return;
+        }
+
+        // Команда другого сервера кластера: права и кулдаун проверит он
+        ClusterNode node = cluster;
+        if (!forwarded && node != null && !cmd.server.isEmpty()) {
+            ClusterNode.Delivery delivery = node.forward(cmd.server,
+                    new ClusterLink.Command(chatId, messageId, userId, username, text));
+            if (delivery == ClusterNode.Delivery.FORWARDED) return;
+            if (delivery == ClusterNode.Delivery.OFFLINE) {
+                reply(route, messageId, current.messages().serverOffline().toString(),
+                        ReplyCoalescer.Kind.COMMAND_RESULT);
+                return;
+            }
+        }
+
+        // Проверяем разрешения: роли и маски уже развёрнуты в снимке, здесь только бит
+        if (!permissions.snapshot().has(userId, cmd.permissionId)) {
+            reply(route, messageId, current.messages().noPermission().toString(),
+                    ReplyCoalescer.Kind.NO_PERMISSION);
+            return;
+        }
+
+        // Проверяем наличие аргумента если нужно
+        if (args.isEmpty() && cmd.requiresPlayer) {
+            String usage = current.messages().usage().render(new MessageTemplate.Values()
+                    .set(MessageTemplate.Placeholder.CMD, commandName));
+            reply(route, messageId, usage, ReplyCoalescer.Kind.USAGE);
+            return;
+        }
+
+        // Проверяем и сразу занимаем кулдаун, чтобы повтор не проскочил до выполнения.
+        // Ключ зависит от области кулдауна чата: общий для всех чатов или свой в этом чате
+        long cooldownKey = route.cooldownKey(userId);
+        long now = System.currentTimeMillis();
+        long leftMillis = cooldowns.tryAcquire(cooldownKey, cmd.id, now, TimeUnit.SECONDS.toMillis(cmd.cooldown));
+        if (leftMillis > 0) {
+            String timeStr = formatCooldown((leftMillis + 999) / 1000);
+
+            String cooldownMsg = current.messages().cooldown().render(new MessageTemplate.Values()
+                    .set(MessageTemplate.Placeholder.USER, username)
+                    .set(MessageTemplate.Placeholder.TIME, timeStr));
+
+            reply(route, messageId, cooldownMsg, ReplyCoalescer.Kind.COOLDOWN);
+            return;
+        }
+
+        // Нулевой кулдаун в хранилище не попадает, в журнал тоже
+        if (cmd.cooldown > 0) {
+            journal.accept(PersistenceJournal.Entry.cooldownSet(cooldownKey, cmd.name, now,
+                    now + TimeUnit.SECONDS.toMillis(cmd.cooldown)));
+        }
+
+        // Запросы состояния отвечают из снимка прямо в этом потоке, без очереди главного потока
+        if (cmd.query != null) {
+            answerQuery(route, cmd, args, userId, username, messageId);
+            return;
+        }
+
+        // Выполняем команду
+        executeMinecraftCommand(route, cmd, args, userId, cooldownKey, username, messageId, now);
+    }
+
+    private void sendHelpMessage(Settings current, ChatRoutes.Route route, CommandRegistry commands,
+                                 long messageId, long userId, String pageArg) {
+        HelpPages help = commands.help();
+
+        // Только команды, разрешённые в этом чате
+        List<String> pages = current.helpFilterByPermission()
+                ? help.pages(route.commands(), permissions.snapshot().granted(userId))
+                : help.pages(route.commands());
+
+        int page = 1;
+        try {
+            page = pageArg.isEmpty() ? 1 : Integer.parseInt(pageArg);
+        } catch (NumberFormatException e) {
+            // Некорректный номер - показываем первую страницу
+        }
+        page = Math.max(1, Math.min(pages.size(), page));
+
+        reply(route, messageId, pages.get(page - 1), ReplyCoalescer.Kind.OTHER);
+    }
+
+    private void executeMinecraftCommand(ChatRoutes.Route route, BotCommand cmd, String args, long userId,
+                                         long cooldownKey, String username, long messageId, long reservedAt) {
+        mainThread.submit(() -> {
+            try {
+                // Подготавливаем команду
+                MessageTemplate.Values values = new MessageTemplate.Values()
+                        .set(MessageTemplate.Placeholder.PLAYER, args)
+                        .set(MessageTemplate.Placeholder.ARGS, args)
+                        .set(MessageTemplate.Placeholder.USER, username)
+                        .set(MessageTemplate.Placeholder.USER_ID, String.valueOf(userId));
+                String finalCommand = cmd.commandTemplate.render(values);
+
+                logger.info("Выполняю команду от Telegram: " + finalCommand);
+
+                long dispatchStart = System.nanoTime();
+                boolean success = runner.dispatch(cmd, args, finalCommand);
+                metrics.record(Metrics.Stage.DISPATCH, System.nanoTime() - dispatchStart);
+                metrics.increment(Metrics.Counter.COMMANDS);
+
+                // Кулдаун занят при проверке; при ошибке освобождаем его
+                if (!success) {
+                    releaseCooldown(cmd, cooldownKey, reservedAt);
+                }
+
+                // Отправляем ответ
+                String response = (success ? cmd.message : cmd.errorMessage).render(values);
+                reply(route, messageId, response, ReplyCoalescer.Kind.COMMAND_RESULT);
+
+                // Логируем
+                String logMsg = String.format("[%s] %s (ID:%s) -> /%s %s -> %s",
+                        new SimpleDateFormat("HH:mm:ss").format(new Date()),
+                        username, userId, cmd.name, args, success ? "Успех" : "Ошибка");
+                logger.info(logMsg);
+
+            } catch (Exception e) {
+                releaseCooldown(cmd, cooldownKey, reservedAt);
+                logger.warning("Ошибка выполнения команды: " + e.getMessage());
+                reply(route, messageId, "❌ Внутренняя ошибка при выполнении команды",
+                        ReplyCoalescer.Kind.COMMAND_RESULT);
+            }
+        });
+    }
+
+    private void answerQuery(ChatRoutes.Route route, BotCommand cmd, String args, long userId,
+                             String username, long messageId) {
+        long start = System.nanoTime();
+        MessageTemplate.Values values = new MessageTemplate.Values()
+                .set(MessageTemplate.Placeholder.PLAYER, args)
+                .set(MessageTemplate.Placeholder.ARGS, args)
+                .set(MessageTemplate.Placeholder.USER, username)
+                .set(MessageTemplate.Placeholder.USER_ID, String.valueOf(userId));
+
+        // Снимка ещё нет только до первого сбора
+        ServerSnapshot state = serverState;
+        String response = state != null
+                ? cmd.message.render(state.fill(values, System.currentTimeMillis()))
+                : cmd.errorMessage.render(values);
+        metrics.record(Metrics.Stage.QUERY, System.nanoTime() - start);
+        metrics.increment(Metrics.Counter.COMMANDS);
+
+        reply(route, messageId, response, ReplyCoalescer.Kind.COMMAND_RESULT);
+        if (debug) {
+            logger.info("Запрос /" + cmd.name + " от " + username + " (ID:" + userId + ") из снимка");
+        }
+    }
+
+    private void releaseCooldown(BotCommand cmd, long cooldownKey, long reservedAt) {
+        if (cooldowns.release(cooldownKey, cmd.id, reservedAt)) {
+            journal.accept(PersistenceJournal.Entry.cooldownClear(cooldownKey, cmd.name));
+        }
+    }
+
+    // Ответ уходит в чат, указанный для исходного чата, с цитатой исходного сообщения
+    private void reply(ChatRoutes.Route route, long messageId, String text, ReplyCoalescer.Kind kind) {
+        replies.reply(route.replyChatId(), route.replyTo(messageId), text, kind);
+    }
+
+    static String formatCooldown(long seconds) {
+        if (seconds <= 0) return "сейчас";
+
+        long days = TimeUnit.SECONDS.toDays(seconds);
+        long hours = TimeUnit.SECONDS.toHours(seconds) % 24;
+        long minutes = TimeUnit.SECONDS.toMinutes(seconds) % 60;
+
+        if (days > 0) {
+            return String.format("%dд %dч", days, hours);
+        } else if (hours > 0) {
+            return String.format("%dч %dм", hours, minutes);
+        } else if (minutes > 0) {
+            return String.format("%dм", minutes);
+        } else {
+            return String.format("%dс", seconds);
+        }
+    }
+}
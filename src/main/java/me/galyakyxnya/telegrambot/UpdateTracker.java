@@ -0,0 +1,251 @@
+package me.galyakyxnya.telegrambot;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+// Учёт принятых обновлений: сохраняемый offset, окно последних update_id для
+// отсева повторов и правила догоняющей обработки после перезапуска.
+// Формат файла (big-endian): magic "UTBO", version int, offset long, число id int, id long...
+final class UpdateTracker {
+
+    private static final int MAGIC = 0x5554424F;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 4 + 4 + 8 + 4;
+
+    enum Verdict {
+        // Отправлено при работающем сервере
+        FRESH,
+        // Накопилось, пока сервер был выключен, выполняется с ограничением скорости
+        BACKLOG,
+        // Слишком старое или догонка отключена
+        STALE
+    }
+
+    private final File file;
+    private final long startedAtSeconds;
+    private final boolean catchUp;
+    private final long maxAgeSeconds;
+    private final long backlogIntervalNanos;
+
+    // Кольцо последних id в порядке поступления и хеш-таблица по нему (0 - пустая ячейка)
+    private final long[] ring;
+    private final long[] table;
+    private final int mask;
+    private int ringHead;
+    private int ringSize;
+
+    private long offset;
+    private boolean dirty;
+    // Не даёт двум flush одновременно писать один и тот же временный файл
+    private final Object flushLock = new Object();
+
+    private final AtomicLong nextBacklogSlot = new AtomicLong();
+    private final LongAdder duplicates = new LongAdder();
+    private final LongAdder stale = new LongAdder();
+    private final LongAdder backlog = new LongAdder();
+
+    UpdateTracker(File file, int windowSize, long startedAtSeconds, boolean catchUp,
+                  long maxAgeSeconds, double backlogPerSecond) {
+        this.file = file;
+        this.startedAtSeconds = startedAtSeconds;
+        this.catchUp = catchUp;
+        this.maxAgeSeconds = maxAgeSeconds;
+        this.backlogIntervalNanos = backlogPerSecond > 0 ? (long) (1_000_000_000L / backlogPerSecond) : 0;
+        this.nextBacklogSlot.set(System.nanoTime());
+
+        int window = Math.max(16, windowSize);
+        this.ring = new long[window];
+        this.table = new long[Integer.highestOneBit(window * 2 - 1) << 1];
+        this.mask = table.length - 1;
+    }
+
+    // ========== Offset и окно повторов ==========
+
+    synchronized void load() throws IOException {
+        if (!file.exists()) return;
+
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+        if (buffer.remaining() < HEADER_SIZE || buffer.getInt() != MAGIC) {
+            throw new IOException("Файл не является файлом offset: " + file.getName());
+        }
+        int version = buffer.getInt();
+        if (version != VERSION) {
+            throw new IOException("Неподдерживаемая версия файла offset: " + version);
+        }
+        offset = buffer.getLong();
+        int count = buffer.getInt();
+        for (int i = 0; i < count && buffer.remaining() >= 8; i++) {
+            remember(buffer.getLong());
+        }
+        dirty = false;
+    }
+
+    synchronized long offset() {
+        return offset;
+    }
+
+    synchronized boolean seen(long updateId) {
+        return contains(updateId);
+    }
+
+    // Отмечает обновление принятым. false - повтор, обрабатывать не нужно
+    synchronized boolean markSeen(long updateId) {
+        if (contains(updateId)) {
+            duplicates.increment();
+            return false;
+        }
+        remember(updateId);
+        offset = Math.max(offset, updateId);
+        dirty = true;
+        return true;
+    }
+
+    // Offset, подтверждённый лидером кластера: узел, ставший лидером, продолжит опрос с него
+    synchronized void advance(long confirmed) {
+        if (confirmed <= offset) return;
+        offset = confirmed;
+        dirty = true;
+    }
+
+    // Записывает offset и окно, если они изменились. Файл подменяется атомарно.
+    // Под монитором только снимок в буфер: markSeen не ждёт диск, пока идут запись и force
+    void flush() throws IOException {
+        synchronized (flushLock) {
+            ByteBuffer buffer;
+            synchronized (this) {
+                if (!dirty) return;
+
+                buffer = ByteBuffer.allocate(HEADER_SIZE + ringSize * 8);
+                buffer.putInt(MAGIC).putInt(VERSION).putLong(offset).putInt(ringSize);
+                // От старых к новым, чтобы при загрузке порядок вытеснения сохранился
+                for (int i = 0; i < ringSize; i++) {
+                    buffer.putLong(ring[(ringHead - ringSize + i + ring.length) % ring.length]);
+                }
+                buffer.flip();
+                dirty = false;
+            }
+
+            File temp = new File(file.getPath() + ".tmp");
+            try {
+                try (FileChannel ch = FileChannel.open(temp.toPath(), StandardOpenOption.CREATE,
+                        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                    while (buffer.hasRemaining()) {
+                        ch.write(buffer);
+                    }
+                    ch.force(true);
+                }
+                Files.move(temp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (IOException e) {
+                // Снимок не сохранён - следующий flush запишет его заново
+                synchronized (this) {
+                    dirty = true;
+                }
+                throw e;
+            }
+        }
+    }
+
+    private boolean contains(long id) {
+        for (int i = slot(id); table[i] != 0; i = (i + 1) & mask) {
+            if (table[i] == id) return true;
+        }
+        return false;
+    }
+
+    private void remember(long id) {
+        if (id == 0 || contains(id)) return;
+
+        if (ringSize == ring.length) {
+            remove(ring[ringHead]);
+        } else {
+            ringSize++;
+        }
+        ring[ringHead] = id;
+        ringHead = (ringHead + 1) % ring.length;
+
+        int i = slot(id);
+        while (table[i] != 0) {
+            i = (i + 1) & mask;
+        }
+        table[i] = id;
+    }
+
+    // Удаление со сдвигом назад, без надгробий
+    private void remove(long id) {
+        int i = slot(id);
+        while (table[i] != id) {
+            if (table[i] == 0) return;
+            i = (i + 1) & mask;
+        }
+        int hole = i;
+        for (int j = (hole + 1) & mask; table[j] != 0; j = (j + 1) & mask) {
+            int home = slot(table[j]);
+            // Элемент можно сдвинуть в дыру, если его домашняя ячейка не лежит между дырой и j
+            if (((j - home) & mask) >= ((j - hole) & mask)) {
+                table[hole] = table[j];
+                hole = j;
+            }
+        }
+        table[hole] = 0;
+    }
+
+    private int slot(long id) {
+        long h = id * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+    // ========== Догоняющая обработка ==========
+
+    Verdict classify(long messageDate, long nowSeconds) {
+        if (messageDate > 0 && maxAgeSeconds > 0 && nowSeconds - messageDate > maxAgeSeconds) {
+            stale.increment();
+            return Verdict.STALE;
+        }
+        if (messageDate > 0 && messageDate < startedAtSeconds) {
+            if (!catchUp) {
+                stale.increment();
+                return Verdict.STALE;
+            }
+            backlog.increment();
+            return Verdict.BACKLOG;
+        }
+        return Verdict.FRESH;
+    }
+
+    // Ждёт своей очереди на выполнение накопившейся команды; вызывается циклом UpdateHandler.startBacklog
+    void awaitBacklogSlot() throws InterruptedException {
+        if (backlogIntervalNanos == 0) return;
+
+        long now = System.nanoTime();
+        long slot;
+        while (true) {
+            long next = nextBacklogSlot.get();
+            slot = next - now > 0 ? next : now;
+            if (nextBacklogSlot.compareAndSet(next, slot + backlogIntervalNanos)) break;
+        }
+        long wait = slot - now;
+        if (wait > 0) {
+            TimeUnit.NANOSECONDS.sleep(wait);
+        }
+    }
+
+    long duplicates() {
+        return duplicates.sum();
+    }
+
+    long stale() {
+        return stale.sum();
+    }
+
+    long backlog() {
+        return backlog.sum();
+    }
+}
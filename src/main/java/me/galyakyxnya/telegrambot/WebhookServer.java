@@ -0,0 +1,125 @@
+package me.galyakyxnya.telegrambot;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import com.sun.net.httpserver.HttpsConfigurator;
+import com.sun.net.httpserver.HttpsServer;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.security.MessageDigest;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+
+// Встроенный HTTP(S) приёмник webhook-обновлений Telegram
+final class WebhookServer {
+
+    static final String SECRET_HEADER = "X-Telegram-Bot-Api-Secret-Token";
+
+    private final InetSocketAddress address;
+    private final String path;
+    private final byte[] secretToken;
+    private final Consumer<Update> handler;
+    private final Logger logger;
+    private final SSLContext sslContext;
+
+    private final Executor executor;
+    private final Metrics metrics;
+
+    private HttpServer server;
+
+    WebhookServer(InetSocketAddress address, String path, String secretToken, SSLContext sslContext,
+                  Consumer<Update> handler, Executor executor, Metrics metrics, Logger logger) {
+        this.address = address;
+        this.path = path;
+        this.secretToken = secretToken.getBytes(StandardCharsets.UTF_8);
+        this.sslContext = sslContext;
+        this.handler = handler;
+        this.executor = executor;
+        this.metrics = metrics;
+        this.logger = logger;
+    }
+
+    void start() throws IOException {
+        if (sslContext != null) {
+            HttpsServer https = HttpsServer.create(address, 0);
+            https.setHttpsConfigurator(new HttpsConfigurator(sslContext));
+            server = https;
+        } else {
+            server = HttpServer.create(address, 0);
+        }
+
+        server.createContext(path, this::handle);
+        // Каждый запрос обрабатывается в отдельном виртуальном потоке
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    void stop() {
+        if (server != null) {
+            server.stop(1);
+        }
+    }
+
+    int port() {
+        return server.getAddress().getPort();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+
+            String token = exchange.getRequestHeaders().getFirst(SECRET_HEADER);
+            if (token == null || !MessageDigest.isEqual(secretToken, token.getBytes(StandardCharsets.UTF_8))) {
+                exchange.sendResponseHeaders(403, -1);
+                return;
+            }
+
+            Update update;
+            try (InputStream in = exchange.getRequestBody()) {
+                long parseStart = System.nanoTime();
+                update = TelegramUpdateParser.parseUpdate(in);
+                metrics.record(Metrics.Stage.PARSE, System.nanoTime() - parseStart);
+            } catch (IOException e) {
+                logger.warning("Некорректное webhook-обновление: " + e.getMessage());
+                exchange.sendResponseHeaders(400, -1);
+                return;
+            }
+
+            try {
+                handler.accept(update);
+            } catch (Exception e) {
+                // Telegram повторит доставку при ошибке, поэтому отвечаем 200 в любом случае
+                logger.warning("Ошибка обработки webhook-обновления: " + e.getMessage());
+            }
+            exchange.sendResponseHeaders(200, -1);
+        }
+    }
+
+    // SSLContext из PKCS12 хранилища для HTTPS без reverse proxy
+    static SSLContext loadSslContext(File keystoreFile, String password) throws IOException, GeneralSecurityException {
+        KeyStore keyStore = KeyStore.getInstance("PKCS12");
+        try (InputStream in = new FileInputStream(keystoreFile)) {
+            keyStore.load(in, password.toCharArray());
+        }
+
+        KeyManagerFactory kmf = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+        kmf.init(keyStore, password.toCharArray());
+
+        SSLContext context = SSLContext.getInstance("TLS");
+        context.init(kmf.getKeyManagers(), null, null);
+        return context;
+    }
+}